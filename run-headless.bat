@@ -0,0 +1,14 @@
+@echo off
+REM Run Headless (No UI) - prints a JSON report
+REM Example: run-headless.bat --duration=3600 --cars=500 --trucks=50 --pedestrians=100
+
+REM Compile if needed
+if not exist "out\production\FinalProject\Main.class" (
+    call compile.bat > nul
+    if errorlevel 1 (
+        echo Compilation failed!
+        exit /b 1
+    )
+)
+
+java -Djava.awt.headless=true -cp "out/production/FinalProject;lib/gson-2.10.1.jar" Main --headless %*
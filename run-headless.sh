@@ -0,0 +1,14 @@
+#!/bin/bash
+# Run Headless (No UI) - prints a JSON report
+# Example: ./run-headless.sh --duration=3600 --cars=500 --trucks=50 --pedestrians=100
+
+# Compile if needed
+if [ ! -f "out/production/FinalProject/Main.class" ]; then
+    ./compile.sh > /dev/null
+    if [ $? -ne 0 ]; then
+        echo "Compilation failed!" >&2
+        exit 1
+    fi
+fi
+
+java -Djava.awt.headless=true -cp "out/production/FinalProject:lib/gson-2.10.1.jar" Main --headless "$@"
@@ -1,8 +1,27 @@
 import simulation.TrafficSimulationCore;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import simulation.batch.ScenarioBatchRunner;
+import simulation.batch.ScenarioParameters;
+import simulation.batch.SimulationReport;
+import simulation.batch.TimingPlanWatcher;
+import simulation.clock.RealTimeClock;
+import simulation.clock.SimulationClock;
 import simulation.ui.AgentVisualizer;
 import simulation.ui.ThreadVisualizer;
 import simulation.ui.TrafficSimulationUI;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Unified Main - Supports both Local and Distributed modes.
  * 
@@ -15,6 +34,12 @@ import simulation.ui.TrafficSimulationUI;
  *   java Main --local            # Local mode (explicit)
  *   java Main --distributed      # Distributed mode (port 1099)
  *   java Main --distributed 1098 # Distributed mode (custom port)
+ *   java Main --engine=des       # Local mode on the discrete-event engine
+ *   java Main --threads=virtual  # One virtual thread per agent (JDK 21+)
+ *   java Main --clock=scaled:60  # One simulated minute per wall-clock second
+ *   java Main --signal-plan=scenarios/example-signal-plan.json  # Edit the file to retime the lights live
+ *   java Main --headless --duration=3600 --cars=500   # Batch run, prints a JSON report
+ *   java Main --headless --batch=scenarios.json       # Many scenarios in parallel, one report each
  */
 public class Main {
     // Default configuration
@@ -27,11 +52,21 @@ public class Main {
     private static final int DEFAULT_RMI_PORT = 1099;
     
     public static void main(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--headless")) {
+                System.exit(runHeadless(args));
+            }
+        }
+
         boolean distributedMode = false;
         boolean serverMode = false;
         boolean clientMode = false;
         int rmiPort = DEFAULT_RMI_PORT;
         String serverHost = "localhost";
+        TrafficSimulationCore.EngineMode engineMode = TrafficSimulationCore.EngineMode.THREADS;
+        TrafficSimulationCore.ThreadMode threadMode = TrafficSimulationCore.ThreadMode.PLATFORM;
+        SimulationClock clock = new RealTimeClock();
+        String signalPlanFile = null;
         
         // Parse command line arguments
         for (int i = 0; i < args.length; i++) {
@@ -57,6 +92,32 @@ public class Main {
                 }
             } else if (args[i].equals("--local") || args[i].equals("-l")) {
                 distributedMode = false;
+            } else if (args[i].startsWith("--engine=")) {
+                String engine = args[i].substring("--engine=".length());
+                if (engine.equalsIgnoreCase("des")) {
+                    engineMode = TrafficSimulationCore.EngineMode.DES;
+                } else if (engine.equalsIgnoreCase("threads")) {
+                    engineMode = TrafficSimulationCore.EngineMode.THREADS;
+                } else {
+                    System.err.println("Unknown engine '" + engine + "', using threads");
+                }
+            } else if (args[i].startsWith("--threads=")) {
+                String threads = args[i].substring("--threads=".length());
+                if (threads.equalsIgnoreCase("virtual")) {
+                    threadMode = TrafficSimulationCore.ThreadMode.VIRTUAL;
+                } else if (threads.equalsIgnoreCase("platform")) {
+                    threadMode = TrafficSimulationCore.ThreadMode.PLATFORM;
+                } else {
+                    System.err.println("Unknown thread mode '" + threads + "', using platform threads");
+                }
+            } else if (args[i].startsWith("--clock=")) {
+                try {
+                    clock = SimulationClock.parse(args[i].substring("--clock=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage() + ", using realtime");
+                }
+            } else if (args[i].startsWith("--signal-plan=")) {
+                signalPlanFile = args[i].substring("--signal-plan=".length());
             } else if (args[i].equals("--help") || args[i].equals("-h")) {
                 printUsage();
                 return;
@@ -73,10 +134,23 @@ public class Main {
         } else {
             System.out.println(distributedMode ? "Distributed Mode" : "Local Mode");
         }
+        System.out.println("Engine: " + engineMode +
+                (engineMode == TrafficSimulationCore.EngineMode.THREADS ? " (" + threadMode + ")" : "") +
+                ", clock: " + clock);
         System.out.println("========================================");
         System.out.println();
         
         TrafficSimulationCore simulation = TrafficSimulationCore.getInstance();
+        simulation.setEngineMode(engineMode);
+        simulation.setThreadMode(threadMode);
+        simulation.setClock(clock);
+        if (signalPlanFile != null) {
+            try {
+                new TimingPlanWatcher(simulation, Path.of(signalPlanFile)).start();
+            } catch (IllegalArgumentException e) {
+                System.err.println("⚠️ " + e.getMessage() + ", using the configured timings");
+            }
+        }
         
         // Server mode: Only semaphores, no agents
         if (serverMode) {
@@ -187,6 +261,93 @@ public class Main {
         }
     }
     
+    /**
+     * Headless batch mode: no UI, no sound, no RMI. Runs one scenario, or several in parallel
+     * (--batch, --runs), and prints one JSON report line per scenario on stdout (agent logging
+     * is discarded unless --verbose is given).
+     * @return Process exit code
+     */
+    private static int runHeadless(String[] args) {
+        ScenarioParameters parameters = new ScenarioParameters();
+        String reportPath = null;
+        String batchPath = null;
+        int runs = 1;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean verbose = false;
+
+        for (String arg : args) {
+            try {
+                if (arg.equals("--headless")) {
+                    continue;
+                } else if (arg.equals("--verbose")) {
+                    verbose = true;
+                } else if (arg.startsWith("--report=")) {
+                    reportPath = arg.substring("--report=".length());
+                } else if (arg.startsWith("--batch=")) {
+                    batchPath = arg.substring("--batch=".length());
+                } else if (arg.startsWith("--runs=")) {
+                    runs = Integer.parseInt(arg.substring("--runs=".length()));
+                } else if (arg.startsWith("--parallelism=")) {
+                    parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+                } else if (!parameters.applyOption(arg)) {
+                    System.err.println("Ignoring unknown headless option: " + arg);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return 2;
+            }
+        }
+
+        List<ScenarioParameters> scenarios = new ArrayList<>();
+        if (batchPath != null) {
+            try (Reader reader = Files.newBufferedReader(Path.of(batchPath))) {
+                ScenarioParameters[] loaded = new Gson().fromJson(reader, ScenarioParameters[].class);
+                if (loaded == null || loaded.length == 0) {
+                    System.err.println("No scenarios in " + batchPath);
+                    return 2;
+                }
+                scenarios.addAll(Arrays.asList(loaded));
+            } catch (IOException | JsonParseException e) {
+                System.err.println("Failed to read scenarios from " + batchPath + ": " + e.getMessage());
+                return 2;
+            }
+        } else {
+            for (int i = 1; i <= runs; i++) {
+                ScenarioParameters run = parameters.copy();
+                if (runs > 1) {
+                    run.name = parameters.name + "#" + i;
+                }
+                scenarios.add(run);
+            }
+        }
+
+        PrintStream stdout = System.out;
+        if (!verbose) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        List<SimulationReport> reports;
+        try {
+            reports = new ScenarioBatchRunner(parallelism).run(scenarios);
+        } finally {
+            System.setOut(stdout);
+        }
+
+        for (SimulationReport report : reports) {
+            stdout.println(report.toJson());
+        }
+        if (reportPath != null) {
+            try {
+                Object content = reports.size() == 1 ? reports.get(0) : reports;
+                Files.writeString(Path.of(reportPath),
+                        new GsonBuilder().setPrettyPrinting().create().toJson(content));
+            } catch (IOException e) {
+                System.err.println("Failed to write report to " + reportPath + ": " + e.getMessage());
+                return 1;
+            }
+        }
+        return 0;
+    }
+
     private static void printUsage() {
         System.out.println("Usage: java Main [options]");
         System.out.println();
@@ -195,6 +356,22 @@ public class Main {
         System.out.println("  --distributed, -d [port] Run in distributed mode (default port: 1099)");
         System.out.println("  --server, -s             Run as server (semaphores only)");
         System.out.println("  --client, -c [host]      Run as client (agents only, connects to server)");
+        System.out.println("  --engine=<threads|des>   Agent execution engine (default: threads)");
+        System.out.println("  --threads=<platform|virtual> Thread kind for the threads engine (virtual needs JDK 21+)");
+        System.out.println("  --clock=<realtime|scaled:N|fast> Simulation clock (fast implies --engine=des)");
+        System.out.println("  --signal-plan=<file>     JSON signal timings per intersection, reloaded when the file changes");
+        System.out.println("  --headless               Run without UI and print a JSON report, with:");
+        System.out.println("      --duration=<sim-seconds> --cars=N --trucks=N --pedestrians=N");
+        System.out.println("      --green=S --yellow=S --red=S --speed=MS --report=<file> --verbose");
+        System.out.println("      --truck-segments=N       Nodes each truck covers (default 2; 3+ for articulated buses)");
+        System.out.println("      --map=WxH                Generated grid size in nodes (default 11x11)");
+        System.out.println("      --lanes=L[xC]            Lanes per generated road, C cars queued per lane (default 1x1)");
+        System.out.println("      --gridlock=<none|reroute|back-off-youngest> Break cycles of vehicles waiting on each other");
+        System.out.println("      --router=<next-hop|astar|ch|dijkstra> Routing strategy (default: next-hop, astar above 20000 nodes)");
+        System.out.println("      --scenario=<file>        JSON scenario (map, semaphore timings, demand), compiled to <file>.bin");
+        System.out.println("      --runs=N                 Repeat the scenario N times (random routes differ)");
+        System.out.println("      --batch=<file>           JSON array of scenarios, e.g. [{\"name\":\"a\",\"cars\":40}]");
+        System.out.println("      --parallelism=N          Scenarios run at once (default: one per CPU)");
         System.out.println("  --help, -h               Show this help message");
         System.out.println();
         System.out.println("Examples:");
@@ -203,5 +380,6 @@ public class Main {
         System.out.println("  java Main --server                 # Server mode (semaphores only)");
         System.out.println("  java Main --client localhost       # Client mode (connect to localhost)");
         System.out.println("  java Main --client 192.168.1.100    # Client mode (connect to remote server)");
+        System.out.println("  java Main --engine=des             # Discrete-event engine, no agent threads");
     }
 }
@@ -0,0 +1,72 @@
+package simulation;
+
+import simulation.agents.SemaphoreSimulation;
+import simulation.distributed.DistributedSemaphoreClient;
+import simulation.map.MapManager;
+import simulation.map.TrafficMap;
+
+/**
+ * Everything one simulation owns: its map (with its semaphores and their timers), its agents
+ * through the TrafficSimulationCore, the vehicle speed and the distributed semaphore client.
+ *
+ * Contexts share no mutable state, so several simulations can run in the same JVM at the same
+ * time (see simulation.batch.ScenarioBatchRunner). The classic singletons,
+ * TrafficSimulationCore.getInstance() and MapManager.getInstance(), are views of the default
+ * context used by the UI and the distributed modes.
+ *
+ * The RMI SemaphoreRegistry stays process-wide: it binds a port, so only one context can
+ * publish its semaphores at a time.
+ */
+public class SimulationContext {
+    private static SimulationContext defaultContext;
+
+    private final MapManager mapManager;
+    private final DistributedSemaphoreClient distributedClient;
+    private final TrafficSimulationCore simulation;
+
+    /**
+     * Create an independent context with its own map and distributed client
+     */
+    public SimulationContext() {
+        this(new DistributedSemaphoreClient(), new MapManager());
+    }
+
+    /**
+     * Create an independent context on the given map
+     * @param trafficMap A map not used by any other context
+     */
+    public SimulationContext(TrafficMap trafficMap) {
+        this(new DistributedSemaphoreClient(), new MapManager(trafficMap));
+    }
+
+    private SimulationContext(DistributedSemaphoreClient distributedClient, MapManager mapManager) {
+        this.distributedClient = distributedClient;
+        this.mapManager = mapManager;
+        for (SemaphoreSimulation semaphore : mapManager.getAllSemaphores()) {
+            semaphore.setContext(this);
+        }
+        this.simulation = new TrafficSimulationCore(this);
+    }
+
+    /**
+     * @return The context behind the TrafficSimulationCore and MapManager singletons
+     */
+    public static synchronized SimulationContext getDefault() {
+        if (defaultContext == null) {
+            defaultContext = new SimulationContext(DistributedSemaphoreClient.getInstance(), new MapManager());
+        }
+        return defaultContext;
+    }
+
+    public MapManager getMapManager() {
+        return mapManager;
+    }
+
+    public DistributedSemaphoreClient getDistributedClient() {
+        return distributedClient;
+    }
+
+    public TrafficSimulationCore getSimulation() {
+        return simulation;
+    }
+}
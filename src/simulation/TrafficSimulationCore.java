@@ -1,18 +1,41 @@
 package simulation;
 
 import simulation.agents.*;
+import simulation.clock.RealTimeClock;
+import simulation.clock.SimulationClock;
+import simulation.clock.TimingWheel;
+import simulation.des.DiscreteEventSimulation;
 import simulation.distributed.SemaphoreRegistry;
 import simulation.distributed.DistributedSemaphoreClient;
 import simulation.map.MapManager;
+import simulation.map.TrafficMap;
 import simulation.map.TrafficNode;
 
 import java.rmi.RemoteException;
 import java.util.*;
+import java.util.concurrent.ThreadFactory;
 
 public class TrafficSimulationCore {
 
-    private static TrafficSimulationCore instance;
-    public static int vehicleSpeed;
+    public enum EngineMode {
+        THREADS,    // One thread per agent (default)
+        DES         // Single-threaded discrete-event engine
+    }
+
+    public enum ThreadMode {
+        PLATFORM,   // One OS thread per agent
+        VIRTUAL     // One virtual thread per agent (JDK 21+)
+    }
+
+    /** Simulated time between sweeps of the gridlock detector in the thread engine */
+    private static final long GRIDLOCK_SCAN_MS = 2000;
+    private static final long TIMER_TICK_MS = 10;
+    /** How long joinAgents waits for each agent thread of a stopped run (wall-clock ms) */
+    private static final long AGENT_JOIN_MS = 1000;
+
+    private final SimulationContext context;
+    private volatile int vehicleSpeed;
+    private int truckSegments = Truck.DEFAULT_SEGMENTS;
     private List<Car> cars;
     private List<Truck> trucks;
     private List<SemaphoreSimulation> semaphores;
@@ -26,23 +49,39 @@ public class TrafficSimulationCore {
     private DistributedSemaphoreClient distributedClient;
     private boolean distributedModeEnabled;
     private int registryPort;
+
+    // Execution engine
+    private EngineMode engineMode;
+    private ThreadMode threadMode;
+    private SimulationClock clock;
+    private DiscreteEventSimulation desSimulation;
+    private SignalController signalController;
+    private volatile TimingWheel timingWheel;
+    private volatile TimingPlan timingPlan;
     
-    private TrafficSimulationCore(){
+    TrafficSimulationCore(SimulationContext context){
+        this.context = context;
         cars = new ArrayList<>();
         trucks = new ArrayList<>();
         semaphores = new ArrayList<>();
         pedestrians = new ArrayList<>();
-        mapManager = MapManager.getInstance();
+        mapManager = context.getMapManager();
         distributedModeEnabled = false;
         registryPort = 1099; // Default RMI port
         semaphoreRegistry = SemaphoreRegistry.getInstance();
-        distributedClient = DistributedSemaphoreClient.getInstance();
+        distributedClient = context.getDistributedClient();
         vehicleSpeed = 750;
+        engineMode = EngineMode.THREADS;
+        threadMode = ThreadMode.PLATFORM;
+        clock = new RealTimeClock();
     }
 
+    /**
+     * @return The simulation of the default context. Independent simulations are created
+     *         with new SimulationContext().getSimulation()
+     */
     public static TrafficSimulationCore getInstance(){
-        if(instance == null) instance = new TrafficSimulationCore();
-        return instance;
+        return SimulationContext.getDefault().getSimulation();
     }
 
     // In the initializeSimulation method, add pedestrian creation:
@@ -50,11 +89,32 @@ public class TrafficSimulationCore {
                                      int pedestriansNumber, int greenLightTimer,
                                      int yellowLightTimer, int redLightTimer, int speed) {
 
+        // The last run's threads must be gone before its agents are dropped: once out of the
+        // lists, stopSimulation can no longer reach them
+        if (isRunning) {
+            stopSimulation();
+        }
+        joinAgents();
+
         vehicleSpeed = speed;
         mapManager.initializeSimpleMap();
+        mapManager.clearAgents();
+
+        // A new run replaces the agents of the last one instead of adding to them
+        cars.clear();
+        trucks.clear();
+        pedestrians.clear();
+        semaphores.clear();
 
+        // Scenario timings, unless the map gives an intersection its own
         int[] lightsTimers = {greenLightTimer, yellowLightTimer, redLightTimer};
-        SemaphoreSimulation.setLightsTimer(lightsTimers);
+        List<SemaphoreSimulation> mapSemaphores = mapManager.getTrafficMap().getSemaphores();
+        for (int i = 0; i < mapSemaphores.size(); i++) {
+            mapSemaphores.get(i).setLightsTimer(mapManager.getTrafficMap().getLightsTimers(i, lightsTimers));
+        }
+        if (timingPlan != null) {
+            applyTimingPlan(timingPlan);
+        }
 
         // Create cars with dynamic routing
         for (int i = 0; i < carsNumber; i++) {
@@ -62,9 +122,9 @@ public class TrafficSimulationCore {
             TrafficNode endNode = mapManager.getRandomEndNode(startNode);
 
             if (startNode != null && endNode != null) {
-                Car car = new Car(i+1, startNode.position, endNode.position);
+                Car car = new Car(context, i+1, startNode.position, endNode.position);
                 cars.add(car);
-                System.out.println("Car " + (i+1) + " route: " + startNode.nodeId + " → " + endNode.nodeId);
+                System.out.println("Car " + (i+1) + " route: " + startNode.getTrafficNodeId() + " → " + endNode.getTrafficNodeId());
             }
         }
 
@@ -74,15 +134,15 @@ public class TrafficSimulationCore {
             TrafficNode endNode = mapManager.getRandomEndNode(startNode);
 
             if (startNode != null && endNode != null) {
-                Truck truck = new Truck(i+1, startNode.position, endNode.position);
+                Truck truck = new Truck(context, i+1, startNode.position, endNode.position, truckSegments);
                 trucks.add(truck);
-                System.out.println("Truck " + (i+1) + " route: " + startNode.nodeId + " → " + endNode.nodeId);
+                System.out.println("Truck " + (i+1) + " route: " + startNode.getTrafficNodeId() + " → " + endNode.getTrafficNodeId());
             }
         }
 
         // Create pedestrians
         for (int i = 0; i < pedestriansNumber; i++) {
-            Pedestrian pedestrian = new Pedestrian(i+1);
+            Pedestrian pedestrian = new Pedestrian(context, i+1);
             pedestrians.add(pedestrian);
             System.out.println("Pedestrian " + (i+1) + " created");
         }
@@ -105,31 +165,87 @@ public class TrafficSimulationCore {
     public void startSimulation(){
         isRunning = true;
 
-        // Start semaphores
-        for(SemaphoreSimulation semaphore : semaphores){
-            semaphore.start();
+        if (engineMode == EngineMode.THREADS && clock.isVirtual()) {
+            System.out.println("⚠️ The " + clock + " clock has no wall-clock rate, switching to the discrete-event engine");
+            engineMode = EngineMode.DES;
         }
 
+        if (engineMode == EngineMode.DES) {
+            if (desSimulation != null) {
+                desSimulation.stop();
+            }
+            desSimulation = new DiscreteEventSimulation(this, clock);
+            desSimulation.start();
+            System.out.println("Simulación iniciada (discrete-event engine)");
+            return;
+        }
+
+        ThreadFactory factory = AgentThreads.factory(threadMode == ThreadMode.VIRTUAL);
+        if (threadMode == ThreadMode.VIRTUAL && !AgentThreads.isVirtualThreadSupported()) {
+            System.err.println("⚠️ Virtual threads are not available on this JDK, using platform threads");
+        }
+
+        // One wheel thread times every agent delay and light change
+        if (signalController != null) {
+            signalController.stop();
+        }
+        if (timingWheel != null) {
+            timingWheel.stop();
+        }
+        timingWheel = new TimingWheel(clock, TIMER_TICK_MS);
+        timingWheel.start(factory);
+
+        // Start semaphores: their phase changes are timers on the wheel
+        signalController = new SignalController(semaphores);
+        signalController.start(timingWheel);
+
         // Start cars
         for(Car car : cars){
-            car.start();
+            car.start(factory);
         }
 
         for(Truck truck : trucks){
-            truck.start();
+            truck.start(factory);
         }
 
         // Start pedestrians
         for(Pedestrian pedestrian : pedestrians){
-            pedestrian.start();
+            pedestrian.start(factory);
         }
 
+        // Vehicles wait on their own threads, so cycles closed at the same time need a sweep
+        mapManager.getGridlockDetector().startScanning(clock.toWallNanos(GRIDLOCK_SCAN_MS));
+
         System.out.println("Simulación iniciada");
     }
 
+    /**
+     * Run the simulation on the discrete-event engine on the calling thread until the simulated
+     * time limit is reached or every vehicle has finished. Used by headless and batch runs.
+     * @param horizonMs Simulated time limit in milliseconds
+     * @return The simulated time reached
+     */
+    public long runDiscreteEventSimulation(long horizonMs) {
+        isRunning = true;
+        engineMode = EngineMode.DES;
+        desSimulation = new DiscreteEventSimulation(this, clock);
+        desSimulation.setStopWhenVehiclesFinished(true);
+        long reached = desSimulation.runUntil(horizonMs);
+        isRunning = false;
+        return reached;
+    }
+
     // In the stopSimulation method, add pedestrian stop:
     public void stopSimulation(){
         isRunning = false;
+        mapManager.getGridlockDetector().stopScanning();
+
+        if (desSimulation != null) {
+            desSimulation.stop();
+        }
+        if (signalController != null) {
+            signalController.stop();
+        }
 
         for(Car car : cars){
             car.stopCar();
@@ -147,12 +263,82 @@ public class TrafficSimulationCore {
             pedestrian.stopPedestrian();
         }
 
+        // Wakes agents still sleeping on the wheel so they see they were stopped
+        if (timingWheel != null) {
+            timingWheel.stop();
+            timingWheel = null;
+        }
+
         // Note: We don't disconnect from distributed manager here
         // to allow reconnection. Call disconnectFromTrafficManager() explicitly if needed.
 
         System.out.println("Simulación detenida");
     }
 
+    /**
+     * Wait for the agent threads of a stopped run to see they were stopped and exit, so they
+     * do not outlive it.
+     */
+    public void joinAgents() {
+        List<Agent> agents = new ArrayList<>();
+        agents.addAll(cars);
+        agents.addAll(trucks);
+        agents.addAll(pedestrians);
+        agents.addAll(semaphores);
+        try {
+            for (Agent agent : agents) {
+                agent.interrupt();
+                agent.join(AGENT_JOIN_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true once every car and truck has reached its destination
+     */
+    public boolean allVehiclesFinished() {
+        for (Car car : cars) {
+            if (car.getCarState() != Car.CarState.FINISHED) return false;
+        }
+        for (Truck truck : trucks) {
+            if (truck.getTruckState() != Truck.TruckState.FINISHED) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Swap in the signal timing of every intersection while running (file watch or API). Each
+     * semaphore runs its new plan from the end of its current cycle; intersections the plan
+     * does not cover keep their timing. The plan is kept for the next initializeSimulation.
+     */
+    public void setTimingPlan(TimingPlan plan) {
+        timingPlan = plan;
+        int applied = applyTimingPlan(plan);
+        if (signalController != null) {
+            // A light that never changed has no timer to pick the plan up
+            signalController.timingChanged();
+        }
+        System.out.println("🚦 Plan de semáforos " + plan + " aplicado a " + applied + " semáforos");
+    }
+
+    public TimingPlan getTimingPlan() { return timingPlan; }
+
+    private int applyTimingPlan(TimingPlan plan) {
+        TrafficMap map = mapManager.getTrafficMap();
+        int applied = 0;
+        for (SemaphoreSimulation semaphore : map.getSemaphores()) {
+            TrafficNode node = map.getNodeAt(semaphore.getPosition());
+            SignalPlan signalPlan = node != null ? plan.planFor(node.getTrafficNodeId()) : null;
+            if (signalPlan != null) {
+                semaphore.applyPlan(signalPlan);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
     // Getters para UI
     public List<Car> getCars() { return cars; }
     public List<Truck> getTrucks() { return trucks; }
@@ -160,6 +346,51 @@ public class TrafficSimulationCore {
     public List<Pedestrian> getPedestrians() { return pedestrians; }
     public boolean isRunning() { return isRunning; }
 
+    /**
+     * @param truckSegments Nodes each truck created by initializeSimulation covers (3 or more
+     *                      for articulated buses)
+     */
+    public void setTruckSegments(int truckSegments) { this.truckSegments = truckSegments; }
+    public int getTruckSegments() { return truckSegments; }
+
+    /**
+     * Select how agents are executed. Must be called before startSimulation().
+     * @param engineMode THREADS for one thread per agent, DES for the discrete-event engine
+     */
+    public void setEngineMode(EngineMode engineMode) { this.engineMode = engineMode; }
+    public EngineMode getEngineMode() { return engineMode; }
+
+    /**
+     * Select platform or virtual threads for the THREADS engine. Must be called before startSimulation().
+     */
+    public void setThreadMode(ThreadMode threadMode) { this.threadMode = threadMode; }
+    public ThreadMode getThreadMode() { return threadMode; }
+
+    /**
+     * Set the clock agents and semaphores use for all timing. Must be called before startSimulation().
+     * In the DES engine this clock only paces the engine; a virtual clock runs it as fast as possible.
+     */
+    public void setClock(SimulationClock clock) { this.clock = clock; }
+
+    /**
+     * @return The clock agents should read: the engine's virtual clock when the DES engine is active,
+     *         the timing wheel over the configured clock while agent threads run (so their sleeps
+     *         are wheel timers), otherwise the configured clock
+     */
+    public SimulationClock getClock() {
+        if (engineMode == EngineMode.DES && desSimulation != null) {
+            return desSimulation.getEngine().getClock();
+        }
+        TimingWheel wheel = timingWheel;
+        return wheel != null ? wheel : clock;
+    }
+
+    /**
+     * @return The timing wheel of the running thread engine, or null
+     */
+    public TimingWheel getTimingWheel() { return timingWheel; }
+    public DiscreteEventSimulation getDesSimulation() { return desSimulation; }
+
     /**
      * Connect to distributed traffic manager by starting RMI registry and registering semaphores.
      * This enables distributed mode where semaphores can be accessed remotely via RMI.
@@ -336,6 +567,17 @@ public class TrafficSimulationCore {
         return counts;
     }
 
+    public SimulationContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return Time in milliseconds a vehicle spends on each node
+     */
+    public int getVehicleSpeed() {
+        return vehicleSpeed;
+    }
+
     public MapManager getMapManager() {
         return mapManager;
     }
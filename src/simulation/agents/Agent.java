@@ -1,6 +1,21 @@
 package simulation.agents;
 
-public class Agent extends Thread {
+import simulation.SimulationContext;
+import simulation.clock.SimulationClock;
+import simulation.map.GridlockDetector;
+import simulation.map.TrafficNode;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class of every simulated agent. The agent body is a plain Runnable; the thread
+ * that executes it is created on start() by a ThreadFactory, so the same agent can run
+ * on a platform thread, a virtual thread, or (with no thread at all) inside the
+ * discrete-event engine.
+ */
+public class Agent implements Runnable {
     public enum AgentType {
         CAR,
         TRUCK,
@@ -15,15 +30,183 @@ public class Agent extends Thread {
         FINISHED
     }
 
+    /** Simulated time between checks for a stop while queued for a node */
+    protected static final long NODE_WAIT_MILLIS = 1000;
+
+    private static final AtomicLong SERIALS = new AtomicLong();
+
     public AgentType type;
     public int id;
     protected AgentState state;
     protected volatile boolean running = true;
+    /** Broke its last gridlock by a detour and has not moved since (see blockedOn) */
+    protected boolean rerouted;
+    private volatile Thread thread;
+    private SimulationContext context;
+    private final long serial = SERIALS.incrementAndGet();
+    private volatile TrafficNode waitingFor;   // node reported to the gridlock detector
 
     public AgentState getAgentState() { return state; }
+    public boolean isRunning() { return running; }
+
+    /**
+     * @return Creation order of the agent across all simulations: higher is younger
+     */
+    public long getSerial() { return serial; }
+
+    /**
+     * @return The simulation this agent belongs to, the default context if none was set
+     */
+    public SimulationContext getContext() {
+        SimulationContext owner = context;
+        return owner != null ? owner : SimulationContext.getDefault();
+    }
+
+    public void setContext(SimulationContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @return The clock all agent timing goes through (sleeps, dwell, timestamps)
+     */
+    protected SimulationClock clock() {
+        return getContext().getSimulation().getClock();
+    }
+
+    /**
+     * Queue for a node (thread engine). The agent is parked until the node is handed to it,
+     * waking up every NODE_WAIT_MILLIS of simulated time to notice a stop or a gridlock; it
+     * keeps its place in line across those wakeups, so the node goes to waiters in arrival order.
+     * An agent that broke a gridlock stays put for NODE_WAIT_MILLIS before it tries again, so
+     * the others get to move first.
+     * @return true once the agent holds the node, false if it was stopped first or broke a
+     *         gridlock instead (its route or the nodes it holds changed)
+     */
+    protected boolean waitForNode(TrafficNode node) throws InterruptedException {
+        if (!running) {
+            return false;
+        }
+        if (blockedOn(node)) {
+            clock().sleep(NODE_WAIT_MILLIS);
+            return false;
+        }
+        TrafficNode.Waiter place = node.enqueue(this);
+        boolean held = false;
+        boolean resolved = false;
+        try {
+            while (running) {
+                if (node.await(place, clock().toWallNanos(NODE_WAIT_MILLIS), TimeUnit.NANOSECONDS)) {
+                    held = running;
+                    break;
+                }
+                if (blockedOn(node)) {
+                    resolved = true;
+                    break;
+                }
+            }
+        } finally {
+            if (!held) {
+                // Out of line; a node handed over while stopping is passed on
+                node.leave(place);
+            }
+        }
+        if (resolved) {
+            clock().sleep(NODE_WAIT_MILLIS);
+        }
+        return held;
+    }
+
+    /**
+     * Report to the gridlock detector that the agent cannot get the node, and break the
+     * gridlock if the detector picked this agent to
+     * @return true if the agent did something about it (see resolveGridlock)
+     */
+    protected boolean blockedOn(TrafficNode node) {
+        GridlockDetector detector = getContext().getMapManager().getGridlockDetector();
+        waitingFor = node;
+        detector.waiting(this, node);
+        GridlockDetector.Policy policy = detector.claimResolution(this);
+        if (policy == null) {
+            return false;
+        }
+        // A second detour without moving only leads into the next cycle: give way instead
+        if (policy == GridlockDetector.Policy.REROUTE && rerouted) {
+            policy = GridlockDetector.Policy.BACK_OFF_YOUNGEST;
+        }
+        return resolveGridlock(policy, node);
+    }
+
+    /**
+     * The agent is no longer waiting for a node (it moved, stopped or changed its plans)
+     */
+    protected void stoppedWaiting() {
+        if (waitingFor != null) {
+            waitingFor = null;
+            getContext().getMapManager().getGridlockDetector().stoppedWaiting(this);
+        }
+    }
+
+    /**
+     * Break a gridlock the agent is part of by rerouting or by giving up what it holds.
+     * Vehicles override this; other agents never hold nodes.
+     * @param blocked The node the agent is waiting for
+     * @return true if the route or the nodes held changed
+     */
+    protected boolean resolveGridlock(GridlockDetector.Policy policy, TrafficNode blocked) {
+        return false;
+    }
 
     public void stopAgent() {
         running = false;
         state = AgentState.STOPPED;
     }
+
+    @Override
+    public void run() {
+    }
+
+    /**
+     * Start the agent on a new platform thread
+     */
+    public void start() {
+        start(AgentThreads.PLATFORM);
+    }
+
+    /**
+     * Start the agent on a thread created by the given factory
+     * @param factory Platform or virtual thread factory (see AgentThreads)
+     */
+    public void start(ThreadFactory factory) {
+        if (thread != null) {
+            throw new IllegalThreadStateException(type + " " + id + " already started");
+        }
+        Thread agentThread = factory.newThread(this);
+        agentThread.setName(type + "-" + id);
+        thread = agentThread;
+        agentThread.start();
+    }
+
+    /**
+     * @return The state of the agent's thread, NEW if it has no thread (not started or event-driven)
+     */
+    public Thread.State getState() {
+        Thread agentThread = thread;
+        return agentThread != null ? agentThread.getState() : Thread.State.NEW;
+    }
+
+    public void interrupt() {
+        Thread agentThread = thread;
+        if (agentThread != null) {
+            agentThread.interrupt();
+        }
+    }
+
+    public void join(long millis) throws InterruptedException {
+        Thread agentThread = thread;
+        if (agentThread != null) {
+            agentThread.join(millis);
+        }
+    }
+
+    public Thread getThread() { return thread; }
 }
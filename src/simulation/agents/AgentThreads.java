@@ -0,0 +1,47 @@
+package simulation.agents;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories for running agents.
+ *
+ * Virtual threads are looked up reflectively (Thread.ofVirtual() is final in JDK 21), so the
+ * project still compiles and runs on JDK 17; there VIRTUAL is simply unavailable.
+ *
+ * Agents are safe to run on virtual threads: node occupancy and semaphore waits use
+ * ReentrantLock/Condition rather than synchronized, so blocked agents unmount from their
+ * carrier thread instead of pinning it, and no lock is held across RMI calls.
+ */
+public final class AgentThreads {
+    /** One platform (OS) thread per agent */
+    public static final ThreadFactory PLATFORM = Thread::new;
+
+    /** One virtual thread per agent, or null when the running JDK has no virtual threads */
+    public static final ThreadFactory VIRTUAL = lookupVirtualThreadFactory();
+
+    private AgentThreads() {
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL != null;
+    }
+
+    /**
+     * @param virtual true to request virtual threads
+     * @return The requested factory, falling back to platform threads if virtual threads are unavailable
+     */
+    public static ThreadFactory factory(boolean virtual) {
+        return virtual && VIRTUAL != null ? VIRTUAL : PLATFORM;
+    }
+
+    private static ThreadFactory lookupVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -2,17 +2,24 @@ package simulation.agents;
 
 import simulation.distributed.DistributedSemaphoreClient;
 import simulation.distributed.LightStateDTO;
+import simulation.map.GridlockDetector;
 import simulation.map.MapManager;
 import simulation.map.Position;
+import simulation.map.TrafficMap;
 import simulation.map.TrafficNode;
+import simulation.SimulationContext;
 import simulation.TrafficSimulationCore;
 
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Car extends Agent {
     private Position currentPosition;
     private TrafficNode currentNode;
+    // Edge the car waits on for its next node, -1 while on a node. Claimed with getAndSet, since
+    // stopCar releases the road from another thread while the car's own may be releasing it
+    private final AtomicInteger queuedEdge = new AtomicInteger(-1);
     private TrafficNode destinationNode;
     private Queue<TrafficNode> nodeRoute;
     private MapManager mapManager;
@@ -29,20 +36,28 @@ public class Car extends Agent {
     private CarState carState;
 
     public Car(int id, Position start, Position destination) {
+        this(SimulationContext.getDefault(), id, start, destination);
+    }
+
+    public Car(SimulationContext context, int id, Position start, Position destination) {
+        setContext(context);
         this.id = id;
         this.currentPosition = start;
         this.type = AgentType.CAR;
         this.state = AgentState.ACTIVE;
         this.carState = CarState.MOVING;
-        this.mapManager = MapManager.getInstance();
+        this.mapManager = context.getMapManager();
         this.nodeRoute = new LinkedBlockingQueue<>();
-        this.distributedClient = DistributedSemaphoreClient.getInstance();
-        this.simulationCore = TrafficSimulationCore.getInstance();
+        this.distributedClient = context.getDistributedClient();
+        this.simulationCore = context.getSimulation();
 
         // Convert positions to nodes and calculate route
         this.currentNode = mapManager.getNodeAtPosition(start);
         this.destinationNode = mapManager.getNodeAtPosition(destination);
         calculateNodeRoute();
+        if (carState != CarState.FINISHED) {
+            mapManager.placeCar(this, start);
+        }
     }
 
     private void calculateNodeRoute() {
@@ -60,70 +75,203 @@ public class Car extends Agent {
     @Override
     public void run() {
         System.out.println("Car " + id + " started at node: " +
-                (currentNode != null ? currentNode.nodeId : "null"));
+                (currentNode != null ? currentNode.getTrafficNodeId() : "null"));
 
         while (running && !nodeRoute.isEmpty()) {
             try {
-                TrafficNode nextNode = nodeRoute.peek();
-
-                if (nextNode != null) {
-                    // Try to acquire the next node
-                    if (nextNode.tryAcquire(this)) {
-                        // Successfully acquired the node - move to it
-                        nodeRoute.poll(); // Remove from queue
-
-                        // Release current node if exists
-                        if (currentNode != null) {
-                            currentNode.release();
-                            System.out.println("Car " + id + " released node: " + currentNode.nodeId);
-                        }
+                TrafficNode previousNode = currentNode;
 
-                        // Update position and current node
-                        Position oldPosition = currentPosition;
-                        currentPosition = nextNode.position;
-                        currentNode = nextNode;
-
-                        mapManager.moveCar(this, oldPosition, currentPosition);
-
-                        System.out.println("Car " + id + " moved to: " + currentNode.nodeId +
-                                " - Position: " + currentPosition + " - State: " + carState);
-
-                        // Check traffic light at new position
-                        checkTrafficLight(currentPosition);
+                if (advance()) {
+                    if (previousNode != null) {
+                        System.out.println("Car " + id + " released node: " + previousNode.getTrafficNodeId());
+                    }
+                    System.out.println("Car " + id + " moved to: " + currentNode.getTrafficNodeId() +
+                            " - Position: " + currentPosition + " - State: " + carState);
 
-                        // Simulate time spent at this node
-                        Thread.sleep(TrafficSimulationCore.vehicleSpeed);
+                    // Check traffic light at new position
+                    checkTrafficLight(currentPosition);
 
-                    } else {
-                        // Node is occupied, wait
-                        carState = CarState.WAITING;
-                        System.out.println("Car " + id + " waiting for node: " + nextNode.nodeId);
-                        //Thread.sleep(50);
-                    }
+                    // Simulate time spent at this node
+                    clock().sleep(simulationCore.getVehicleSpeed());
                 }
 
                 // Check if reached destination
-                if (currentNode != null && currentNode.equals(destinationNode)) {
+                if (hasArrived()) {
                     carState = CarState.FINISHED;
                     state = AgentState.FINISHED;
-                    System.out.println("Car " + id + " reached destination node: " + currentNode.nodeId);
+                    System.out.println("Car " + id + " reached destination node: " + currentNode.getTrafficNodeId());
                     break;
                 }
 
             } catch (InterruptedException e) {
                 // Release current node if interrupted
-                if (currentNode != null) {
-                    currentNode.release();
-                }
+                releaseRoad();
                 Thread.currentThread().interrupt();
                 break;
             }
         }
 
         // Release final node when finished
+        releaseRoad();
+        mapManager.leaveMap(this);
+    }
+
+    /**
+     * Try to move onto the next node of the route. This is the single step shared by the
+     * threaded run loop and the discrete-event engine.
+     * @return true if the car acquired the next node and moved onto it
+     */
+    public boolean tryAdvance() {
+        TrafficNode nextNode = nodeRoute.peek();
+        if (nextNode == null) {
+            return false;
+        }
+
+        if (!nextNode.tryAcquire(this)) {
+            carState = CarState.WAITING;
+            queueOnEdge(nextNode);
+            blockedOn(nextNode);
+            return false;
+        }
+        moveOnto(nextNode);
+        return true;
+    }
+
+    /**
+     * Move onto the next node of the route, queueing for it while it is taken (thread engine)
+     * @return false if the car was stopped before it got the node
+     */
+    public boolean advance() throws InterruptedException {
+        TrafficNode nextNode = nodeRoute.peek();
+        if (nextNode == null) {
+            return false;
+        }
+        if (!nextNode.tryAcquire(this)) {
+            carState = CarState.WAITING;
+            queueOnEdge(nextNode);
+            System.out.println("Car " + id + " waiting for node: " + nextNode.getTrafficNodeId());
+            if (!waitForNode(nextNode)) {
+                return false;
+            }
+        }
+        moveOnto(nextNode);
+        return true;
+    }
+
+    /**
+     * Leave the current node for a place on the edge towards the blocked next node, so the
+     * node behind is free for other traffic. Does nothing if the edge is full (the car keeps
+     * its node) or the car is already on the edge.
+     */
+    private void queueOnEdge(TrafficNode nextNode) {
+        if (queuedEdge.get() >= 0 || currentNode == null) {
+            return;
+        }
+        TrafficMap map = mapManager.getTrafficMap();
+        int edge = map.getGraph().findEdge(currentNode.getIndex(), nextNode.getIndex());
+        if (edge < 0 || !map.tryEnterEdge(edge)) {
+            return;
+        }
+        currentNode.release(this);
+        currentNode = null;
+        queuedEdge.set(edge);
+        // Halfway along the edge
+        currentPosition = new Position((currentPosition.x + nextNode.position.x) / 2,
+                (currentPosition.y + nextNode.position.y) / 2);
+        mapManager.takeCarOffNode(this, currentPosition);
+    }
+
+    /**
+     * Picked to break a gridlock: take another road out of the node if the policy allows and
+     * there is one, otherwise pull over, freeing the node for the vehicle waiting on it
+     */
+    @Override
+    protected boolean resolveGridlock(GridlockDetector.Policy policy, TrafficNode blocked) {
+        if (currentNode == null) {
+            return false;
+        }
+        if (policy == GridlockDetector.Policy.REROUTE) {
+            Queue<TrafficNode> detour = mapManager.calculateDetour(currentNode, blocked, destinationNode);
+            if (detour != null) {
+                nodeRoute = detour;
+                rerouted = true;
+                stoppedWaiting();
+                System.out.println("Car " + id + " rerouted around gridlock at " + blocked.getTrafficNodeId() +
+                        ": " + detour.size() + " nodes");
+                return true;
+            }
+        }
+        System.out.println("Car " + id + " pulled over to break gridlock, freeing " + currentNode.getTrafficNodeId());
+        currentNode.release(this);
+        currentNode = null;
+        mapManager.takeCarOffNode(this, currentPosition);
+        return true;
+    }
+
+    // Free the node or edge place the car holds, and stop waiting
+    private void releaseRoad() {
+        stoppedWaiting();
         if (currentNode != null) {
-            currentNode.release();
+            currentNode.release(this);
+        }
+        int edge = queuedEdge.getAndSet(-1);
+        if (edge >= 0) {
+            mapManager.getTrafficMap().leaveEdge(edge);
+        }
+    }
+
+    private void moveOnto(TrafficNode nextNode) {
+        nodeRoute.poll(); // Remove from queue
+        rerouted = false;
+
+        // Release current node (or place on the edge) if exists
+        releaseRoad();
+
+        // Update position and current node
+        Position oldPosition = currentPosition;
+        currentPosition = nextNode.position;
+        currentNode = nextNode;
+        carState = CarState.MOVING;
+
+        mapManager.moveCar(this, oldPosition, currentPosition);
+    }
+
+    /**
+     * Get the local semaphore that stops the car at its current position, if any.
+     * Marks the car as WAITING_SEMAPHORE when the light is yellow or red.
+     * @return The semaphore showing yellow/red at the current position, or null
+     */
+    public SemaphoreSimulation getBlockingSemaphore() {
+        SemaphoreSimulation semaphore = mapManager.getSemaphoreAt(currentPosition);
+        if (semaphore == null || semaphore.getCurrentState() == SemaphoreSimulation.LightState.GREEN) {
+            return null;
         }
+        carState = CarState.WAITING_SEMAPHORE;
+        return semaphore;
+    }
+
+    /**
+     * Resume after the light at the current position turned green
+     */
+    public void resumeMoving() {
+        carState = CarState.MOVING;
+    }
+
+    /**
+     * @return true if the car is standing on its destination node (or has no route left)
+     */
+    public boolean hasArrived() {
+        return (currentNode != null && currentNode.equals(destinationNode)) || nodeRoute.isEmpty();
+    }
+
+    /**
+     * Mark the car as finished and release the node it occupies
+     */
+    public void finish() {
+        carState = CarState.FINISHED;
+        state = AgentState.FINISHED;
+        releaseRoad();
+        mapManager.leaveMap(this);
     }
 
     /**
@@ -176,7 +324,7 @@ public class Car extends Agent {
                 canProceed = distributedClient.requestGreenLight(semaphoreId, id);
                 if (!canProceed) {
                     try {
-                        Thread.sleep(100); // Wait before retrying
+                        clock().sleep(100); // Wait before retrying
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         break;
@@ -198,8 +346,7 @@ public class Car extends Agent {
      * Check traffic light using local semaphore
      */
     private void checkTrafficLightLocal(SemaphoreSimulation semaphore) {
-        if (semaphore.getCurrentState() == SemaphoreSimulation.LightState.YELLOW || 
-            semaphore.getCurrentState() == SemaphoreSimulation.LightState.RED) {
+        if (semaphore.getCurrentState() != SemaphoreSimulation.LightState.GREEN) {
             carState = CarState.WAITING_SEMAPHORE;
             System.out.println("Car " + id + " detected red light at position " + currentPosition + ", waiting...");
 
@@ -219,9 +366,8 @@ public class Car extends Agent {
     }
 
     public void stopCar() {
-        if (currentNode != null) {
-            currentNode.release();
-        }
+        releaseRoad();
+        mapManager.leaveMap(this);
         stopAgent();
     }
 
@@ -4,17 +4,22 @@ import simulation.distributed.DistributedSemaphoreClient;
 import simulation.distributed.LightStateDTO;
 import simulation.map.MapManager;
 import simulation.map.Position;
+import simulation.SimulationContext;
 import simulation.TrafficSimulationCore;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class Pedestrian extends Agent {
     private Position currentPosition;
     private MapManager mapManager;
     private SemaphoreSimulation currentSemaphore;
     private Random random;
-    private int crossingProgress; // Track crossing progress 0-100%
+    private int crossingProgress; // Track crossing progress 0-100% when not crossing
+    private volatile long crossingStartedAt;
+    private volatile long crossingMillis;
     private DistributedSemaphoreClient distributedClient;
     private TrafficSimulationCore simulationCore;
 
@@ -27,15 +32,20 @@ public class Pedestrian extends Agent {
     private PedestrianState pedestrianState;
 
     public Pedestrian(int id) {
+        this(SimulationContext.getDefault(), id);
+    }
+
+    public Pedestrian(SimulationContext context, int id) {
+        setContext(context);
         this.id = id;
         this.type = AgentType.PEDESTRIAN;
         this.state = AgentState.ACTIVE;
         this.pedestrianState = PedestrianState.WAITING_SEMAPHORE;
-        this.mapManager = MapManager.getInstance();
+        this.mapManager = context.getMapManager();
         this.random = new Random();
         this.crossingProgress = 0;
-        this.distributedClient = DistributedSemaphoreClient.getInstance();
-        this.simulationCore = TrafficSimulationCore.getInstance();
+        this.distributedClient = context.getDistributedClient();
+        this.simulationCore = context.getSimulation();
 
         initializeAtRandomSemaphore();
     }
@@ -49,6 +59,7 @@ public class Pedestrian extends Agent {
                     currentSemaphore.getPosition().x,
                     currentSemaphore.getPosition().y
             );
+            mapManager.placePedestrian(this, currentPosition);
             System.out.println("Peatón " + id + " apareció en semáforo " + currentSemaphore.id);
         } else {
             System.out.println("Peatón " + id + " no pudo encontrar semáforos disponibles");
@@ -74,7 +85,7 @@ public class Pedestrian extends Agent {
                         return; // Exit thread
                 }
 
-                Thread.sleep(100);
+                clock().sleep(100);
 
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -82,6 +93,7 @@ public class Pedestrian extends Agent {
             }
         }
 
+        mapManager.leaveMap(this);
         System.out.println("Peatón " + id + " finalizado");
     }
 
@@ -108,12 +120,11 @@ public class Pedestrian extends Agent {
         }
 
         if (canCross) {
-            pedestrianState = PedestrianState.CROSSING;
-            crossingProgress = 0;
+            beginCrossing();
             System.out.println("Peatón " + id + " comenzó a cruzar");
         } else {
             // Couldn't cross, wait and try again
-            Thread.sleep(500);
+            clock().sleep(500);
         }
     }
 
@@ -157,20 +168,24 @@ public class Pedestrian extends Agent {
             return;
         }
 
-        // Simple crossing: just wait for the crossing time
+        // Simple crossing: wait for the crossing time, or until the light turns green
         long crossingTime = currentSemaphore.getCrossingTime();
         System.out.println("Peatón " + id + " cruzando por " + (crossingTime/1000) + " segundos");
 
-        long startTime = System.currentTimeMillis();
+        long startTime = clock().now();
+        CompletableFuture<SemaphoreSimulation.LightState> green =
+                currentSemaphore.onPhase(SemaphoreSimulation.LightState.GREEN);
+        // A remote semaphore can only be polled
+        boolean useDistributed = simulationCore.isDistributedModeEnabled();
 
         while (running && pedestrianState == PedestrianState.CROSSING) {
-            long elapsed = System.currentTimeMillis() - startTime;
-            crossingProgress = (int) ((elapsed * 100) / crossingTime);
+            long elapsed = clock().now() - startTime;
 
             // Check if crossing is complete
             if (elapsed >= crossingTime) {
                 // Successfully crossed
                 finishCrossingAtSemaphore();
+                crossingProgress = 100;
                 pedestrianState = PedestrianState.FINISHED;
                 state = AgentState.FINISHED;
                 System.out.println("Peatón " + id + " cruzó exitosamente");
@@ -178,7 +193,7 @@ public class Pedestrian extends Agent {
             }
 
             // Check if semaphore changed to green (should stop crossing)
-            boolean shouldStop = checkSemaphoreStateChanged();
+            boolean shouldStop = green.isDone() || (useDistributed && checkSemaphoreStateChanged());
             if (shouldStop) {
                 System.out.println("Peatón " + id + " detenido - semáforo cambió a verde");
                 finishCrossingAtSemaphore();
@@ -186,7 +201,15 @@ public class Pedestrian extends Agent {
                 break;
             }
 
-            Thread.sleep(200);
+            long wait = useDistributed ? Math.min(crossingTime - elapsed, 200) : crossingTime - elapsed;
+            CompletableFuture<Void> deadline = clock().after(wait);
+            try {
+                CompletableFuture.anyOf(green, deadline).get();
+            } catch (ExecutionException e) {
+                // The light or the deadline, either way check again
+            } finally {
+                deadline.cancel(false);
+            }
         }
     }
 
@@ -229,10 +252,54 @@ public class Pedestrian extends Agent {
         }
     }
 
+    /**
+     * Non-blocking attempt to start crossing at the current semaphore (local mode).
+     * @return true if the light is red and a crossing permit was granted
+     */
+    public boolean tryStartCrossing() {
+        if (currentSemaphore == null) {
+            pedestrianState = PedestrianState.FINISHED;
+            state = AgentState.FINISHED;
+            return false;
+        }
+        if (currentSemaphore.tryStartCrossing()) {
+            beginCrossing();
+            return true;
+        }
+        return false;
+    }
+
+    private void beginCrossing() {
+        crossingProgress = 0;
+        crossingStartedAt = clock().now();
+        crossingMillis = currentSemaphore.getCrossingTime();
+        pedestrianState = PedestrianState.CROSSING;
+    }
+
+    /**
+     * Finish a crossing that lasted the full crossing time
+     */
+    public void completeCrossing() {
+        finishCrossingAtSemaphore();
+        crossingProgress = 100;
+        pedestrianState = PedestrianState.FINISHED;
+        state = AgentState.FINISHED;
+        mapManager.leaveMap(this);
+    }
+
+    /**
+     * Stop crossing because the light left red; the pedestrian waits for the next red phase
+     */
+    public void abortCrossing() {
+        finishCrossingAtSemaphore();
+        pedestrianState = PedestrianState.WAITING_SEMAPHORE;
+    }
+
     public void stopPedestrian() {
         if (currentSemaphore != null && pedestrianState == PedestrianState.CROSSING) {
             finishCrossingAtSemaphore();
         }
+        mapManager.leaveMap(this);
         stopAgent();
     }
 
@@ -240,5 +307,11 @@ public class Pedestrian extends Agent {
     public Position getCurrentPosition() { return currentPosition; }
     public PedestrianState getPedestrianState() { return pedestrianState; }
     public SemaphoreSimulation getCurrentSemaphore() { return currentSemaphore; }
-    public int getCrossingProgress() { return crossingProgress; }
+    public int getCrossingProgress() {
+        long duration = crossingMillis;
+        if (pedestrianState == PedestrianState.CROSSING && duration > 0) {
+            return (int) Math.min(100, (clock().now() - crossingStartedAt) * 100 / duration);
+        }
+        return crossingProgress;
+    }
 }
\ No newline at end of file
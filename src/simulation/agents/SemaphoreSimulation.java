@@ -1,20 +1,38 @@
 package simulation.agents;
 
 import simulation.map.Position;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
+/**
+ * A traffic light. Its light is not stored but computed from the simulation clock and its
+ * SignalTiming (see getCurrentState), so reading it is arithmetic on one volatile field and
+ * the semaphore needs no thread of its own. A driver calls onPhaseBoundary when a phase
+ * begins (SignalController for the thread engine, SignalStepHandler for the discrete-event
+ * engine) to wake the agents waiting on the light and reset the pedestrian permits.
+ *
+ * Agents that only need to know when a light begins subscribe instead of polling: onPhase
+ * returns a future completed at the next change to that light, and phase listeners are told
+ * of every change. Both run on the driver's thread right after the change.
+ */
 public class SemaphoreSimulation extends Agent {
-    private static int redLightTimer;
-    private static int yellowLightTimer;
-    private static int greenLightTimer;
-
     public enum LightState { GREEN, YELLOW, RED }
+    private static final LightState[] LIGHTS = LightState.values();
 
-    private volatile LightState currentState;
+    private volatile SignalTiming timing;
     private Position position;
-    private long lastChangeTime;
+    private LightState announcedState;      // light of the last phase boundary handled, guarded by stateLock
+    private final Map<LightState, CompletableFuture<LightState>> nextPhases = new EnumMap<>(LightState.class); // guarded by stateLock
+    private final List<Consumer<LightState>> phaseListeners = new CopyOnWriteArrayList<>();
 
     private final ReentrantLock stateLock;
     private final Condition greenLightCondition;
@@ -29,8 +47,8 @@ public class SemaphoreSimulation extends Agent {
         this.position = position;
         this.type = AgentType.SEMAPHORE;
         this.state = AgentState.ACTIVE;
-        this.currentState = LightState.RED; // Start at red
-        this.lastChangeTime = System.currentTimeMillis();
+        this.timing = SignalTiming.of(0, 0, 0); // Red until started, timers set by the simulation
+        this.announcedState = LightState.RED;
 
         this.stateLock = new ReentrantLock();
         this.greenLightCondition = stateLock.newCondition();
@@ -38,106 +56,210 @@ public class SemaphoreSimulation extends Agent {
         this.pedestrianCrossingSemaphore = new Semaphore(MAX_CROSSING_PEDESTRIANS, true);
     }
 
-    @Override
-    public void run() {
-        System.out.println("Semáforo " + id + " iniciado en posición: " + position);
-
-        while (running) {
-            try {
-                long elapsed = System.currentTimeMillis() - lastChangeTime;
-                long duration = getCurrentDuration();
-
-                if (elapsed >= duration) {
-                    changeToNextState();
-                    lastChangeTime = System.currentTimeMillis(); // reset timer after state change
-                }
-
-                Thread.sleep(100); // check every 100ms
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+    /**
+     * Start the light cycle at simulated time now. Called by the driver; the semaphore has
+     * no thread, so start() is not used.
+     */
+    public void startCycle(long now) {
+        stateLock.lock();
+        try {
+            running = true; // A stopped semaphore can be started again
+            timing = timing.startedAt(now);
+        } finally {
+            stateLock.unlock();
         }
+        System.out.println("Semáforo " + id + " iniciado en posición: " + position);
+        onPhaseBoundary();
     }
 
-    private void changeToNextState() {
+    /**
+     * A phase may have begun: wake the agents waiting for the new light and set the pedestrian
+     * permits. Calls that find the light already handled do nothing, so a late or repeated call
+     * is harmless.
+     */
+    public void onPhaseBoundary() {
+        LightState current = getCurrentState();
+        CompletableFuture<LightState> reached;
         stateLock.lock();
         try {
-            switch (currentState) {
-                case GREEN -> {
-                    currentState = LightState.YELLOW;
+            if (current == announcedState) {
+                return;
+            }
+            announcedState = current;
+            reached = nextPhases.remove(current);
+            switch (current) {
+                case YELLOW -> {
                     // When changing from green to yellow, pedestrians should stop crossing
                     pedestrianCrossingSemaphore.drainPermits(); // Stop new pedestrians from crossing
                 }
-                case YELLOW -> {
-                    currentState = LightState.RED;
+                case RED -> {
                     // When changing to red, allow pedestrians to cross
                     pedestrianCrossingSemaphore.release(MAX_CROSSING_PEDESTRIANS); // Reset permits
                     redLightCondition.signalAll(); // Notify waiting pedestrians
                 }
-                case RED -> {
-                    currentState = LightState.GREEN;
+                case GREEN -> {
                     // When changing to green, stop pedestrians from crossing
                     pedestrianCrossingSemaphore.drainPermits(); // Stop pedestrians
                     greenLightCondition.signalAll(); // Notify waiting vehicles
                     System.out.println("Semáforo " + id + " señaló a todos los carros en espera");
                 }
             }
-            System.out.println("Semáforo " + id + " cambió a: " + currentState);
+            System.out.println("Semáforo " + id + " cambió a: " + current);
+        } finally {
+            stateLock.unlock();
+        }
+
+        // Subscribers run outside the lock, so they may read the light or subscribe again
+        if (reached != null) {
+            reached.complete(current);
+        }
+        for (Consumer<LightState> listener : phaseListeners) {
+            listener.accept(current);
+        }
+    }
+
+    /**
+     * @param light The light to wait for
+     * @return A future completed with the light when it next turns to the given one, at once
+     *         if it already is, or when the semaphore stops (check isRunning)
+     */
+    public CompletableFuture<LightState> onPhase(LightState light) {
+        stateLock.lock();
+        try {
+            LightState current = getCurrentState();
+            if (!running || current == light) {
+                return CompletableFuture.completedFuture(current);
+            }
+            // One shared future per light; each caller gets its own copy to cancel or complete
+            return nextPhases.computeIfAbsent(light, l -> new CompletableFuture<>()).copy();
         } finally {
             stateLock.unlock();
         }
     }
 
+    /**
+     * @param listener Called with the new light at every change, on the driver's thread
+     */
+    public void addPhaseListener(Consumer<LightState> listener) {
+        phaseListeners.add(listener);
+    }
+
+    public void removePhaseListener(Consumer<LightState> listener) {
+        phaseListeners.remove(listener);
+    }
+
+    /**
+     * @return Simulated time of the next light change after now, or SignalTiming.NEVER
+     */
+    public long getNextChangeTime(long now) {
+        return timing.nextChangeAt(now);
+    }
+
     // Return the correct duration based on the current state
-    private long getCurrentDuration() {
-        return switch (currentState) {
-            case GREEN -> greenLightTimer * 1000L;
-            case YELLOW -> yellowLightTimer * 1000L;
-            case RED -> redLightTimer * 1000L;
+    public long getCurrentDuration() {
+        SignalTiming current = timing;
+        return switch (current.stateAt(clock().now())) {
+            case GREEN -> current.getGreenMillis();
+            case YELLOW -> current.getYellowMillis();
+            case RED -> current.getRedMillis();
         };
     }
 
     public void stopSemaphore() {
-        stopAgent();
+        List<CompletableFuture<LightState>> pending;
         stateLock.lock();
         try {
+            stopAgent();
+            // The light stays as it is now
+            timing = timing.stoppedAt(clock().now());
             greenLightCondition.signalAll();
             redLightCondition.signalAll();
+            pending = new ArrayList<>(nextPhases.values());
+            nextPhases.clear();
         } finally {
             stateLock.unlock();
         }
+        LightState current = getCurrentState();
+        pending.forEach(future -> future.complete(current));
     }
 
+    /**
+     * @return The light now, computed from the clock and the timing without taking a lock
+     */
     public LightState getCurrentState() {
+        return timing.stateAt(clock().now());
+    }
+
+    /**
+     * The light and the phase it belongs to, from one read of the timing and the clock and
+     * without a lock. The phase number (epoch) grows by one at every light change, so two
+     * stamps with the same epoch saw the same phase even if a whole cycle passed in between.
+     * @return epoch << 2 | light ordinal; decode with stateOf and epochOf
+     */
+    public long getPhaseStamp() {
+        return timing.stampAt(clock().now());
+    }
+
+    public static LightState stateOf(long phaseStamp) {
+        return LIGHTS[(int) (phaseStamp & 3)];
+    }
+
+    public static long epochOf(long phaseStamp) {
+        return phaseStamp >> 2;
+    }
+
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * @param timers Green, yellow and red seconds, taken over at the next cycle boundary once running
+     */
+    public void setLightsTimer(int[] timers) {
+        updateTiming(current -> current.withDurations(timers[0] * 1000L, timers[1] * 1000L, timers[2] * 1000L,
+                clock().now()));
+    }
+
+    /**
+     * @param offsetMillis Shift of this intersection's cycle against the others (green waves),
+     *                     taken over at the next cycle boundary once running
+     */
+    public void setOffset(long offsetMillis) {
+        updateTiming(current -> current.withOffset(offsetMillis, clock().now()));
+    }
+
+    /**
+     * Run the plan from the next cycle boundary (at once if the cycle has not started). The
+     * light never jumps: the running cycle ends, and the light stays red until the plan's
+     * first cycle (by its offset) begins. The signal drivers pick it up at the next change.
+     */
+    public void applyPlan(SignalPlan plan) {
+        updateTiming(current -> current.withPlan(plan, clock().now()));
+    }
+
+    // Writers are rare and serialised; readers only read the volatile field
+    private void updateTiming(UnaryOperator<SignalTiming> change) {
         stateLock.lock();
         try {
-            return currentState;
+            timing = change.apply(timing);
         } finally {
             stateLock.unlock();
         }
     }
 
-    public Position getPosition() {
-        return position;
-    }
-
-    // Called from TrafficSimulationCore
-    public static void setLightsTimer(int[] timers) {
-        greenLightTimer = timers[0];
-        yellowLightTimer = timers[1];
-        redLightTimer = timers[2];
+    public SignalTiming getTiming() {
+        return timing;
     }
 
     // Method for cars to wait for green light
     public void waitForGreenLight() throws InterruptedException {
         stateLock.lock();
         try {
-            while (currentState != LightState.GREEN && running) {
-                System.out.println("Carro esperando en semáforo " + id + " (estado: " + currentState + ")");
+            while (getCurrentState() != LightState.GREEN && running) {
+                System.out.println("Carro esperando en semáforo " + id + " (estado: " + getCurrentState() + ")");
                 greenLightCondition.await(); // Wait until signaled
             }
-            System.out.println("Carro puede avanzar en semáforo " + id + " (estado: " + currentState + ")");
+            System.out.println("Carro puede avanzar en semáforo " + id + " (estado: " + getCurrentState() + ")");
         } finally {
             stateLock.unlock();
         }
@@ -148,8 +270,8 @@ public class SemaphoreSimulation extends Agent {
         stateLock.lock();
         try {
             // Wait for red light
-            while (currentState != LightState.RED && running) {
-                System.out.println("Peatón esperando semáforo rojo en " + id + " (estado: " + currentState + ")");
+            while (getCurrentState() != LightState.RED && running) {
+                System.out.println("Peatón esperando semáforo rojo en " + id + " (estado: " + getCurrentState() + ")");
                 redLightCondition.await();
             }
 
@@ -166,6 +288,12 @@ public class SemaphoreSimulation extends Agent {
         }
     }
 
+    // Non-blocking variant for engines that cannot park the caller: cross only if red and a permit is free
+    // No lock: onPhaseBoundary drains the permits at green, so a late crossing overlaps at most the change itself
+    public boolean tryStartCrossing() {
+        return getCurrentState() == LightState.RED && pedestrianCrossingSemaphore.tryAcquire();
+    }
+
     // Method for pedestrians to release crossing permit after crossing
     public void finishCrossing() {
         pedestrianCrossingSemaphore.release();
@@ -174,6 +302,6 @@ public class SemaphoreSimulation extends Agent {
 
     // Get the crossing time (red light duration)
     public long getCrossingTime() {
-        return redLightTimer * 1000L; // Return crossing time in milliseconds
+        return timing.getRedMillis(); // Return crossing time in milliseconds
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package simulation.agents;
+
+import simulation.clock.TimingWheel;
+
+import java.util.List;
+
+/**
+ * Drives every semaphore of a simulation from the timing wheel (thread engine). The lights are
+ * computed from the clock (SignalTiming), so there is nothing to do between changes: each
+ * semaphore has one timer at its next phase boundary, which calls onPhaseBoundary and sets the
+ * timer for the boundary after. N semaphores cost N pending timers and no thread.
+ *
+ * Timing changes while running take over at a cycle boundary after the timer already set, so
+ * the timers pick them up; only a light that never changed needs timingChanged() to get one.
+ */
+public class SignalController {
+    private final List<SemaphoreSimulation> semaphores;
+    private final TimingWheel.Timer[] timers;   // guarded by this
+    private final long[] plans;                 // plan of each semaphore's timer, guarded by this
+    private TimingWheel wheel;
+    private boolean running;
+
+    public SignalController(List<SemaphoreSimulation> semaphores) {
+        this.semaphores = List.copyOf(semaphores);
+        this.timers = new TimingWheel.Timer[this.semaphores.size()];
+        this.plans = new long[this.semaphores.size()];
+    }
+
+    /**
+     * Start the cycles of all semaphores now and time their phase changes on the wheel
+     */
+    public synchronized void start(TimingWheel wheel) {
+        this.wheel = wheel;
+        long now = wheel.now();
+        for (SemaphoreSimulation semaphore : semaphores) {
+            semaphore.startCycle(now);
+        }
+        running = true;
+        for (int i = 0; i < semaphores.size(); i++) {
+            schedule(i);
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (int i = 0; i < timers.length; i++) {
+            cancel(i);
+        }
+    }
+
+    /**
+     * Re-read the timings of all semaphores and set their timers again
+     */
+    public synchronized void timingChanged() {
+        if (!running) {
+            return;
+        }
+        for (int i = 0; i < semaphores.size(); i++) {
+            cancel(i);
+            semaphores.get(i).onPhaseBoundary();
+            schedule(i);
+        }
+    }
+
+    // Wheel thread, at the boundary the timer was set for; a timer re-planned meanwhile is stale
+    private synchronized void phaseBoundary(int index, long plan) {
+        if (!running || plan != plans[index]) {
+            return;
+        }
+        semaphores.get(index).onPhaseBoundary();
+        schedule(index);
+    }
+
+    private void schedule(int index) {
+        long now = wheel.now();
+        long next = semaphores.get(index).getNextChangeTime(now);
+        long plan = ++plans[index];
+        timers[index] = next != SignalTiming.NEVER ? wheel.schedule(next - now, () -> phaseBoundary(index, plan)) : null;
+    }
+
+    private void cancel(int index) {
+        if (timers[index] != null) {
+            timers[index].cancel();
+            timers[index] = null;
+        }
+    }
+}
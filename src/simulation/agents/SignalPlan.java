@@ -0,0 +1,58 @@
+package simulation.agents;
+
+/**
+ * Timing of one intersection: green, yellow and red durations (the splits of its cycle) and
+ * the offset of its cycle from the common start. Immutable; a semaphore switches to a new
+ * plan at its next cycle boundary (SemaphoreSimulation.applyPlan).
+ */
+public final class SignalPlan {
+    private final long greenMillis;
+    private final long yellowMillis;
+    private final long redMillis;
+    private final long offsetMillis;
+
+    private SignalPlan(long greenMillis, long yellowMillis, long redMillis, long offsetMillis) {
+        if (greenMillis < 0 || yellowMillis < 0 || redMillis < 0) {
+            throw new IllegalArgumentException("Negative light duration: green " + greenMillis
+                    + ", yellow " + yellowMillis + ", red " + redMillis);
+        }
+        this.greenMillis = greenMillis;
+        this.yellowMillis = yellowMillis;
+        this.redMillis = redMillis;
+        this.offsetMillis = offsetMillis;
+    }
+
+    public static SignalPlan of(long greenMillis, long yellowMillis, long redMillis, long offsetMillis) {
+        return new SignalPlan(greenMillis, yellowMillis, redMillis, offsetMillis);
+    }
+
+    /**
+     * A cycle of the given length divided in the proportions of the splits
+     */
+    public static SignalPlan ofCycle(long cycleMillis, double greenSplit, double yellowSplit, double redSplit,
+                                     long offsetMillis) {
+        double total = greenSplit + yellowSplit + redSplit;
+        if (cycleMillis <= 0 || !(total > 0)) {
+            throw new IllegalArgumentException("Invalid cycle " + cycleMillis + " ms with splits "
+                    + greenSplit + "/" + yellowSplit + "/" + redSplit);
+        }
+        long green = Math.round(cycleMillis * greenSplit / total);
+        long yellow = Math.round(cycleMillis * yellowSplit / total);
+        return new SignalPlan(green, yellow, Math.max(0, cycleMillis - green - yellow), offsetMillis);
+    }
+
+    public long cycleMillis() {
+        return greenMillis + yellowMillis + redMillis;
+    }
+
+    public long getGreenMillis() { return greenMillis; }
+    public long getYellowMillis() { return yellowMillis; }
+    public long getRedMillis() { return redMillis; }
+    public long getOffsetMillis() { return offsetMillis; }
+
+    @Override
+    public String toString() {
+        return "green " + greenMillis + " ms, yellow " + yellowMillis + " ms, red " + redMillis
+                + " ms, offset " + offsetMillis + " ms";
+    }
+}
@@ -0,0 +1,257 @@
+package simulation.agents;
+
+import simulation.agents.SemaphoreSimulation.LightState;
+
+/**
+ * The light of a semaphore as a pure function of simulated time.
+ *
+ * A cycle is red, green, yellow, starting at cycleStart + offset; the offset shifts an
+ * intersection's cycle against its neighbours (green waves). Before the cycle is started the
+ * light is red, and once stopped it keeps the light it had at that moment.
+ *
+ * A new plan (withPlan) takes over at the next cycle boundary of the running one. The light
+ * then stays red until the new plan's own cycle begins, so every intersection keeps its offset
+ * from the common cycle start and a change never cuts a green or yellow short.
+ *
+ * Instances are immutable and swapped as a whole, so a reader gets durations, start and
+ * offset from one volatile read and needs no lock.
+ */
+public final class SignalTiming {
+    /** cycleStart of a semaphore that has not started */
+    public static final long NOT_STARTED = Long.MIN_VALUE;
+    /** stoppedAt of a semaphore still running, and nextChangeAt when the light never changes */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private static final LightState[] PHASES = {LightState.RED, LightState.GREEN, LightState.YELLOW};
+
+    private final long greenMillis;
+    private final long yellowMillis;
+    private final long redMillis;
+    private final long offsetMillis;
+    private final long cycleStart;
+    private final long stoppedAt;
+    // Plan change: previous runs until switchAt, then red until anchor, where this plan's cycles begin
+    private final SignalTiming previous;
+    private final long switchAt;
+    private final long anchor;
+    private final long phaseBase;
+
+    private SignalTiming(long greenMillis, long yellowMillis, long redMillis, long offsetMillis,
+                         long cycleStart, long stoppedAt) {
+        this(greenMillis, yellowMillis, redMillis, offsetMillis, cycleStart, stoppedAt,
+                null, NOT_STARTED, NOT_STARTED, 0);
+    }
+
+    private SignalTiming(long greenMillis, long yellowMillis, long redMillis, long offsetMillis,
+                         long cycleStart, long stoppedAt, SignalTiming previous, long switchAt,
+                         long anchor, long phaseBase) {
+        if (greenMillis < 0 || yellowMillis < 0 || redMillis < 0) {
+            throw new IllegalArgumentException("Negative light duration: green " + greenMillis
+                    + ", yellow " + yellowMillis + ", red " + redMillis);
+        }
+        this.greenMillis = greenMillis;
+        this.yellowMillis = yellowMillis;
+        this.redMillis = redMillis;
+        this.offsetMillis = offsetMillis;
+        this.cycleStart = cycleStart;
+        this.stoppedAt = stoppedAt;
+        this.previous = previous;
+        this.switchAt = switchAt;
+        this.anchor = anchor;
+        this.phaseBase = phaseBase;
+    }
+
+    /**
+     * A cycle that has not started yet
+     */
+    public static SignalTiming of(long greenMillis, long yellowMillis, long redMillis) {
+        return new SignalTiming(greenMillis, yellowMillis, redMillis, 0, NOT_STARTED, NEVER);
+    }
+
+    /**
+     * @return This timing with other durations from the next cycle boundary after now, like withPlan
+     */
+    public SignalTiming withDurations(long greenMillis, long yellowMillis, long redMillis, long now) {
+        return withPlan(SignalPlan.of(greenMillis, yellowMillis, redMillis, offsetMillis), now);
+    }
+
+    /**
+     * @return This timing with another offset from the next cycle boundary after now, like withPlan
+     */
+    public SignalTiming withOffset(long offsetMillis, long now) {
+        return withPlan(SignalPlan.of(greenMillis, yellowMillis, redMillis, offsetMillis), now);
+    }
+
+    /**
+     * @return A timing that runs the plan from the next cycle boundary after now, or at once if
+     *         the cycle has not started. A plan given before the last one took over replaces it.
+     */
+    public SignalTiming withPlan(SignalPlan plan, long now) {
+        if (!isStarted()) {
+            return new SignalTiming(plan.getGreenMillis(), plan.getYellowMillis(), plan.getRedMillis(),
+                    plan.getOffsetMillis(), cycleStart, stoppedAt);
+        }
+        // The signal drivers wake at the next change as timed now: switching before it would
+        // leave a change of the new plan without its event
+        long wake = nextChangeAt(now);
+        if (previous != null && now < switchAt) {
+            long switchTime = previous.switchTimeAt(now, wake);
+            if (switchTime <= switchAt) {
+                return previous.switchTo(plan, switchTime).stoppedAt(stoppedAt);
+            }
+        }
+        // Once this timing has taken over, the plan before it no longer matters: drop it
+        SignalTiming current = previous != null && now < switchAt ? this
+                : new SignalTiming(greenMillis, yellowMillis, redMillis, offsetMillis,
+                        cycleStart, stoppedAt, null, switchAt, anchor, phaseBase);
+        return current.switchTo(plan, current.switchTimeAt(now, wake));
+    }
+
+    // First cycle start after now and not before the next timed change
+    private long switchTimeAt(long now, long wake) {
+        if (wake == NEVER) {
+            return nextCycleStartAt(now);
+        }
+        return Math.max(wake, nextCycleStartAt(Math.max(now, wake - 1)));
+    }
+
+    private SignalTiming switchTo(SignalPlan plan, long switchTime) {
+        long cycle = plan.cycleMillis();
+        long firstCycle = cycle > 0
+                ? switchTime + Math.floorMod(cycleStart + plan.getOffsetMillis() - switchTime, cycle)
+                : switchTime;
+        // The red held from the switch is a new phase unless the old cycle was already red there
+        long base = 3 * Math.floorDiv(phaseNumber(switchTime) + 2, 3);
+        SignalTiming running = new SignalTiming(greenMillis, yellowMillis, redMillis, offsetMillis,
+                cycleStart, NEVER, previous, switchAt, anchor, phaseBase);
+        return new SignalTiming(plan.getGreenMillis(), plan.getYellowMillis(), plan.getRedMillis(),
+                plan.getOffsetMillis(), cycleStart, stoppedAt, running, switchTime, firstCycle, base);
+    }
+
+    public SignalTiming startedAt(long now) {
+        return new SignalTiming(greenMillis, yellowMillis, redMillis, offsetMillis, now, NEVER);
+    }
+
+    public SignalTiming stoppedAt(long now) {
+        return new SignalTiming(greenMillis, yellowMillis, redMillis, offsetMillis, cycleStart, now,
+                previous, switchAt, anchor, phaseBase);
+    }
+
+    public long cycleMillis() {
+        return redMillis + greenMillis + yellowMillis;
+    }
+
+    /**
+     * @return The light at simulated time now
+     */
+    public LightState stateAt(long now) {
+        return PHASES[(int) Math.floorMod(phaseNumber(now), 3L)];
+    }
+
+    /**
+     * @return The light and its phase number packed in one word (see SemaphoreSimulation.getPhaseStamp)
+     */
+    public long stampAt(long now) {
+        long phase = phaseNumber(now);
+        return phase << 2 | PHASES[(int) Math.floorMod(phase, 3L)].ordinal();
+    }
+
+    /**
+     * @return Phases begun since the cycle start: 3 per cycle (red, green, yellow), so it
+     *         grows by one at every change and phaseNumber % 3 is the light
+     */
+    public long phaseNumber(long now) {
+        long t = Math.min(now, stoppedAt);
+        if (previous != null && t < switchAt) {
+            return previous.phaseNumber(t);
+        }
+        if (anchor == NOT_STARTED) {
+            return ownPhaseNumber(t);
+        }
+        if (t < anchor) {
+            return phaseBase;
+        }
+        // Renumbered so that the plan's first cycle goes on from the red it began with
+        return phaseBase + ownPhaseNumber(t) - 3 * Math.floorDiv(ownPhaseNumber(anchor), 3);
+    }
+
+    private long ownPhaseNumber(long t) {
+        long cycle = cycleMillis();
+        if (cycleStart == NOT_STARTED || cycle == 0) {
+            return 0;
+        }
+        long sinceStart = t - cycleStart - offsetMillis;
+        long cycles = Math.floorDiv(sinceStart, cycle);
+        long inCycle = sinceStart - cycles * cycle;
+        int phase = inCycle < redMillis ? 0 : inCycle < redMillis + greenMillis ? 1 : 2;
+        return cycles * 3 + phase;
+    }
+
+    /**
+     * @return The first time after now at which the light changes, or NEVER
+     */
+    public long nextChangeAt(long now) {
+        if (cycleStart == NOT_STARTED || now >= stoppedAt) {
+            return NEVER;
+        }
+        long next;
+        if (previous != null && now < switchAt) {
+            next = Math.min(previous.nextChangeAt(now), switchAt);
+        } else if (anchor != NOT_STARTED && now < anchor) {
+            next = anchor;
+        } else {
+            next = ownNextBoundary(now);
+        }
+        if (next >= stoppedAt) {
+            return NEVER;
+        }
+        // A zero-length phase, or a plan taking over on the same light, is not a change: skip it
+        return stateAt(next) == stateAt(now) ? nextChangeAt(next) : next;
+    }
+
+    // Next phase boundary of this timing's own cycle, or NEVER if its light never changes
+    private long ownNextBoundary(long now) {
+        int phases = (redMillis > 0 ? 1 : 0) + (greenMillis > 0 ? 1 : 0) + (yellowMillis > 0 ? 1 : 0);
+        if (phases < 2) {
+            return NEVER;
+        }
+        long inCycle = Math.floorMod(now - cycleStart - offsetMillis, cycleMillis());
+        long boundary;
+        if (inCycle < redMillis) {
+            boundary = redMillis;
+        } else if (inCycle < redMillis + greenMillis) {
+            boundary = redMillis + greenMillis;
+        } else {
+            boundary = cycleMillis();
+        }
+        return now + (boundary - inCycle);
+    }
+
+    // First cycle start (red) after now, so the light shown now and the change already timed
+    // stand; a light that never changes can switch at once
+    private long nextCycleStartAt(long now) {
+        if (anchor != NOT_STARTED && now < anchor) {
+            return anchor;
+        }
+        if (ownNextBoundary(now) == NEVER) {
+            return now;
+        }
+        long inCycle = Math.floorMod(now - cycleStart - offsetMillis, cycleMillis());
+        return now + cycleMillis() - inCycle;
+    }
+
+    public long getGreenMillis() { return greenMillis; }
+    public long getYellowMillis() { return yellowMillis; }
+    public long getRedMillis() { return redMillis; }
+    public long getOffsetMillis() { return offsetMillis; }
+    public long getCycleStart() { return cycleStart; }
+    public boolean isStarted() { return cycleStart != NOT_STARTED; }
+    public boolean isStopped() { return stoppedAt != NEVER; }
+
+    /**
+     * @return true while a new plan waits for the running cycle to end
+     */
+    public boolean isSwitchPending(long now) {
+        return previous != null && now < switchAt;
+    }
+}
@@ -0,0 +1,44 @@
+package simulation.agents;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Signal timing of a whole map: one SignalPlan per intersection, and a default for the
+ * intersections it does not name (or none, to leave them as they are). Immutable, so a new
+ * plan is swapped in as a whole (TrafficSimulationCore.setTimingPlan).
+ */
+public final class TimingPlan {
+    private final String name;
+    private final SignalPlan defaults;
+    private final Map<String, SignalPlan> intersections;
+
+    /**
+     * @param name Name shown in the logs
+     * @param defaults Plan of the intersections not named, or null to keep their timing
+     * @param intersections Plans by the id of the semaphore's node ("N_4_4")
+     */
+    public TimingPlan(String name, SignalPlan defaults, Map<String, SignalPlan> intersections) {
+        this.name = name;
+        this.defaults = defaults;
+        this.intersections = Collections.unmodifiableMap(new LinkedHashMap<>(intersections));
+    }
+
+    /**
+     * @return The plan of the intersection at the node, or null if it keeps its timing
+     */
+    public SignalPlan planFor(String nodeId) {
+        return intersections.getOrDefault(nodeId, defaults);
+    }
+
+    public String getName() { return name; }
+    public SignalPlan getDefaults() { return defaults; }
+    public Map<String, SignalPlan> getIntersections() { return intersections; }
+
+    @Override
+    public String toString() {
+        return name + " (" + intersections.size() + " intersections"
+                + (defaults != null ? ", default " + defaults : "") + ")";
+    }
+}
@@ -1,18 +1,36 @@
 package simulation.agents;
 
-import simulation.TrafficSimulationCore;
+import simulation.SimulationContext;
+import simulation.map.GridlockDetector;
 import simulation.map.MapManager;
 import simulation.map.Position;
+import simulation.map.RoadGraph;
+import simulation.map.TrafficMap;
 import simulation.map.TrafficNode;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * A vehicle covering several consecutive nodes: a truck (2 segments), a bus or an articulated
+ * bus (3 or more). The nodes it holds are its body, front first.
+ *
+ * The starting body is taken all or nothing (TrafficMap.tryAcquireAll), so the truck never
+ * holds part of it while waiting for the rest. A move takes the next node for the front and
+ * lets go of the nodes the rear leaves in one batch (TrafficMap.releaseAll).
+ */
 public class Truck extends Agent {
+    public static final int DEFAULT_SEGMENTS = 2;
+
+    private final int segments;                             // nodes covered once fully on the road
+    private volatile List<TrafficNode> body = List.of();    // nodes held, front first
+    private volatile List<Position> segmentPositions;       // where the segments are drawn, front first
     private Position currentPosition;
-    private Position rearPosition;
-    private TrafficNode currentFrontNode;
-    private TrafficNode currentRearNode;
+    private TrafficNode startNode;
     private TrafficNode destinationNode;
     private Queue<TrafficNode> nodeRoute;
     private MapManager mapManager;
@@ -27,24 +45,41 @@ public class Truck extends Agent {
     private TruckState truckState;
 
     public Truck(int id, Position start, Position destination) {
+        this(SimulationContext.getDefault(), id, start, destination);
+    }
+
+    public Truck(SimulationContext context, int id, Position start, Position destination) {
+        this(context, id, start, destination, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param segments Nodes the vehicle covers (2 for a truck, 3 or more for an articulated bus)
+     */
+    public Truck(SimulationContext context, int id, Position start, Position destination, int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("A truck needs at least one segment: " + segments);
+        }
+        setContext(context);
         this.id = id;
+        this.segments = segments;
         this.currentPosition = start;
+        this.segmentPositions = List.of(start);
         this.type = AgentType.TRUCK;
         this.state = AgentState.ACTIVE;
         this.truckState = TruckState.MOVING;
-        this.mapManager = MapManager.getInstance();
+        this.mapManager = context.getMapManager();
         this.nodeRoute = new LinkedBlockingQueue<>();
 
         // Convert positions to nodes
-        this.currentFrontNode = mapManager.getNodeAtPosition(start);
+        this.startNode = mapManager.getNodeAtPosition(start);
         this.destinationNode = mapManager.getNodeAtPosition(destination);
 
     }
 
     private void calculateNodeRoute() {
-        if (currentFrontNode != null && destinationNode != null) {
+        if (startNode != null && destinationNode != null) {
             // Use the new dynamic route calculation
-            nodeRoute = mapManager.calculateRoute(currentFrontNode, destinationNode);
+            nodeRoute = mapManager.calculateRoute(startNode, destinationNode);
             System.out.println("Truck " + id + " route calculated: " + nodeRoute.size() + " nodes");
         } else {
             System.out.println("Truck " + id + " could not find start or end node!");
@@ -54,141 +89,252 @@ public class Truck extends Agent {
     }
 
     /**
-     * Calculate the initial rear position based on the truck's intended direction
+     * The start node and the nodes behind it along the roads leading there, preferring the
+     * one straight behind the direction of travel
      */
-    private void calculateInitialRearPosition() {
-        if (nodeRoute.isEmpty()) {
-            // If no route, default to behind the start position (backup)
-            this.rearPosition = new Position(currentPosition.x - 1, currentPosition.y);
-            this.currentRearNode = mapManager.getNodeAtPosition(rearPosition);
-            return;
-        }
+    private List<TrafficNode> initialBody() {
+        TrafficMap map = mapManager.getTrafficMap();
+        RoadGraph graph = map.getGraph();
+        List<TrafficNode> wanted = new ArrayList<>(segments);
+        wanted.add(startNode);
 
-        // Get the first node we're moving to
         TrafficNode firstMoveNode = nodeRoute.peek();
-
-        // Calculate direction from current position to first move
-        int dx = firstMoveNode.position.x - currentPosition.x;
-        int dy = firstMoveNode.position.y - currentPosition.y;
-
-        // Normalize direction (we're only moving in one direction at a time in grid)
-        if (Math.abs(dx) > Math.abs(dy)) {
-            // Horizontal movement
-            if (dx > 0) {
-                // Moving right → rear should be left
-                this.rearPosition = new Position(currentPosition.x - 1, currentPosition.y);
-            } else {
-                // Moving left → rear should be right
-                this.rearPosition = new Position(currentPosition.x + 1, currentPosition.y);
+        int node = startNode.getIndex();
+        int dx = firstMoveNode != null ? firstMoveNode.position.x - startNode.position.x : 0;
+        int dy = firstMoveNode != null ? firstMoveNode.position.y - startNode.position.y : 0;
+        while (wanted.size() < segments) {
+            int behind = -1;
+            long straightest = Long.MIN_VALUE;
+            for (int slot = graph.inBegin(node); slot < graph.inEnd(node); slot++) {
+                int from = graph.source(graph.inEdge(slot));
+                long alignment = (long) (graph.x(node) - graph.x(from)) * dx + (long) (graph.y(node) - graph.y(from)) * dy;
+                if (alignment > straightest && !wanted.contains(map.getNodeByIndex(from))) {
+                    behind = from;
+                    straightest = alignment;
+                }
             }
-        } else {
-            // Vertical movement
-            if (dy > 0) {
-                // Moving down → rear should be up
-                this.rearPosition = new Position(currentPosition.x, currentPosition.y - 1);
-            } else {
-                // Moving up → rear should be down
-                this.rearPosition = new Position(currentPosition.x, currentPosition.y + 1);
+            if (behind < 0) {
+                break;
             }
+            wanted.add(map.getNodeByIndex(behind));
+            dx = graph.x(node) - graph.x(behind);
+            dy = graph.y(node) - graph.y(behind);
+            node = behind;
         }
-
-        this.currentRearNode = mapManager.getNodeAtPosition(rearPosition);
-        System.out.println("Truck " + id + " rear position calculated: " + rearPosition +
-                " (direction: dx=" + dx + ", dy=" + dy + ")");
+        return wanted;
     }
 
+    // Take the starting body all or nothing. A truck that does not fit starts shorter and
+    // unfolds as it moves; one whose start node is taken waits off the road to enter it.
     private void acquireInitialNodes() {
-        if (currentFrontNode != null && currentFrontNode.tryAcquire(this)) {
-            System.out.println("Truck " + id + " acquired front node: " + currentFrontNode.nodeId);
+        List<TrafficNode> wanted = initialBody();
+        TrafficMap map = mapManager.getTrafficMap();
+        while (!wanted.isEmpty() && !map.tryAcquireAll(wanted, this)) {
+            wanted = wanted.subList(0, wanted.size() - 1);
         }
-        if (currentRearNode != null && currentRearNode.tryAcquire(this)) {
-            System.out.println("Truck " + id + " acquired rear node: " + currentRearNode.nodeId);
+        body = List.copyOf(wanted);
+        if (wanted.isEmpty()) {
+            Queue<TrafficNode> route = new ArrayDeque<>(nodeRoute.size() + 1);
+            route.add(startNode);
+            route.addAll(nodeRoute);
+            nodeRoute = route;
+            System.out.println("Truck " + id + " start node " + startNode.getTrafficNodeId() + " taken, waiting to enter");
         } else {
-            System.out.println("Truck " + id + " failed to acquire rear node: " +
-                    (currentRearNode != null ? currentRearNode.nodeId : "null"));
+            segmentPositions = positionsOf(body);
+            System.out.println("Truck " + id + " acquired nodes: " + body +
+                    (body.size() < segments ? " (" + body.size() + " of " + segments + " segments)" : ""));
+        }
+    }
+
+    /**
+     * Calculate the route and acquire the starting nodes.
+     * Called once before the truck starts moving, by either execution engine.
+     */
+    public void prepareRoute() {
+        calculateNodeRoute();
+        if (truckState == TruckState.FINISHED) {
+            return;
+        }
+        acquireInitialNodes();
+        mapManager.placeTruck(this, currentPosition, getRearPosition());
+        if (body.isEmpty()) {
+            mapManager.takeTruckOffNodes(this);
         }
     }
 
     @Override
     public void run() {
 
-        calculateNodeRoute();
-        calculateInitialRearPosition();
-        acquireInitialNodes();
+        prepareRoute();
 
-        System.out.println("Truck " + id + " started - Front: " + currentPosition + " Rear: " + rearPosition);
+        System.out.println("Truck " + id + " started - Front: " + currentPosition + " Rear: " + getRearPosition());
 
         while (running && !nodeRoute.isEmpty()) {
             try {
-                TrafficNode nextNode = nodeRoute.peek();
-
-                if (nextNode != null) {
-                    // Try to acquire both the next node and release the rear node
-                    if (tryAcquireNextNode(nextNode)) {
-                        nodeRoute.poll(); // Remove from queue
-
-                        // Update positions
-                        Position oldRear = rearPosition;
-                        rearPosition = currentPosition;
-                        currentPosition = nextNode.position;
-
-                        // Update node occupancy
-                        if (currentRearNode != null) {
-                            currentRearNode.release();
-                            System.out.println("Truck " + id + " released rear node: " + currentRearNode.nodeId);
-                        }
-
-                        currentRearNode = currentFrontNode;
-                        currentFrontNode = nextNode;
-
-                        mapManager.moveTruck(this, oldRear, currentPosition, rearPosition);
-
-                        System.out.println("Truck " + id + " moved - Front: " + currentFrontNode.nodeId +
-                                " Rear: " + currentRearNode.nodeId + " - State: " + truckState);
-
-                        checkTrafficLightForTruck();
-                        Thread.sleep(TrafficSimulationCore.vehicleSpeed); // Movement time
+                if (advance()) {
+                    System.out.println("Truck " + id + " moved - Body: " + body + " - State: " + truckState);
 
-                    } else {
-                        truckState = TruckState.WAITING;
-                        Thread.sleep(200);
-                        System.out.println("Truck " + id + " waiting for node access");
-                    }
+                    checkTrafficLightForTruck();
+                    clock().sleep(getContext().getSimulation().getVehicleSpeed()); // Movement time
                 }
 
                 // Check if reached destination
-                if (currentFrontNode != null && currentFrontNode.equals(destinationNode)) {
-                    releaseAllNodes();
-                    truckState = TruckState.FINISHED;
-                    state = AgentState.FINISHED;
+                if (hasArrived()) {
+                    finish();
                     System.out.println("Truck " + id + " reached destination");
                     break;
                 }
 
             } catch (InterruptedException e) {
-                releaseAllNodes();
                 Thread.currentThread().interrupt();
                 break;
             }
         }
+
+        releaseAllNodes();
     }
 
-    private boolean tryAcquireNextNode(TrafficNode nextNode) {
-        // Try to acquire the next node
-        boolean acquired = nextNode.tryAcquire(this);
-        if (!acquired) {
-            System.out.println("Truck " + id + " failed to acquire next node: " + nextNode.nodeId);
+    /**
+     * Try to move the front of the truck onto the next node of the route; the rest of the
+     * body follows into the nodes ahead of it.
+     * @return true if the truck advanced one node
+     */
+    public boolean tryAdvance() {
+        TrafficNode nextNode = nodeRoute.peek();
+        if (nextNode == null) {
+            return false;
+        }
+
+        if (!nextNode.tryAcquire(this)) {
+            truckState = TruckState.WAITING;
+            blockedOn(nextNode);
+            return false;
         }
-        return acquired;
+        moveOnto(nextNode);
+        return true;
+    }
+
+    /**
+     * Move the front onto the next node of the route, queueing for it while it is taken
+     * (thread engine)
+     * @return false if the truck was stopped before it got the node
+     */
+    public boolean advance() throws InterruptedException {
+        TrafficNode nextNode = nodeRoute.peek();
+        if (nextNode == null) {
+            return false;
+        }
+        if (!nextNode.tryAcquire(this)) {
+            truckState = TruckState.WAITING;
+            System.out.println("Truck " + id + " waiting for node access: " + nextNode.getTrafficNodeId());
+            if (!waitForNode(nextNode)) {
+                return false;
+            }
+        }
+        moveOnto(nextNode);
+        return true;
+    }
+
+    private void moveOnto(TrafficNode nextNode) {
+        nodeRoute.poll(); // Remove from queue
+        rerouted = false;
+        stoppedWaiting();
+
+        // The front takes the new node; the body keeps at most segments - 1 of the old ones
+        List<TrafficNode> held = body;
+        int kept = Math.min(held.size(), segments - 1);
+        List<TrafficNode> moved = new ArrayList<>(kept + 1);
+        moved.add(nextNode);
+        moved.addAll(held.subList(0, kept));
+        body = List.copyOf(moved);
+        mapManager.getTrafficMap().releaseAll(held.subList(kept, held.size()), this);
+
+        Position oldRear = getRearPosition();
+        currentPosition = nextNode.position;
+        segmentPositions = positionsOf(body);
+        truckState = TruckState.MOVING;
+
+        mapManager.moveTruck(this, oldRear, currentPosition, getRearPosition());
+    }
+
+    /**
+     * Picked to break a gridlock: take another road out of the front node if the policy allows
+     * and there is one, otherwise give up the whole body and wait off the road for the next node
+     */
+    @Override
+    protected boolean resolveGridlock(GridlockDetector.Policy policy, TrafficNode blocked) {
+        List<TrafficNode> held = body;
+        if (held.isEmpty()) {
+            return false;
+        }
+        if (policy == GridlockDetector.Policy.REROUTE) {
+            Queue<TrafficNode> detour = mapManager.calculateDetour(held.get(0), blocked, destinationNode);
+            if (detour != null) {
+                nodeRoute = detour;
+                rerouted = true;
+                stoppedWaiting();
+                System.out.println("Truck " + id + " rerouted around gridlock at " + blocked.getTrafficNodeId() +
+                        ": " + detour.size() + " nodes");
+                return true;
+            }
+        }
+        System.out.println("Truck " + id + " backed off to break gridlock, freeing " + held);
+        body = List.of();
+        mapManager.getTrafficMap().releaseAll(held, this);
+        mapManager.takeTruckOffNodes(this);
+        return true;
+    }
+
+    private static List<Position> positionsOf(List<TrafficNode> nodes) {
+        List<Position> positions = new ArrayList<>(nodes.size());
+        for (TrafficNode node : nodes) {
+            positions.add(node.position);
+        }
+        return List.copyOf(positions);
+    }
+
+    /**
+     * Get the semaphore that stops the front of the truck, if any.
+     * Marks the truck as WAITING_SEMAPHORE when the light is yellow or red.
+     * @return The semaphore showing yellow/red at the front position, or null
+     */
+    public SemaphoreSimulation getBlockingSemaphore() {
+        SemaphoreSimulation frontSemaphore = mapManager.getSemaphoreAt(currentPosition);
+        if (frontSemaphore == null || frontSemaphore.getCurrentState() == SemaphoreSimulation.LightState.GREEN) {
+            return null;
+        }
+        truckState = TruckState.WAITING_SEMAPHORE;
+        return frontSemaphore;
+    }
+
+    /**
+     * Resume after the light at the front position turned green
+     */
+    public void resumeMoving() {
+        truckState = TruckState.MOVING;
+    }
+
+    /**
+     * @return true if the front of the truck is on its destination node (or has no route left)
+     */
+    public boolean hasArrived() {
+        List<TrafficNode> held = body;
+        return (!held.isEmpty() && held.get(0).equals(destinationNode)) || nodeRoute.isEmpty();
+    }
+
+    /**
+     * Mark the truck as finished and release every node it occupies
+     */
+    public void finish() {
+        releaseAllNodes();
+        truckState = TruckState.FINISHED;
+        state = AgentState.FINISHED;
     }
 
     private void checkTrafficLightForTruck() {
         SemaphoreSimulation frontSemaphore = mapManager.getSemaphoreAt(currentPosition);
-        SemaphoreSimulation rearSemaphore = mapManager.getSemaphoreAt(rearPosition);
 
-        if ((frontSemaphore != null &&
-                (frontSemaphore.getCurrentState() == SemaphoreSimulation.LightState.YELLOW ||
-                        frontSemaphore.getCurrentState() == SemaphoreSimulation.LightState.RED))) {
+        if (frontSemaphore != null && frontSemaphore.getCurrentState() != SemaphoreSimulation.LightState.GREEN) {
 
             truckState = TruckState.WAITING_SEMAPHORE;
             System.out.println("Truck " + id + " detected red light at front, waiting...");
@@ -206,24 +352,28 @@ public class Truck extends Agent {
         }
     }
 
+    // Parked until the semaphore turns green (or stops), instead of polling the light
     private void waitForGreenLight(SemaphoreSimulation semaphore) throws InterruptedException {
-        while (running && semaphore != null &&
+        while (running && semaphore != null && semaphore.isRunning() &&
                 semaphore.getCurrentState() != SemaphoreSimulation.LightState.GREEN) {
-            Thread.sleep(100);
+            try {
+                semaphore.onPhase(SemaphoreSimulation.LightState.GREEN).get();
+            } catch (ExecutionException e) {
+                return;
+            }
         }
     }
 
+    // Hand back the whole body in one batch; safe to call more than once
     private void releaseAllNodes() {
-        if (currentFrontNode != null) {
-            currentFrontNode.release();
-            System.out.println("Truck " + id + " released front node: " + currentFrontNode.nodeId);
-            currentFrontNode = null;
-        }
-        if (currentRearNode != null) {
-            currentRearNode.release();
-            System.out.println("Truck " + id + " released rear node: " + currentRearNode.nodeId);
-            currentRearNode = null;
+        stoppedWaiting();
+        List<TrafficNode> held = body;
+        body = List.of();
+        if (!held.isEmpty()) {
+            mapManager.getTrafficMap().releaseAll(held, this);
+            System.out.println("Truck " + id + " released nodes: " + held);
         }
+        mapManager.leaveMap(this);
     }
 
     public void stopTruck() {
@@ -233,10 +383,20 @@ public class Truck extends Agent {
 
     // Getters for UI
     public Position getCurrentPosition() { return currentPosition; }
-    public Position getRearPosition() { return rearPosition; }
+    public Position getRearPosition() {
+        List<Position> positions = segmentPositions;
+        return positions.get(positions.size() - 1);
+    }
+
+    /**
+     * @return Position of every segment on the road, front first (fewer than getSegments()
+     *         while the truck unfolds at its start)
+     */
+    public List<Position> getSegmentPositions() { return segmentPositions; }
+    public int getSegments() { return segments; }
     public TruckState getTruckState() { return truckState; }
     public Position getDestination() {
         return destinationNode != null ? destinationNode.position : new Position(0, 0);
     }
     public Queue<TrafficNode> getNodeRoute() { return nodeRoute; }
-}
\ No newline at end of file
+}
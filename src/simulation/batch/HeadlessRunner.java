@@ -0,0 +1,122 @@
+package simulation.batch;
+
+import simulation.TrafficSimulationCore;
+import simulation.clock.SimulationClock;
+import simulation.map.TrafficMap;
+import simulation.map.routing.RoutingStrategy;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs one simulation without any UI and returns a report.
+ *
+ * No AWT/Swing or sound classes are touched. The run ends when the simulated duration is
+ * reached or when every car and truck has arrived, whichever comes first.
+ */
+public class HeadlessRunner {
+    /** How often the thread engine is checked for completion (wall-clock ms) */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final TrafficSimulationCore core;
+    private final ScenarioParameters parameters;
+
+    public HeadlessRunner(TrafficSimulationCore core, ScenarioParameters parameters) {
+        this.core = core;
+        this.parameters = parameters;
+    }
+
+    public SimulationReport run() {
+        SimulationClock clock = parameters.createClock();
+        core.setClock(clock);
+        core.setEngineMode(parameters.engineMode);
+        core.setThreadMode(parameters.threadMode);
+        core.getMapManager().getGridlockDetector().setPolicy(parameters.gridlockPolicy);
+        core.setTruckSegments(parameters.truckSegments);
+        TrafficMap map = core.getMapManager().getTrafficMap();
+        RoutingStrategy router = parameters.createRouter(map);
+        if (router != null) {
+            map.setRoutingStrategy(router);
+        }
+        core.initializeSimulation(parameters.cars, parameters.trucks, 0, parameters.pedestrians,
+                parameters.greenSeconds, parameters.yellowSeconds, parameters.redSeconds,
+                parameters.vehicleSpeedMs);
+        TimingPlanWatcher planWatcher = null;
+        if (parameters.signalPlanFile != null) {
+            planWatcher = new TimingPlanWatcher(core, Path.of(parameters.signalPlanFile));
+            planWatcher.start();
+        }
+        try {
+            return run(clock);
+        } finally {
+            if (planWatcher != null) {
+                planWatcher.stop();
+            }
+        }
+    }
+
+    private SimulationReport run(SimulationClock clock) {
+        long durationMs = parameters.durationSeconds * 1000L;
+        long wallStart = System.nanoTime();
+        SimulationReport report = new SimulationReport();
+
+        if (parameters.engineMode == TrafficSimulationCore.EngineMode.DES || clock.isVirtual()) {
+            long reached = core.runDiscreteEventSimulation(durationMs);
+            report.simulatedSeconds = reached / 1000.0;
+            report.events = core.getDesSimulation().getEngine().getProcessedEvents();
+            report.stopReason = core.allVehiclesFinished() ? "all-vehicles-finished" : "duration";
+            report.gridlocks = gridlockStatistics();
+            core.stopSimulation();
+        } else {
+            long simStart = clock.now();
+            core.startSimulation();
+            report.stopReason = waitForThreads(clock, simStart, durationMs);
+            report.simulatedSeconds = (clock.now() - simStart) / 1000.0;
+            report.gridlocks = gridlockStatistics();
+            core.stopSimulation();
+            core.joinAgents();
+        }
+
+        report.wallMillis = (System.nanoTime() - wallStart) / 1_000_000L;
+        report.scenario = parameters.name;
+        report.engine = core.getEngineMode().name();
+        report.threads = core.getEngineMode() == TrafficSimulationCore.EngineMode.THREADS
+                ? core.getThreadMode().name() : "NONE";
+        report.clock = clock.toString();
+        report.agents = core.getAgentCount();
+        report.cars = byName(core.getCarStateCounts());
+        report.trucks = byName(core.getTruckStateCounts());
+        report.pedestrians = byName(core.getPedestrianStateCounts());
+        report.semaphores = byName(core.getSemStateCounts());
+        report.router = core.getMapManager().getTrafficMap().getRoutingStrategy().getName();
+        report.routeCache = core.getMapManager().getRouteCache().getStatistics();
+        return report;
+    }
+
+    // Taken before the run is stopped, since stopping ends every wait
+    private Map<String, Long> gridlockStatistics() {
+        return core.getMapManager().getGridlockDetector().getStatistics();
+    }
+
+    private String waitForThreads(SimulationClock clock, long simStart, long durationMs) {
+        try {
+            while (clock.now() - simStart < durationMs) {
+                if (core.allVehiclesFinished()) {
+                    return "all-vehicles-finished";
+                }
+                Thread.sleep(Math.min(POLL_INTERVAL_MS, Math.max(1, clock.toWallNanos(durationMs) / 1_000_000L)));
+            }
+            return "duration";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        }
+    }
+
+    private static <E extends Enum<E>> Map<String, Integer> byName(Map<E, Integer> counts) {
+        Map<String, Integer> named = new TreeMap<>();
+        counts.forEach((state, count) -> named.put(state.name(), count));
+        return named;
+    }
+}
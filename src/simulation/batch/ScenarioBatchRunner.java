@@ -0,0 +1,84 @@
+package simulation.batch;
+
+import simulation.SimulationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs many scenarios at once in one JVM, each in its own SimulationContext, on a fork-join pool.
+ *
+ * Every scenario gets a fresh map, agents and clock, so runs do not interfere with each other.
+ * With the discrete-event engine one scenario keeps one pool worker busy, so the parallelism is
+ * the number of scenarios evaluated at the same time. Scenarios on the thread engine still work
+ * but spend their pool worker waiting for the agent threads.
+ */
+public class ScenarioBatchRunner {
+    private final int parallelism;
+
+    /**
+     * @param parallelism Number of scenarios run at the same time
+     */
+    public ScenarioBatchRunner(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Use one worker per available processor
+     */
+    public ScenarioBatchRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Run every scenario and wait for all of them
+     * @param scenarios The parameter sets to evaluate
+     * @return One report per scenario, in the same order. A scenario that fails gets a report
+     *         whose stopReason starts with "error"
+     */
+    public List<SimulationReport> run(List<ScenarioParameters> scenarios) {
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, Math.max(1, scenarios.size())));
+        try {
+            List<ForkJoinTask<SimulationReport>> tasks = new ArrayList<>();
+            for (ScenarioParameters scenario : scenarios) {
+                tasks.add(pool.submit(() -> runScenario(scenario)));
+            }
+
+            List<SimulationReport> reports = new ArrayList<>();
+            for (ForkJoinTask<SimulationReport> task : tasks) {
+                reports.add(task.join());
+            }
+            return reports;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Run one scenario in a new, independent simulation context
+     */
+    public static SimulationReport runScenario(ScenarioParameters scenario) {
+        SimulationContext context = null;
+        try {
+            context = new SimulationContext(scenario.createMap());
+            return new HeadlessRunner(context.getSimulation(), scenario).run();
+        } catch (RuntimeException e) {
+            if (context != null) {
+                context.getSimulation().stopSimulation();
+            }
+            SimulationReport report = new SimulationReport();
+            report.scenario = scenario.name;
+            report.stopReason = "error: " + e;
+            return report;
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+}
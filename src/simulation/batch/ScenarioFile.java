@@ -0,0 +1,135 @@
+package simulation.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import simulation.map.BinaryMapFile;
+import simulation.map.MapDefinition;
+import simulation.map.TrafficMap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A scenario file: a map and the traffic demand on it, read with Gson.
+ *
+ *   {
+ *     "name": "centro",
+ *     "demand": {"cars": 40, "trucks": 5, "truckSegments": 3, "pedestrians": 8, "durationSeconds": 600},
+ *     "map": { ... see MapDefinition ... }
+ *   }
+ *
+ * The first load compiles the scenario to "<file>.bin" next to it (see BinaryMapFile). Later
+ * loads memory-map that file and do not parse the JSON at all, until the JSON changes.
+ * Demand values left out keep the run's own parameters.
+ */
+public class ScenarioFile {
+    public String name;
+    public Demand demand = new Demand();
+    public MapDefinition map;
+
+    public static class Demand {
+        public Integer cars;
+        public Integer trucks;
+        public Integer truckSegments;
+        public Integer pedestrians;
+        public Long durationSeconds;
+    }
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Take the name and demand of a scenario and run it on its map
+     * @throws IllegalArgumentException if the file cannot be read or is invalid
+     */
+    public static void apply(String file, ScenarioParameters parameters) {
+        Path source = Path.of(file);
+        ScenarioFile scenario;
+        try {
+            BinaryMapFile.Header header = freshHeader(source);
+            scenario = header != null
+                    ? GSON.fromJson(header.metadata, ScenarioFile.class)
+                    : compile(source).scenario;
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Failed to load scenario " + file + ": " + e.getMessage(), e);
+        }
+
+        parameters.scenarioFile = file;
+        if (scenario.name != null) parameters.name = scenario.name;
+        if (scenario.demand != null) {
+            if (scenario.demand.cars != null) parameters.cars = scenario.demand.cars;
+            if (scenario.demand.trucks != null) parameters.trucks = scenario.demand.trucks;
+            if (scenario.demand.truckSegments != null) parameters.truckSegments = scenario.demand.truckSegments;
+            if (scenario.demand.pedestrians != null) parameters.pedestrians = scenario.demand.pedestrians;
+            if (scenario.demand.durationSeconds != null) parameters.durationSeconds = scenario.demand.durationSeconds;
+        }
+    }
+
+    /**
+     * @return A new map from the scenario, from the compiled file when it is up to date
+     */
+    public static TrafficMap loadMap(String file) {
+        Path source = Path.of(file);
+        try {
+            if (freshHeader(source) != null) {
+                return BinaryMapFile.read(compiledPath(source));
+            }
+            return compile(source).map;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load scenario " + file, e);
+        }
+    }
+
+    public static Path compiledPath(Path source) {
+        return source.resolveSibling(source.getFileName() + ".bin");
+    }
+
+    private static BinaryMapFile.Header freshHeader(Path source) throws IOException {
+        BinaryMapFile.Header header = BinaryMapFile.readHeader(compiledPath(source));
+        return header != null && header.isCompiledFrom(source) ? header : null;
+    }
+
+    private static final class Compiled {
+        final ScenarioFile scenario;
+        final TrafficMap map;
+
+        Compiled(ScenarioFile scenario, TrafficMap map) {
+            this.scenario = scenario;
+            this.map = map;
+        }
+    }
+
+    // Parse the JSON, build the map and write the compiled file (parallel runs of the same
+    // scenario compile it once)
+    private static synchronized Compiled compile(Path source) throws IOException {
+        BinaryMapFile.Header header = freshHeader(source);
+        if (header != null) {
+            return new Compiled(GSON.fromJson(header.metadata, ScenarioFile.class),
+                    BinaryMapFile.read(compiledPath(source)));
+        }
+
+        ScenarioFile scenario;
+        try (Reader reader = Files.newBufferedReader(source)) {
+            scenario = GSON.fromJson(reader, ScenarioFile.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid JSON: " + e.getMessage(), e);
+        }
+        if (scenario == null || scenario.map == null) {
+            throw new IOException("No map in " + source);
+        }
+        TrafficMap map = scenario.map.toTrafficMap();
+
+        // The header keeps everything but the map, which is in the arrays
+        ScenarioFile metadata = new ScenarioFile();
+        metadata.name = scenario.name;
+        metadata.demand = scenario.demand;
+        try {
+            BinaryMapFile.write(compiledPath(source), map, source, GSON.toJson(metadata));
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not write compiled scenario " + compiledPath(source) + ": " + e.getMessage());
+        }
+        return new Compiled(scenario, map);
+    }
+}
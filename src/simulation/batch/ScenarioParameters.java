@@ -0,0 +1,199 @@
+package simulation.batch;
+
+import simulation.TrafficSimulationCore;
+import simulation.agents.Truck;
+import simulation.clock.SimulationClock;
+import simulation.clock.VirtualClock;
+import simulation.map.GridMapGenerator;
+import simulation.map.GridlockDetector;
+import simulation.map.RoadGraph;
+import simulation.map.TrafficMap;
+import simulation.map.routing.AStarRouter;
+import simulation.map.routing.ContractionHierarchy;
+import simulation.map.routing.DijkstraRouter;
+import simulation.map.routing.RoutingStrategy;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Parameters of one headless simulation run.
+ *
+ * Defaults match Main's UI defaults. Headless runs default to the discrete-event engine
+ * with a fast clock; choosing the thread engine without a clock runs in real time.
+ */
+public class ScenarioParameters {
+    private static final Set<String> ROUTERS = Set.of("next-hop", "astar", "ch", "dijkstra");
+
+    public String name = "default";
+    public int cars = 10;
+    public int trucks = 5;
+    /** Nodes each truck covers: 2 for trucks, 3 or more for articulated buses */
+    public int truckSegments = Truck.DEFAULT_SEGMENTS;
+    public int pedestrians = 8;
+    public int greenSeconds = 5;
+    public int yellowSeconds = 2;
+    public int redSeconds = 3;
+    public int vehicleSpeedMs = 750;
+    public long durationSeconds = 600;
+    public TrafficSimulationCore.EngineMode engineMode = TrafficSimulationCore.EngineMode.DES;
+    public TrafficSimulationCore.ThreadMode threadMode = TrafficSimulationCore.ThreadMode.PLATFORM;
+    /** Clock specification for SimulationClock.parse, or null for the engine's default */
+    public String clockSpec;
+    /** Map size in nodes (intersections and streets); 11x11 is the UI's map */
+    public int mapWidth = 11;
+    public int mapHeight = 11;
+    /** Lanes of every generated road and vehicles each lane holds while queued for the next node */
+    public int lanes = RoadGraph.DEFAULT_LANES;
+    public int laneCapacity = RoadGraph.DEFAULT_LANE_CAPACITY;
+    /** What is done about vehicles found waiting on each other in a cycle */
+    public GridlockDetector.Policy gridlockPolicy = GridlockDetector.Policy.NONE;
+    /** Scenario file whose map is used instead of a generated one (see ScenarioFile), or null */
+    public String scenarioFile;
+    /** Signal timing plan file (see TimingPlanFile), reloaded while the run goes on, or null */
+    public String signalPlanFile;
+    /** Routing strategy (next-hop, astar, ch, dijkstra), or null for the map's default */
+    public String router;
+
+    /**
+     * Apply a single "--key=value" command-line option
+     * @param arg The option
+     * @return true if the option was recognised
+     * @throws IllegalArgumentException if the value is invalid
+     */
+    public boolean applyOption(String arg) {
+        int separator = arg.indexOf('=');
+        if (!arg.startsWith("--") || separator < 0) {
+            return false;
+        }
+        String key = arg.substring(2, separator);
+        String value = arg.substring(separator + 1);
+        if (key.equals("scenario")) {
+            ScenarioFile.apply(value, this);
+            return true;
+        }
+
+        try {
+            switch (key) {
+                case "name" -> name = value;
+                case "cars" -> cars = Integer.parseInt(value);
+                case "trucks" -> trucks = Integer.parseInt(value);
+                case "truck-segments" -> {
+                    truckSegments = Integer.parseInt(value);
+                    if (truckSegments < 1) {
+                        throw new IllegalArgumentException(value);
+                    }
+                }
+                case "pedestrians" -> pedestrians = Integer.parseInt(value);
+                case "green" -> greenSeconds = Integer.parseInt(value);
+                case "yellow" -> yellowSeconds = Integer.parseInt(value);
+                case "red" -> redSeconds = Integer.parseInt(value);
+                case "speed" -> vehicleSpeedMs = Integer.parseInt(value);
+                case "duration" -> durationSeconds = Long.parseLong(value);
+                case "engine" -> engineMode = TrafficSimulationCore.EngineMode.valueOf(value.toUpperCase());
+                case "threads" -> threadMode = TrafficSimulationCore.ThreadMode.valueOf(value.toUpperCase());
+                case "clock" -> clockSpec = value;
+                case "signal-plan" -> signalPlanFile = value;
+                case "router" -> {
+                    if (!ROUTERS.contains(value)) {
+                        throw new IllegalArgumentException(value);
+                    }
+                    router = value;
+                }
+                case "map" -> {
+                    String[] size = value.toLowerCase().split("x");
+                    if (size.length != 2) {
+                        throw new IllegalArgumentException(value);
+                    }
+                    mapWidth = Integer.parseInt(size[0]);
+                    mapHeight = Integer.parseInt(size[1]);
+                }
+                case "lanes" -> {
+                    String[] lanesAndCapacity = value.toLowerCase().split("x");
+                    if (lanesAndCapacity.length > 2) {
+                        throw new IllegalArgumentException(value);
+                    }
+                    lanes = Integer.parseInt(lanesAndCapacity[0]);
+                    if (lanesAndCapacity.length == 2) {
+                        laneCapacity = Integer.parseInt(lanesAndCapacity[1]);
+                    }
+                }
+                case "gridlock" -> gridlockPolicy = GridlockDetector.Policy.valueOf(value.toUpperCase().replace('-', '_'));
+                default -> {
+                    return false;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for --" + key + ": " + value);
+        }
+        return true;
+    }
+
+    /**
+     * @return A new clock for this run
+     */
+    public SimulationClock createClock() {
+        if (clockSpec != null) {
+            return SimulationClock.parse(clockSpec);
+        }
+        return engineMode == TrafficSimulationCore.EngineMode.DES
+                ? new VirtualClock()
+                : SimulationClock.parse("realtime");
+    }
+
+    /**
+     * @return A new map for this run
+     */
+    public TrafficMap createMap() {
+        if (scenarioFile != null) {
+            return ScenarioFile.loadMap(scenarioFile);
+        }
+        return new GridMapGenerator(mapWidth, mapHeight).lanes(lanes, laneCapacity).generate();
+    }
+
+    /**
+     * @return The routing strategy chosen for the map, or null to keep its default. A "ch"
+     *         hierarchy of a scenario is kept in "<file>.ch" and preprocessed again only when
+     *         the graph changes.
+     */
+    public RoutingStrategy createRouter(TrafficMap map) {
+        if (router == null) {
+            return null;
+        }
+        return switch (router) {
+            case "next-hop" -> map.getNextHopTable();
+            case "astar" -> new AStarRouter(map);
+            case "dijkstra" -> new DijkstraRouter(map);
+            case "ch" -> scenarioFile != null
+                    ? ContractionHierarchy.loadOrBuild(Path.of(scenarioFile + ".ch"), map)
+                    : ContractionHierarchy.build(map);
+            default -> throw new IllegalArgumentException("Unknown router: " + router);
+        };
+    }
+
+    public ScenarioParameters copy() {
+        ScenarioParameters copy = new ScenarioParameters();
+        copy.name = name;
+        copy.cars = cars;
+        copy.trucks = trucks;
+        copy.truckSegments = truckSegments;
+        copy.pedestrians = pedestrians;
+        copy.greenSeconds = greenSeconds;
+        copy.yellowSeconds = yellowSeconds;
+        copy.redSeconds = redSeconds;
+        copy.vehicleSpeedMs = vehicleSpeedMs;
+        copy.durationSeconds = durationSeconds;
+        copy.engineMode = engineMode;
+        copy.threadMode = threadMode;
+        copy.clockSpec = clockSpec;
+        copy.mapWidth = mapWidth;
+        copy.mapHeight = mapHeight;
+        copy.lanes = lanes;
+        copy.laneCapacity = laneCapacity;
+        copy.gridlockPolicy = gridlockPolicy;
+        copy.scenarioFile = scenarioFile;
+        copy.signalPlanFile = signalPlanFile;
+        copy.router = router;
+        return copy;
+    }
+}
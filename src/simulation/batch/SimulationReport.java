@@ -0,0 +1,40 @@
+package simulation.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.Map;
+
+/**
+ * Machine-readable summary of a headless run, serialised as JSON.
+ */
+public class SimulationReport {
+    public String scenario;
+    public String engine;
+    public String threads;
+    public String clock;
+    /** "duration", "all-vehicles-finished", "interrupted", or "error: ..." for a failed batch scenario */
+    public String stopReason;
+    public double simulatedSeconds;
+    public long wallMillis;
+    /** Events processed by the discrete-event engine (0 for the thread engine) */
+    public long events;
+    public Map<String, Integer> agents;
+    public Map<String, Integer> cars;
+    public Map<String, Integer> trucks;
+    public Map<String, Integer> pedestrians;
+    public Map<String, Integer> semaphores;
+    public String router;
+    public Map<String, Long> routeCache;
+    /** Cycles of vehicles waiting on each other: detected, resolved, active, ... (see GridlockDetector) */
+    public Map<String, Long> gridlocks;
+
+    public String toJson() {
+        return new Gson().toJson(this);
+    }
+
+    public String toPrettyJson() {
+        GsonBuilder builder = new GsonBuilder().setPrettyPrinting();
+        return builder.create().toJson(this);
+    }
+}
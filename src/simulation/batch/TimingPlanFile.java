@@ -0,0 +1,88 @@
+package simulation.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import simulation.agents.SignalPlan;
+import simulation.agents.TimingPlan;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A signal timing plan as written in a file, read with Gson. Times are in seconds:
+ *
+ *   {
+ *     "name": "hora-punta",
+ *     "default": {"green": 5, "yellow": 2, "red": 5},
+ *     "intersections": {
+ *       "N_4_6": {"green": 8, "yellow": 2, "red": 4, "offset": 3},
+ *       "N_4_2": {"cycle": 20, "green": 0.5, "yellow": 0.1, "red": 0.4, "offset": 6}
+ *     }
+ *   }
+ *
+ * Intersections are the ids of the semaphores' nodes. With "cycle", green, yellow and red are
+ * splits of it. Without "default", intersections left out keep their timing.
+ */
+public class TimingPlanFile {
+    public String name;
+    @SerializedName("default")
+    public PlanSpec defaults;
+    public Map<String, PlanSpec> intersections = new LinkedHashMap<>();
+
+    public static class PlanSpec {
+        /** Cycle length; null when green, yellow and red are durations */
+        public Double cycle;
+        public double green;
+        public double yellow;
+        public double red;
+        public double offset;
+
+        SignalPlan toSignalPlan() {
+            if (cycle != null) {
+                return SignalPlan.ofCycle(seconds(cycle), green, yellow, red, seconds(offset));
+            }
+            return SignalPlan.of(seconds(green), seconds(yellow), seconds(red), seconds(offset));
+        }
+    }
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * @throws IllegalArgumentException if the file cannot be read or is invalid
+     */
+    public static TimingPlan read(Path file) {
+        TimingPlanFile plan;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            plan = GSON.fromJson(reader, TimingPlanFile.class);
+        } catch (IOException | JsonParseException e) {
+            throw new IllegalArgumentException("Failed to load signal plan " + file + ": " + e.getMessage(), e);
+        }
+        if (plan == null) {
+            throw new IllegalArgumentException("Empty signal plan " + file);
+        }
+        return plan.toTimingPlan(file.getFileName().toString());
+    }
+
+    public TimingPlan toTimingPlan(String defaultName) {
+        Map<String, SignalPlan> plans = new LinkedHashMap<>();
+        if (intersections != null) {
+            intersections.forEach((node, spec) -> {
+                if (spec == null) {
+                    throw new IllegalArgumentException("Missing timing for intersection " + node);
+                }
+                plans.put(node, spec.toSignalPlan());
+            });
+        }
+        return new TimingPlan(name != null ? name : defaultName,
+                defaults != null ? defaults.toSignalPlan() : null, plans);
+    }
+
+    private static long seconds(double seconds) {
+        return Math.round(seconds * 1000);
+    }
+}
@@ -0,0 +1,91 @@
+package simulation.batch;
+
+import simulation.TrafficSimulationCore;
+import simulation.agents.TimingPlan;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Loads a signal plan file into a simulation and reloads it every time the file changes, so
+ * the timings of a running simulation can be tuned by editing the file. A file that fails to
+ * parse is reported and the plan in use stays.
+ */
+public class TimingPlanWatcher {
+    private final TrafficSimulationCore core;
+    private final Path file;
+    private WatchService watchService;
+
+    public TimingPlanWatcher(TrafficSimulationCore core, Path file) {
+        this.core = core;
+        this.file = file.toAbsolutePath();
+    }
+
+    /**
+     * Load the plan and watch the file on a daemon thread
+     * @throws IllegalArgumentException if the plan cannot be loaded
+     */
+    public void start() {
+        core.setTimingPlan(TimingPlanFile.read(file));
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            // Editors often replace the file rather than write it: watch its directory
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot watch signal plan " + file + ": " + e.getMessage());
+            return;
+        }
+        Thread watcher = new Thread(this::watch, "signal-plan-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.err.println("⚠️ Error closing signal plan watch: " + e.getMessage());
+            }
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= file.getFileName().equals(event.context());
+                }
+                if (changed) {
+                    reload();
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    private void reload() {
+        TimingPlan plan;
+        try {
+            plan = TimingPlanFile.read(file);
+        } catch (IllegalArgumentException e) {
+            // Half-written or invalid: keep the plan in use until the next change
+            System.err.println("⚠️ " + e.getMessage());
+            return;
+        }
+        core.setTimingPlan(plan);
+    }
+}
@@ -0,0 +1,142 @@
+package simulation.bench;
+
+import simulation.agents.Agent;
+import simulation.agents.AgentThreads;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Compares spawning agents on platform threads and on virtual threads.
+ *
+ * Each agent behaves like a car dwelling on a node: it sleeps in a loop until stopped.
+ * For every mode the benchmark reports how long it took to start N agents, the heap and
+ * resident memory (Linux only) while they are all alive, and how many agents could be
+ * started before the JVM ran out of native threads.
+ *
+ * Usage: java simulation.bench.AgentSpawnBenchmark [agents] [platform|virtual|both]
+ */
+public class AgentSpawnBenchmark {
+    private static final long DWELL_MS = 750;
+
+    private static class DwellingAgent extends Agent {
+        private final CountDownLatch startedLatch;
+
+        DwellingAgent(int id, CountDownLatch startedLatch) {
+            this.id = id;
+            this.type = AgentType.CAR;
+            this.state = AgentState.ACTIVE;
+            this.startedLatch = startedLatch;
+        }
+
+        @Override
+        public void run() {
+            startedLatch.countDown();
+            while (running) {
+                try {
+                    Thread.sleep(DWELL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String modes = args.length > 1 ? args[1] : "both";
+
+        System.out.println("Agent spawn benchmark - " + agents + " agents");
+        if (!modes.equals("virtual")) {
+            run("platform", AgentThreads.PLATFORM, agents);
+        }
+        if (!modes.equals("platform")) {
+            if (AgentThreads.isVirtualThreadSupported()) {
+                run("virtual", AgentThreads.VIRTUAL, agents);
+            } else {
+                System.out.println("virtual : not available on JDK " + Runtime.version().feature() + " (needs 21+)");
+            }
+        }
+    }
+
+    private static void run(String label, ThreadFactory factory, int agents) throws InterruptedException {
+        settle();
+        long heapBefore = usedHeap();
+        long rssBefore = residentKb();
+
+        List<DwellingAgent> spawned = new ArrayList<>(agents);
+        CountDownLatch startedLatch = new CountDownLatch(agents);
+        String failure = null;
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < agents; i++) {
+                DwellingAgent agent = new DwellingAgent(i + 1, startedLatch);
+                agent.start(factory);
+                spawned.add(agent);
+            }
+        } catch (OutOfMemoryError e) {
+            failure = e.getMessage();
+        }
+        long spawnNanos = System.nanoTime() - start;
+
+        // Agents that never started are not waited for
+        for (int i = spawned.size(); i < agents; i++) {
+            startedLatch.countDown();
+        }
+        startedLatch.await();
+        long runningNanos = System.nanoTime() - start;
+
+        settle();
+        long heapDelta = usedHeap() - heapBefore;
+        long rssDelta = residentKb() - rssBefore;
+
+        System.out.printf("%-8s: spawned %d/%d in %.1f ms (all running after %.1f ms), " +
+                        "heap +%.1f MB, rss +%s, %.2f KB/agent%n",
+                label, spawned.size(), agents, spawnNanos / 1e6, runningNanos / 1e6,
+                heapDelta / 1e6,
+                rssBefore >= 0 ? String.format("%.1f MB", rssDelta / 1e3) : "n/a",
+                spawned.isEmpty() ? 0.0 : (rssBefore >= 0 ? rssDelta : heapDelta / 1000.0) / spawned.size());
+        if (failure != null) {
+            System.out.println("          stopped early: " + failure);
+        }
+
+        for (DwellingAgent agent : spawned) {
+            agent.stopAgent();
+            agent.interrupt();
+        }
+        for (DwellingAgent agent : spawned) {
+            agent.join(1000);
+        }
+    }
+
+    private static void settle() throws InterruptedException {
+        System.gc();
+        Thread.sleep(200);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Resident set size in KB from /proc, or -1 when not on Linux
+    private static long residentKb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not available
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,148 @@
+package simulation.bench;
+
+import simulation.agents.Agent;
+import simulation.map.GridMapGenerator;
+import simulation.map.TrafficMap;
+import simulation.map.TrafficNode;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compares node occupancy through the CAS slot of TrafficNode with the previous scheme, a
+ * ReentrantLock held by the occupying thread for as long as the agent is on the node.
+ *
+ * Every thread plays a vehicle: it picks a random node from a pool, tries to take it, holds
+ * it for a few hundred nanoseconds of busy work and releases it. A small pool means heavy
+ * contention (most attempts fail), a large one means almost none. The benchmark reports
+ * attempts and successful acquisitions per second for both schemes.
+ *
+ * Usage: java simulation.bench.OccupancyBenchmark [threads] [seconds] [pool sizes...]
+ *        (defaults: 8 threads, 2 s per run, pools of 4, 64 and 4096 nodes)
+ */
+public class OccupancyBenchmark {
+    private static final int HOLD_SPINS = 64;
+
+    /** The occupancy scheme being measured */
+    private interface Occupancy {
+        boolean tryAcquire(int node, Agent agent);
+        void release(int node, Agent agent);
+    }
+
+    /** Previous TrafficNode: the lock stays held by the occupying thread */
+    private static final class LockedNode {
+        private final ReentrantLock nodeLock = new ReentrantLock();
+        private volatile Agent occupyingAgent;
+
+        boolean tryAcquire(Agent agent) {
+            if (nodeLock.tryLock()) {
+                if (occupyingAgent == null) {
+                    occupyingAgent = agent;
+                    return true;
+                } else {
+                    nodeLock.unlock();
+                }
+            }
+            return false;
+        }
+
+        void release() {
+            if (nodeLock.isHeldByCurrentThread()) {
+                occupyingAgent = null;
+                nodeLock.unlock();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 2;
+        int[] pools = args.length > 2 ? new int[args.length - 2] : new int[]{4, 64, 4096};
+        for (int i = 2; i < args.length; i++) {
+            pools[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println("Occupancy benchmark - " + threads + " threads, " + seconds + " s per run, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        for (int pool : pools) {
+            TrafficMap map = new GridMapGenerator(pool, 1).generate();
+            TrafficNode[] nodes = map.getNodes().toArray(new TrafficNode[0]);
+            LockedNode[] locked = new LockedNode[pool];
+            for (int i = 0; i < pool; i++) {
+                locked[i] = new LockedNode();
+            }
+
+            Occupancy lockScheme = new Occupancy() {
+                public boolean tryAcquire(int node, Agent agent) { return locked[node].tryAcquire(agent); }
+                public void release(int node, Agent agent) { locked[node].release(); }
+            };
+            Occupancy casScheme = new Occupancy() {
+                public boolean tryAcquire(int node, Agent agent) { return nodes[node].tryAcquire(agent); }
+                public void release(int node, Agent agent) { nodes[node].release(agent); }
+            };
+
+            // Warm-up, then the measured runs
+            run(lockScheme, pool, threads, 500);
+            run(casScheme, pool, threads, 500);
+            double[] lock = run(lockScheme, pool, threads, seconds * 1000);
+            double[] cas = run(casScheme, pool, threads, seconds * 1000);
+
+            System.out.printf("%5d nodes: lock %6.2f M attempts/s (%5.1f%% won) | cas %6.2f M attempts/s (%5.1f%% won) | x%.2f acquisitions%n",
+                    pool, lock[0] / 1e6, 100 * lock[1] / lock[0], cas[0] / 1e6, 100 * cas[1] / cas[0],
+                    cas[1] / lock[1]);
+        }
+    }
+
+    // Attempts and acquisitions per second
+    private static double[] run(Occupancy occupancy, int pool, int threads, long millis) throws InterruptedException {
+        LongAdder attempts = new LongAdder();
+        LongAdder acquired = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Agent agent = new Agent();
+            agent.id = t + 1;
+            agent.type = Agent.AgentType.CAR;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long localAttempts = 0, localAcquired = 0;
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (running.get()) {
+                    int node = random.nextInt(pool);
+                    localAttempts++;
+                    if (occupancy.tryAcquire(node, agent)) {
+                        localAcquired++;
+                        for (int i = 0; i < HOLD_SPINS; i++) {
+                            Thread.onSpinWait();
+                        }
+                        occupancy.release(node, agent);
+                    }
+                }
+                attempts.add(localAttempts);
+                acquired.add(localAcquired);
+            }, "occupancy-" + t);
+            workers[t].start();
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        Thread.sleep(millis);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        return new double[]{attempts.sum() / elapsedSeconds, acquired.sum() / elapsedSeconds};
+    }
+}
@@ -0,0 +1,151 @@
+package simulation.bench;
+
+import simulation.map.GridMapGenerator;
+import simulation.map.TrafficMap;
+import simulation.map.TrafficNode;
+import simulation.map.routing.AStarRouter;
+import simulation.map.routing.ContractionHierarchy;
+import simulation.map.routing.DijkstraRouter;
+import simulation.map.routing.RoutingStrategy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the routing strategies on grid maps of increasing size.
+ *
+ * For every size the same random intersection pairs (fixed seed) are routed with each
+ * strategy after a warm-up pass, and the average time per query is reported together with
+ * the speedup over the original Dijkstra. Path lengths are checked to be identical. The
+ * original Dijkstra touches every node on every query, so on large maps it only gets a
+ * handful of queries. The contraction hierarchy is also timed for preprocessing and for a
+ * save/load round trip through a temporary file.
+ *
+ * Usage: java -Xmx4g simulation.bench.RoutingBenchmark [queries] [grid sizes...]
+ *        (defaults: 200 queries on 11x11 and 1001x1001; on the large grid the contraction
+ *        hierarchy preprocessing takes minutes per core)
+ */
+public class RoutingBenchmark {
+    private static final int LARGE_MAP_NODES = 100_000;
+    private static final int LARGE_MAP_DIJKSTRA_QUERIES = 5;
+    private static final int WARMUP_QUERIES = 20_000;
+    private static final long WARMUP_MS = 3_000;
+
+    public static void main(String[] args) {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            sizes.add(Integer.parseInt(args[i]));
+        }
+        if (sizes.isEmpty()) {
+            sizes.add(11);
+            sizes.add(1001);
+        }
+
+        System.out.println("Routing benchmark - " + queries + " queries per map");
+        for (int size : sizes) {
+            run(size, queries);
+        }
+    }
+
+    private static void run(int size, int queries) {
+        long buildStart = System.nanoTime();
+        TrafficMap map = new GridMapGenerator(size, size).generate();
+        long buildMs = (System.nanoTime() - buildStart) / 1_000_000L;
+        System.out.println();
+        System.out.println(size + "x" + size + " grid: " + map.getNodeCount() + " nodes, "
+                + map.getGraph().getEdgeCount() + " edges, built in " + buildMs + " ms");
+
+        TrafficNode[][] pairs = randomPairs(map, queries);
+        boolean large = map.getNodeCount() >= LARGE_MAP_NODES;
+        int dijkstraQueries = large ? Math.min(queries, LARGE_MAP_DIJKSTRA_QUERIES) : queries;
+
+        RoutingStrategy dijkstra = new DijkstraRouter(map);
+        RoutingStrategy astar = new AStarRouter(map);
+
+        long chStart = System.nanoTime();
+        ContractionHierarchy built = ContractionHierarchy.build(map);
+        long chBuildMs = (System.nanoTime() - chStart) / 1_000_000L;
+        ContractionHierarchy ch = roundTrip(built, map);
+
+        double dijkstraMicros = time(dijkstra, pairs, dijkstraQueries);
+        double astarMicros = time(astar, pairs, queries);
+        double chMicros = time(ch, pairs, queries);
+
+        int mismatches = 0;
+        for (int i = 0; i < queries; i++) {
+            int expected = astar.findPath(pairs[i][0], pairs[i][1]).size();
+            if (ch.findPath(pairs[i][0], pairs[i][1]).size() != expected
+                    || (i < dijkstraQueries && dijkstra.findPath(pairs[i][0], pairs[i][1]).size() != expected)) {
+                mismatches++;
+            }
+        }
+
+        System.out.printf("  %-9s %12.1f us/query (%d queries)%n", dijkstra.getName(), dijkstraMicros, dijkstraQueries);
+        System.out.printf("  %-9s %12.1f us/query (%d queries), %.1fx faster%n", astar.getName(), astarMicros, queries,
+                dijkstraMicros / astarMicros);
+        System.out.printf("  %-9s %12.1f us/query (%d queries), %.1fx faster; preprocessing %d ms, %d edges%n",
+                ch.getName(), chMicros, queries, dijkstraMicros / chMicros, chBuildMs, ch.getEdgeCount());
+        System.out.println("  path length mismatches: " + mismatches);
+    }
+
+    private static ContractionHierarchy roundTrip(ContractionHierarchy hierarchy, TrafficMap map) {
+        try {
+            Path file = Files.createTempFile("routing-benchmark", ".ch");
+            try {
+                long start = System.nanoTime();
+                hierarchy.save(file);
+                ContractionHierarchy loaded = ContractionHierarchy.load(file, map);
+                System.out.printf("  ch file   %12d KB, saved and loaded in %d ms%n",
+                        Files.size(file) / 1024, (System.nanoTime() - start) / 1_000_000L);
+                return loaded;
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double time(RoutingStrategy strategy, TrafficNode[][] pairs, int queries) {
+        // Warm up until the JIT has compiled the search loop: a few thousand queries, or
+        // WARMUP_MS for the slow ones
+        long warmupEnd = System.nanoTime() + WARMUP_MS * 1_000_000L;
+        for (int i = 0; i < WARMUP_QUERIES && System.nanoTime() < warmupEnd; i++) {
+            strategy.findPath(pairs[i % queries][0], pairs[i % queries][1]);
+        }
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < queries; i++) {
+            checksum += strategy.findPath(pairs[i][0], pairs[i][1]).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum < 0) {
+            System.out.println(checksum);
+        }
+        return elapsed / 1000.0 / queries;
+    }
+
+    private static TrafficNode[][] randomPairs(TrafficMap map, int count) {
+        List<TrafficNode> intersections = new ArrayList<>();
+        for (int i = 0; i < map.getNodeCount(); i++) {
+            TrafficNode node = map.getNodeByIndex(i);
+            if (node.getType() == TrafficNode.NodeType.INTERSECTION && !node.getOutgoingEdges().isEmpty()) {
+                intersections.add(node);
+            }
+        }
+        Random random = new Random(42);
+        TrafficNode[][] pairs = new TrafficNode[count][];
+        for (int i = 0; i < count; i++) {
+            TrafficNode start = intersections.get(random.nextInt(intersections.size()));
+            TrafficNode end = intersections.get(random.nextInt(intersections.size()));
+            pairs[i] = new TrafficNode[] {start, end};
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,194 @@
+package simulation.bench;
+
+import simulation.SimulationContext;
+import simulation.agents.SemaphoreSimulation;
+import simulation.agents.SemaphoreSimulation.LightState;
+import simulation.clock.RealTimeClock;
+import simulation.map.GridMapGenerator;
+import simulation.map.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Compares reading a traffic light under contention: the previous scheme (stateLock taken for
+ * every getCurrentState), a StampedLock optimistic read of the light and the time it changed,
+ * and the lock-free reads of SemaphoreSimulation (getCurrentState and getPhaseStamp).
+ *
+ * Every reader thread polls one signal in a loop, like the cars, trucks, pedestrians, RMI
+ * server and UI do. For the locked schemes a writer per signal changes the light every few
+ * milliseconds, as the semaphore threads did; the real semaphores compute theirs from the clock.
+ * The benchmark reports reads per second for each scheme.
+ *
+ * Usage: java simulation.bench.SignalReadBenchmark [signals] [readers per signal] [seconds]
+ *        (defaults: 2 signals, 1000 readers each, 2 s per run)
+ */
+public class SignalReadBenchmark {
+    private static final long PHASE_MILLIS = 5;
+
+    /** A way of reading one signal */
+    private interface Signal {
+        long read();
+        default void change() { }
+    }
+
+    /** Previous SemaphoreSimulation: every read and change takes stateLock */
+    private static final class LockedSignal implements Signal {
+        private final ReentrantLock stateLock = new ReentrantLock();
+        private volatile LightState currentState = LightState.RED;
+
+        public long read() {
+            stateLock.lock();
+            try {
+                return currentState.ordinal();
+            } finally {
+                stateLock.unlock();
+            }
+        }
+
+        public void change() {
+            stateLock.lock();
+            try {
+                currentState = LightState.values()[(currentState.ordinal() + 1) % 3];
+            } finally {
+                stateLock.unlock();
+            }
+        }
+    }
+
+    /** Light and change time as a consistent pair through an optimistic read */
+    private static final class StampedSignal implements Signal {
+        private final StampedLock lock = new StampedLock();
+        private LightState currentState = LightState.RED;
+        private long changedAt;
+
+        public long read() {
+            long stamp = lock.tryOptimisticRead();
+            LightState state = currentState;
+            long since = changedAt;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    state = currentState;
+                    since = changedAt;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return since << 2 | state.ordinal();
+        }
+
+        public void change() {
+            long stamp = lock.writeLock();
+            try {
+                currentState = LightState.values()[(currentState.ordinal() + 1) % 3];
+                changedAt = System.nanoTime();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int signals = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 2;
+
+        System.out.println("Signal read benchmark - " + signals + " signals, " + readers + " readers each, "
+                + seconds + " s per run, " + Runtime.getRuntime().availableProcessors() + " cores");
+
+        SimulationContext context = new SimulationContext(new GridMapGenerator(1, 1).generate());
+        context.getSimulation().setClock(new RealTimeClock());
+        long now = context.getSimulation().getClock().now();
+        List<SemaphoreSimulation> semaphores = new ArrayList<>();
+        for (int i = 0; i < signals; i++) {
+            SemaphoreSimulation semaphore = new SemaphoreSimulation(i + 1, new Position(0, 0));
+            semaphore.setContext(context);
+            semaphore.setLightsTimer(new int[]{1, 1, 1});
+            semaphore.startCycle(now);
+            semaphores.add(semaphore);
+        }
+
+        List<Signal> locked = new ArrayList<>();
+        List<Signal> stamped = new ArrayList<>();
+        List<Signal> state = new ArrayList<>();
+        List<Signal> phaseStamp = new ArrayList<>();
+        for (int i = 0; i < signals; i++) {
+            SemaphoreSimulation semaphore = semaphores.get(i);
+            locked.add(new LockedSignal());
+            stamped.add(new StampedSignal());
+            state.add(() -> semaphore.getCurrentState().ordinal());
+            phaseStamp.add(semaphore::getPhaseStamp);
+        }
+
+        // Warm-up, then the measured runs
+        for (List<Signal> scheme : List.of(locked, stamped, state, phaseStamp)) {
+            run(scheme, readers, 300);
+        }
+        double lockedRate = run(locked, readers, seconds * 1000);
+        double stampedRate = run(stamped, readers, seconds * 1000);
+        double stateRate = run(state, readers, seconds * 1000);
+        double phaseStampRate = run(phaseStamp, readers, seconds * 1000);
+
+        System.out.printf("locked getCurrentState    %8.2f M reads/s%n", lockedRate / 1e6);
+        System.out.printf("StampedLock optimistic    %8.2f M reads/s (x%.2f)%n", stampedRate / 1e6, stampedRate / lockedRate);
+        System.out.printf("lock-free getCurrentState %8.2f M reads/s (x%.2f)%n", stateRate / 1e6, stateRate / lockedRate);
+        System.out.printf("lock-free getPhaseStamp   %8.2f M reads/s (x%.2f)%n", phaseStampRate / 1e6, phaseStampRate / lockedRate);
+    }
+
+    // Reads per second of all readers together
+    private static double run(List<Signal> signals, int readersPerSignal, long millis) throws InterruptedException {
+        LongAdder reads = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch ready = new CountDownLatch(signals.size() * readersPerSignal);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int s = 0; s < signals.size(); s++) {
+            Signal signal = signals.get(s);
+            for (int r = 0; r < readersPerSignal; r++) {
+                threads.add(new Thread(() -> {
+                    long localReads = 0;
+                    long sink = 0;
+                    ready.countDown();
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (running.get()) {
+                        sink += signal.read();
+                        localReads++;
+                    }
+                    reads.add(localReads + (sink == Long.MIN_VALUE ? 1 : 0));
+                }, "reader-" + s + "-" + r));
+            }
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    signal.change();
+                    try {
+                        Thread.sleep(PHASE_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "writer-" + s));
+        }
+        threads.forEach(Thread::start);
+
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        Thread.sleep(millis);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        return reads.sum() / elapsedSeconds;
+    }
+}
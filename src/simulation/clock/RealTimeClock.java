@@ -0,0 +1,29 @@
+package simulation.clock;
+
+/**
+ * Simulated time equals wall-clock time.
+ */
+public class RealTimeClock implements SimulationClock {
+
+    @Override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void sleep(long simMillis) throws InterruptedException {
+        if (simMillis > 0) {
+            Thread.sleep(simMillis);
+        }
+    }
+
+    @Override
+    public long toWallNanos(long simMillis) {
+        return simMillis * 1_000_000L;
+    }
+
+    @Override
+    public String toString() {
+        return "realtime";
+    }
+}
@@ -0,0 +1,47 @@
+package simulation.clock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated time runs N times faster (or slower) than wall-clock time.
+ * With a factor of 60 one simulated hour takes one wall-clock minute.
+ */
+public class ScaledClock implements SimulationClock {
+    private final double factor;
+    private final long originWallNanos;
+    private final long originSimMillis;
+
+    public ScaledClock(double factor) {
+        if (!(factor > 0)) {
+            throw new IllegalArgumentException("Time scale must be positive: " + factor);
+        }
+        this.factor = factor;
+        this.originWallNanos = System.nanoTime();
+        this.originSimMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public long now() {
+        return originSimMillis + (long) ((System.nanoTime() - originWallNanos) / 1e6 * factor);
+    }
+
+    @Override
+    public void sleep(long simMillis) throws InterruptedException {
+        long wallNanos = toWallNanos(simMillis);
+        if (wallNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(wallNanos);
+        }
+    }
+
+    @Override
+    public long toWallNanos(long simMillis) {
+        return (long) (simMillis * 1_000_000L / factor);
+    }
+
+    public double getFactor() { return factor; }
+
+    @Override
+    public String toString() {
+        return "scaled:" + factor;
+    }
+}
@@ -0,0 +1,75 @@
+package simulation.clock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of simulated time for agents and semaphores.
+ *
+ * All timing in the simulation (signal phases, vehicle dwell, crossing time, retry delays)
+ * is expressed in simulated milliseconds and goes through a clock, so the same scenario can
+ * run in real time, scaled ×N, or as fast as possible on the discrete-event engine.
+ */
+public interface SimulationClock {
+
+    /**
+     * @return Current simulated time in milliseconds
+     */
+    long now();
+
+    /**
+     * Block the calling thread for a simulated duration
+     * @param simMillis Simulated milliseconds to wait
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void sleep(long simMillis) throws InterruptedException;
+
+    /**
+     * Convert a simulated duration to the wall-clock time it takes on this clock,
+     * for timed waits on locks and conditions
+     * @param simMillis Simulated milliseconds
+     * @return Wall-clock nanoseconds
+     */
+    long toWallNanos(long simMillis);
+
+    /**
+     * A timer that does not block the caller
+     * @param simMillis Simulated milliseconds from now
+     * @return A future completed after the delay
+     */
+    default CompletableFuture<Void> after(long simMillis) {
+        return CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(Math.max(0, toWallNanos(simMillis)), TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * @return true if time only advances through the discrete-event engine (as fast as possible)
+     */
+    default boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Create a clock from a command-line style specification:
+     * "realtime", "scaled:N" (N simulated seconds per wall second) or "fast"
+     * @param spec The clock specification
+     * @return The clock
+     * @throws IllegalArgumentException if the specification is not recognised
+     */
+    static SimulationClock parse(String spec) {
+        if (spec.equalsIgnoreCase("realtime")) {
+            return new RealTimeClock();
+        }
+        if (spec.equalsIgnoreCase("fast")) {
+            return new VirtualClock();
+        }
+        if (spec.toLowerCase().startsWith("scaled:")) {
+            try {
+                return new ScaledClock(Double.parseDouble(spec.substring("scaled:".length())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid time scale in '" + spec + "'");
+            }
+        }
+        throw new IllegalArgumentException("Unknown clock '" + spec + "' (expected realtime, scaled:N or fast)");
+    }
+}
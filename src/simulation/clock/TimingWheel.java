@@ -0,0 +1,363 @@
+package simulation.clock;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed hierarchical timing wheel: every timer of a simulation (signal phases, vehicle dwell,
+ * crossing deadlines, retry delays) on one ticking thread, driven by a simulation clock.
+ *
+ * Timers live in LEVELS wheels of SLOTS slots; one slot of level k spans SLOTS^k ticks. A timer
+ * goes to the lowest level whose wheel reaches its deadline and moves down a level each time
+ * the wheel above turns to its slot (cascade), so schedule and cancel are O(1) and a tick only
+ * touches the timers that are due or cascading. A pending timer is one small object.
+ *
+ * Any thread may schedule or cancel: the change is queued and applied by the wheel thread at
+ * its next tick, so the slots need no lock. Tasks run on the wheel thread and must be short
+ * (unpark a thread, complete a future, signal a condition). A timer fires at the first tick at
+ * or after its deadline, so at most one tick late.
+ *
+ * As a SimulationClock the wheel reads time from the clock it wraps, and sleep parks the caller
+ * until its timer fires. Once stopped, pending and new timers fire at once.
+ */
+public class TimingWheel implements SimulationClock {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timer> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Timer.class, "state");
+
+    /**
+     * A scheduled task
+     */
+    public final class Timer {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile int state;
+        private Timer previous, next;   // slot list, wheel thread only
+        private Slot slot;
+
+        private Timer(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return true if the task will not run, false if it already ran (or was cancelled)
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() { return state == CANCELLED; }
+        public boolean isExpired() { return state == EXPIRED; }
+
+        private void expire() {
+            if (STATE.compareAndSet(this, PENDING, EXPIRED)) {
+                pending.decrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("⚠️ Timer task failed: " + e);
+                }
+            }
+        }
+    }
+
+    /** Doubly linked list of the timers of one slot */
+    private static final class Slot {
+        private Timer head;
+
+        void add(Timer timer) {
+            timer.slot = this;
+            timer.previous = null;
+            timer.next = head;
+            if (head != null) {
+                head.previous = timer;
+            }
+            head = timer;
+        }
+
+        void remove(Timer timer) {
+            if (timer.previous != null) {
+                timer.previous.next = timer.next;
+            } else {
+                head = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.previous = timer.previous;
+            }
+            timer.slot = null;
+            timer.previous = timer.next = null;
+        }
+
+        // Empty the slot, returning its timers as a list linked through next
+        Timer takeAll() {
+            Timer all = head;
+            head = null;
+            for (Timer timer = all; timer != null; timer = timer.next) {
+                timer.slot = null;
+            }
+            return all;
+        }
+    }
+
+    private final SimulationClock clock;
+    private final long tickMillis;
+    private final long startMillis;
+    private final Slot[][] wheels = new Slot[LEVELS][SLOTS];
+    private final Queue<Timer> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timer> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private long currentTick;          // last tick processed, wheel thread only
+    private long inWheel;              // timers in the slots, wheel thread only
+    private volatile boolean idle;
+    private volatile boolean stopped;
+    private volatile Thread thread;
+
+    /**
+     * @param clock The clock that drives the wheel
+     * @param tickMillis Simulated milliseconds per tick (the timer resolution)
+     */
+    public TimingWheel(SimulationClock clock, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.startMillis = clock.now();
+        for (Slot[] wheel : wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                wheel[i] = new Slot();
+            }
+        }
+    }
+
+    /**
+     * Start ticking on a thread from the factory
+     */
+    public void start(ThreadFactory factory) {
+        Thread wheelThread = factory.newThread(this::run);
+        wheelThread.setName("timing-wheel");
+        thread = wheelThread;
+        wheelThread.start();
+    }
+
+    /**
+     * Stop ticking. Pending timers fire at once (sleepers wake up), as do timers scheduled later.
+     */
+    public void stop() {
+        stopped = true;
+        Thread wheelThread = thread;
+        if (wheelThread != null) {
+            LockSupport.unpark(wheelThread);
+        } else {
+            expireQueued();
+        }
+    }
+
+    /**
+     * @param delayMillis Simulated milliseconds from now
+     * @param task Runs on the wheel thread (or at once on the caller's if the wheel is stopped)
+     */
+    public Timer schedule(long delayMillis, Runnable task) {
+        long deadline = clock.now() + Math.max(0, delayMillis);
+        Timer timer = new Timer(task, -Math.floorDiv(startMillis - deadline, tickMillis)); // ceil
+        pending.incrementAndGet();
+        added.add(timer);
+        if (stopped) {
+            expireQueued();
+        } else if (idle) {
+            LockSupport.unpark(thread);
+        }
+        return timer;
+    }
+
+    /**
+     * @return A future completed after the delay; cancelling it cancels the timer
+     */
+    @Override
+    public CompletableFuture<Void> after(long simMillis) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Timer timer = schedule(simMillis, () -> done.complete(null));
+        done.whenComplete((result, error) -> timer.cancel());
+        return done;
+    }
+
+    /**
+     * Park the calling thread on a timer: a sleeping agent costs the wheel one timer
+     */
+    @Override
+    public void sleep(long simMillis) throws InterruptedException {
+        if (simMillis <= 0) {
+            return;
+        }
+        Thread sleeper = Thread.currentThread();
+        Timer timer = schedule(simMillis, () -> LockSupport.unpark(sleeper));
+        while (!timer.isExpired()) {
+            if (Thread.interrupted()) {
+                timer.cancel();
+                throw new InterruptedException();
+            }
+            LockSupport.park(this);
+        }
+    }
+
+    @Override
+    public long now() {
+        return clock.now();
+    }
+
+    @Override
+    public long toWallNanos(long simMillis) {
+        return clock.toWallNanos(simMillis);
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return clock.isVirtual();
+    }
+
+    /**
+     * @return Timers scheduled and neither fired nor cancelled
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    public long getTickMillis() { return tickMillis; }
+
+    public SimulationClock getClock() { return clock; }
+
+    private void run() {
+        while (!stopped) {
+            long target = Math.floorDiv(clock.now() - startMillis, tickMillis);
+            if (inWheel == 0) {
+                // Nothing to cascade or expire on the way: skip the idle ticks
+                currentTick = Math.max(currentTick, target);
+            }
+            transferQueued();
+            while (currentTick < target && !stopped) {
+                tick(++currentTick);
+                transferQueued();
+            }
+
+            if (pending.get() == 0) {
+                idle = true;
+                if (added.isEmpty() && !stopped) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+            } else {
+                long nextTickAt = startMillis + (currentTick + 1) * tickMillis;
+                LockSupport.parkNanos(this, Math.max(1, clock.toWallNanos(nextTickAt - clock.now())));
+            }
+        }
+
+        // Stopped: everything fires now
+        expireQueued();
+        for (Slot[] wheel : wheels) {
+            for (Slot slot : wheel) {
+                for (Timer timer = slot.takeAll(); timer != null; ) {
+                    Timer next = timer.next;
+                    timer.next = null;
+                    timer.expire();
+                    timer = next;
+                }
+            }
+        }
+        inWheel = 0;
+        expireQueued();
+    }
+
+    private void tick(long tick) {
+        // Bring down the timers of every higher wheel that turned to a new slot
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                break;
+            }
+            Timer timer = wheels[level][slotIndex(tick, level)].takeAll();
+            while (timer != null) {
+                Timer next = timer.next;
+                inWheel--;
+                insert(timer);
+                timer = next;
+            }
+        }
+        Timer timer = wheels[0][slotIndex(tick, 0)].takeAll();
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.next = null;
+            inWheel--;
+            timer.expire();
+            timer = next;
+        }
+    }
+
+    private void transferQueued() {
+        Timer timer;
+        while ((timer = added.poll()) != null) {
+            if (timer.state == PENDING) {
+                insert(timer);
+            }
+        }
+        while ((timer = cancelled.poll()) != null) {
+            if (timer.slot != null) {
+                timer.slot.remove(timer);
+                inWheel--;
+            }
+        }
+    }
+
+    private void insert(Timer timer) {
+        long delta = timer.deadlineTick - currentTick;
+        if (delta <= 0) {
+            timer.next = null;
+            timer.expire();
+            return;
+        }
+        if (timer.state != PENDING) {
+            return;
+        }
+        // Too far ahead for the top wheel: park it in the farthest slot, it cascades back in time
+        long tick = currentTick + Math.min(delta, MAX_DELTA);
+        int level = 0;
+        while (level < LEVELS - 1 && Math.min(delta, MAX_DELTA) >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        wheels[level][slotIndex(tick, level)].add(timer);
+        inWheel++;
+    }
+
+    private static int slotIndex(long tick, int level) {
+        return (int) ((tick >> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+
+    // Fire timers still in the queue, from any thread once stopped
+    private void expireQueued() {
+        Timer timer;
+        while ((timer = added.poll()) != null) {
+            timer.expire();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return clock.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package simulation.clock;
+
+/**
+ * As-fast-as-possible time: the clock only moves when the discrete-event engine jumps to
+ * its next event. Nothing can sleep on it, so it requires the DES engine.
+ */
+public class VirtualClock implements SimulationClock {
+    private volatile long currentTime;
+
+    @Override
+    public long now() {
+        return currentTime;
+    }
+
+    /**
+     * Move the clock forward; called by the discrete-event engine only
+     * @param timeMs New simulated time in milliseconds
+     */
+    public void advanceTo(long timeMs) {
+        if (timeMs > currentTime) {
+            currentTime = timeMs;
+        }
+    }
+
+    @Override
+    public void sleep(long simMillis) {
+        throw new UnsupportedOperationException("A virtual clock only advances through the discrete-event engine");
+    }
+
+    @Override
+    public long toWallNanos(long simMillis) {
+        return 0;
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "fast";
+    }
+}
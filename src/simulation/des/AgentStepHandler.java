@@ -0,0 +1,13 @@
+package simulation.des;
+
+/**
+ * Drives one agent inside the discrete-event engine. Instead of sleeping, a handler
+ * performs one step of the agent's logic and schedules its own next step.
+ */
+public interface AgentStepHandler {
+    /**
+     * Schedule the first step of the agent
+     * @param engine The engine the agent runs in
+     */
+    void start(DiscreteEventEngine engine);
+}
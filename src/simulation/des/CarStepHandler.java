@@ -0,0 +1,57 @@
+package simulation.des;
+
+import simulation.agents.Car;
+import simulation.agents.SemaphoreSimulation;
+
+/**
+ * Event-driven version of Car.run: acquire the next node, wait for green if a
+ * semaphore stops the car, dwell for the vehicle speed, repeat until arrival.
+ */
+public class CarStepHandler implements AgentStepHandler {
+    private final Car car;
+    private final DiscreteEventSimulation simulation;
+    private DiscreteEventEngine engine;
+
+    public CarStepHandler(Car car, DiscreteEventSimulation simulation) {
+        this.car = car;
+        this.simulation = simulation;
+    }
+
+    @Override
+    public void start(DiscreteEventEngine engine) {
+        this.engine = engine;
+        engine.schedule(0, this::step);
+    }
+
+    private void step() {
+        if (!car.isRunning()) {
+            return;
+        }
+        if (car.hasArrived()) {
+            car.finish();
+            simulation.vehicleFinished();
+            return;
+        }
+        if (!car.tryAdvance()) {
+            engine.schedule(DiscreteEventSimulation.BLOCKED_RETRY_MS, this::step);
+            return;
+        }
+
+        SemaphoreSimulation semaphore = car.getBlockingSemaphore();
+        SignalStepHandler signal = semaphore != null ? simulation.signalFor(semaphore) : null;
+        if (signal != null) {
+            signal.whenGreen(this::resume);
+        } else {
+            dwell();
+        }
+    }
+
+    private void resume() {
+        car.resumeMoving();
+        dwell();
+    }
+
+    private void dwell() {
+        engine.schedule(simulation.getVehicleSpeed(), this::step);
+    }
+}
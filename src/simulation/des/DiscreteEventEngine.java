@@ -0,0 +1,114 @@
+package simulation.des;
+
+import simulation.clock.SimulationClock;
+import simulation.clock.VirtualClock;
+
+import java.util.PriorityQueue;
+
+/**
+ * Discrete-event scheduler with a virtual clock.
+ *
+ * Events are kept in a priority queue ordered by (time, sequence) and executed one at a
+ * time on the thread calling {@link #runUntil(long)}. The virtual clock jumps straight to
+ * the next event, so simulated time is decoupled from wall-clock time. An optional pacing
+ * clock slows the engine down to that clock's rate:
+ * - VirtualClock (or null): as fast as possible
+ * - RealTimeClock: paced to real time (useful when the UI is watching)
+ * - ScaledClock: N simulated milliseconds per wall-clock millisecond
+ *
+ * Scheduling is not thread-safe; handlers schedule from inside the engine thread.
+ */
+public class DiscreteEventEngine {
+    private final PriorityQueue<SimulationEvent> eventQueue;
+    private final VirtualClock clock;
+    private final SimulationClock pacingClock;
+    private long currentTime;
+    private long sequence;
+    private long processedEvents;
+    private volatile boolean running;
+
+    public DiscreteEventEngine(SimulationClock pacingClock) {
+        this.eventQueue = new PriorityQueue<>();
+        this.clock = new VirtualClock();
+        this.pacingClock = pacingClock != null && !pacingClock.isVirtual() ? pacingClock : null;
+        this.currentTime = 0;
+        this.sequence = 0;
+        this.processedEvents = 0;
+    }
+
+    /**
+     * Schedule an action relative to the current virtual time
+     * @param delayMs Simulated milliseconds from now
+     * @param action The action to run
+     */
+    public void schedule(long delayMs, Runnable action) {
+        scheduleAt(currentTime + Math.max(0, delayMs), action);
+    }
+
+    /**
+     * Schedule an action at an absolute virtual time (never in the past)
+     * @param timeMs Simulated time in milliseconds
+     * @param action The action to run
+     */
+    public void scheduleAt(long timeMs, Runnable action) {
+        eventQueue.add(new SimulationEvent(Math.max(timeMs, currentTime), sequence++, action));
+    }
+
+    /**
+     * Process events until the queue is empty, the horizon is passed or {@link #stop()} is called.
+     * @param horizonMs Last simulated time to process (Long.MAX_VALUE for no limit)
+     * @return The virtual time when the run ended
+     */
+    public long runUntil(long horizonMs) {
+        running = true;
+        long pacingStart = pacingClock != null ? pacingClock.now() : 0;
+        long simStart = currentTime;
+
+        while (running) {
+            SimulationEvent event = eventQueue.peek();
+            if (event == null || event.time > horizonMs) {
+                break;
+            }
+            if (pacingClock != null && !pace(event.time - simStart, pacingStart)) {
+                break;
+            }
+            eventQueue.poll();
+            currentTime = event.time;
+            clock.advanceTo(currentTime);
+            event.action.run();
+            processedEvents++;
+        }
+
+        if (running && horizonMs != Long.MAX_VALUE && currentTime < horizonMs) {
+            currentTime = horizonMs;
+            clock.advanceTo(currentTime);
+        }
+        running = false;
+        return currentTime;
+    }
+
+    // Wait until the pacing clock catches up with the simulated time of the next event
+    private boolean pace(long simElapsedMs, long pacingStart) {
+        long aheadMs = simElapsedMs - (pacingClock.now() - pacingStart);
+        if (aheadMs > 0) {
+            try {
+                pacingClock.sleep(aheadMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                return false;
+            }
+        }
+        return running;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public long now() { return currentTime; }
+    public VirtualClock getClock() { return clock; }
+    public long getProcessedEvents() { return processedEvents; }
+    public int getPendingEvents() { return eventQueue.size(); }
+    public boolean isRunning() { return running; }
+}
@@ -0,0 +1,131 @@
+package simulation.des;
+
+import simulation.TrafficSimulationCore;
+import simulation.agents.Car;
+import simulation.agents.Pedestrian;
+import simulation.agents.SemaphoreSimulation;
+import simulation.agents.Truck;
+import simulation.clock.SimulationClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the agents of a TrafficSimulationCore on a single DiscreteEventEngine instead of one
+ * thread per agent. The agents keep their own state and route/node/signal logic; this class
+ * only wires a step handler to each of them.
+ */
+public class DiscreteEventSimulation {
+    /** Retry delay for a car whose next node is occupied */
+    static final long BLOCKED_RETRY_MS = 50;
+    /** Retry delay for a truck whose next node is occupied (same as the threaded truck) */
+    static final long TRUCK_RETRY_MS = 200;
+    /** Retry delay for a pedestrian that found no free crossing permit */
+    static final long PEDESTRIAN_RETRY_MS = 500;
+
+    private final TrafficSimulationCore core;
+    private final DiscreteEventEngine engine;
+    private final Map<SemaphoreSimulation, SignalStepHandler> signals;
+    private final List<AgentStepHandler> handlers;
+    private Thread engineThread;
+    private boolean scheduled;
+    private int activeVehicles;
+    private boolean stopWhenVehiclesFinished;
+
+    /**
+     * @param core The simulation whose agents are driven
+     * @param pacingClock Clock the engine is paced to; a virtual clock runs as fast as possible
+     */
+    public DiscreteEventSimulation(TrafficSimulationCore core, SimulationClock pacingClock) {
+        this.core = core;
+        this.engine = new DiscreteEventEngine(pacingClock);
+        this.signals = new HashMap<>();
+        this.handlers = new ArrayList<>();
+    }
+
+    private void scheduleAgents() {
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+
+        for (SemaphoreSimulation semaphore : core.getSemaphores()) {
+            SignalStepHandler signal = new SignalStepHandler(semaphore);
+            signals.put(semaphore, signal);
+            handlers.add(signal);
+        }
+        activeVehicles = core.getCars().size() + core.getTrucks().size();
+        for (Car car : core.getCars()) {
+            handlers.add(new CarStepHandler(car, this));
+        }
+        for (Truck truck : core.getTrucks()) {
+            handlers.add(new TruckStepHandler(truck, this));
+        }
+        for (Pedestrian pedestrian : core.getPedestrians()) {
+            handlers.add(new PedestrianStepHandler(pedestrian, this));
+        }
+
+        for (AgentStepHandler handler : handlers) {
+            handler.start(engine);
+        }
+    }
+
+    /**
+     * Run the engine on its own thread until stopped
+     */
+    public void start() {
+        scheduleAgents();
+        engineThread = new Thread(() -> engine.runUntil(Long.MAX_VALUE), "des-engine");
+        engineThread.setDaemon(true);
+        engineThread.start();
+        System.out.println("Discrete-event engine started with " + handlers.size() + " agents");
+    }
+
+    /**
+     * Run the engine on the calling thread up to the given simulated time
+     * @param horizonMs Simulated time limit in milliseconds
+     * @return The virtual time reached
+     */
+    public long runUntil(long horizonMs) {
+        scheduleAgents();
+        return engine.runUntil(horizonMs);
+    }
+
+    public void stop() {
+        engine.stop();
+        if (engineThread != null) {
+            engineThread.interrupt();
+        }
+    }
+
+    /**
+     * End the run as soon as every car and truck has reached its destination, instead of
+     * keeping the signals cycling until the horizon
+     */
+    public void setStopWhenVehiclesFinished(boolean stopWhenVehiclesFinished) {
+        this.stopWhenVehiclesFinished = stopWhenVehiclesFinished;
+    }
+
+    public boolean allVehiclesFinished() {
+        return scheduled && activeVehicles == 0;
+    }
+
+    void vehicleFinished() {
+        activeVehicles--;
+        if (activeVehicles == 0 && stopWhenVehiclesFinished) {
+            engine.stop();
+        }
+    }
+
+    SignalStepHandler signalFor(SemaphoreSimulation semaphore) {
+        return signals.get(semaphore);
+    }
+
+    int getVehicleSpeed() {
+        return core.getVehicleSpeed();
+    }
+
+    public DiscreteEventEngine getEngine() { return engine; }
+}
@@ -0,0 +1,77 @@
+package simulation.des;
+
+import simulation.agents.Pedestrian;
+import simulation.agents.SemaphoreSimulation;
+
+/**
+ * Event-driven version of Pedestrian.run: wait for red, take a crossing permit, cross for
+ * the crossing time and give up if the light turns green first.
+ */
+public class PedestrianStepHandler implements AgentStepHandler {
+    private final Pedestrian pedestrian;
+    private final DiscreteEventSimulation simulation;
+    private DiscreteEventEngine engine;
+
+    // Identifies the current crossing so callbacks from an earlier attempt are ignored
+    private int crossingAttempt;
+    private long crossingStart;
+    private long crossingTime;
+
+    public PedestrianStepHandler(Pedestrian pedestrian, DiscreteEventSimulation simulation) {
+        this.pedestrian = pedestrian;
+        this.simulation = simulation;
+    }
+
+    @Override
+    public void start(DiscreteEventEngine engine) {
+        this.engine = engine;
+        engine.schedule(0, this::step);
+    }
+
+    private void step() {
+        if (!pedestrian.isRunning() || pedestrian.getPedestrianState() == Pedestrian.PedestrianState.FINISHED) {
+            return;
+        }
+        SemaphoreSimulation semaphore = pedestrian.getCurrentSemaphore();
+        SignalStepHandler signal = semaphore != null ? simulation.signalFor(semaphore) : null;
+        if (signal == null) {
+            return;
+        }
+
+        if (semaphore.getCurrentState() != SemaphoreSimulation.LightState.RED) {
+            signal.whenRed(this::step);
+            return;
+        }
+        if (!pedestrian.tryStartCrossing()) {
+            engine.schedule(DiscreteEventSimulation.PEDESTRIAN_RETRY_MS, this::step);
+            return;
+        }
+
+        int attempt = ++crossingAttempt;
+        crossingStart = engine.now();
+        crossingTime = semaphore.getCrossingTime();
+        engine.schedule(crossingTime, () -> completeCrossing(attempt));
+        signal.whenGreen(() -> lightChanged(attempt));
+    }
+
+    private void completeCrossing(int attempt) {
+        if (attempt != crossingAttempt || pedestrian.getPedestrianState() != Pedestrian.PedestrianState.CROSSING) {
+            return;
+        }
+        crossingAttempt++;
+        pedestrian.completeCrossing();
+    }
+
+    private void lightChanged(int attempt) {
+        if (attempt != crossingAttempt || pedestrian.getPedestrianState() != Pedestrian.PedestrianState.CROSSING) {
+            return;
+        }
+        if (engine.now() - crossingStart >= crossingTime) {
+            completeCrossing(attempt);
+            return;
+        }
+        crossingAttempt++;
+        pedestrian.abortCrossing();
+        engine.schedule(0, this::step);
+    }
+}
@@ -0,0 +1,85 @@
+package simulation.des;
+
+import simulation.agents.SemaphoreSimulation;
+import simulation.agents.SignalTiming;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives a SemaphoreSimulation without a thread: its light is computed from the engine clock,
+ * and an event is scheduled only at each phase boundary. Agents that would block on the
+ * semaphore's conditions register a continuation instead, which is scheduled when the light
+ * reaches the phase they are waiting for.
+ */
+public class SignalStepHandler implements AgentStepHandler {
+    private final SemaphoreSimulation semaphore;
+    private final List<Runnable> greenWaiters;
+    private final List<Runnable> redWaiters;
+    private DiscreteEventEngine engine;
+
+    public SignalStepHandler(SemaphoreSimulation semaphore) {
+        this.semaphore = semaphore;
+        this.greenWaiters = new ArrayList<>();
+        this.redWaiters = new ArrayList<>();
+    }
+
+    @Override
+    public void start(DiscreteEventEngine engine) {
+        this.engine = engine;
+        semaphore.startCycle(engine.now());
+        scheduleNextChange();
+    }
+
+    private void changePhase() {
+        if (!semaphore.isRunning()) {
+            return;
+        }
+        semaphore.onPhaseBoundary();
+
+        switch (semaphore.getCurrentState()) {
+            case GREEN -> release(greenWaiters);
+            case RED -> release(redWaiters);
+            default -> { }
+        }
+        scheduleNextChange();
+    }
+
+    private void scheduleNextChange() {
+        long next = semaphore.getNextChangeTime(engine.now());
+        if (next != SignalTiming.NEVER) {
+            engine.scheduleAt(next, this::changePhase);
+        }
+    }
+
+    private void release(List<Runnable> waiters) {
+        for (Runnable waiter : waiters) {
+            engine.schedule(0, waiter);
+        }
+        waiters.clear();
+    }
+
+    /**
+     * Run the continuation as soon as the light is green (immediately if it already is)
+     */
+    public void whenGreen(Runnable continuation) {
+        if (semaphore.getCurrentState() == SemaphoreSimulation.LightState.GREEN) {
+            engine.schedule(0, continuation);
+        } else {
+            greenWaiters.add(continuation);
+        }
+    }
+
+    /**
+     * Run the continuation as soon as the light is red (immediately if it already is)
+     */
+    public void whenRed(Runnable continuation) {
+        if (semaphore.getCurrentState() == SemaphoreSimulation.LightState.RED) {
+            engine.schedule(0, continuation);
+        } else {
+            redWaiters.add(continuation);
+        }
+    }
+
+    public SemaphoreSimulation getSemaphore() { return semaphore; }
+}
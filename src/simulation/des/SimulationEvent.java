@@ -0,0 +1,25 @@
+package simulation.des;
+
+/**
+ * A timestamped action waiting in the discrete-event queue.
+ * Events with the same timestamp run in the order they were scheduled.
+ */
+public class SimulationEvent implements Comparable<SimulationEvent> {
+    final long time;
+    final long sequence;
+    final Runnable action;
+
+    SimulationEvent(long time, long sequence, Runnable action) {
+        this.time = time;
+        this.sequence = sequence;
+        this.action = action;
+    }
+
+    public long getTime() { return time; }
+
+    @Override
+    public int compareTo(SimulationEvent other) {
+        int byTime = Long.compare(time, other.time);
+        return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+    }
+}
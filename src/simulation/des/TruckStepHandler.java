@@ -0,0 +1,58 @@
+package simulation.des;
+
+import simulation.agents.SemaphoreSimulation;
+import simulation.agents.Truck;
+
+/**
+ * Event-driven version of Truck.run. Same route following and node hand-over as the
+ * threaded truck, with waiting expressed as scheduled events.
+ */
+public class TruckStepHandler implements AgentStepHandler {
+    private final Truck truck;
+    private final DiscreteEventSimulation simulation;
+    private DiscreteEventEngine engine;
+
+    public TruckStepHandler(Truck truck, DiscreteEventSimulation simulation) {
+        this.truck = truck;
+        this.simulation = simulation;
+    }
+
+    @Override
+    public void start(DiscreteEventEngine engine) {
+        this.engine = engine;
+        truck.prepareRoute();
+        engine.schedule(0, this::step);
+    }
+
+    private void step() {
+        if (!truck.isRunning()) {
+            return;
+        }
+        if (truck.hasArrived()) {
+            truck.finish();
+            simulation.vehicleFinished();
+            return;
+        }
+        if (!truck.tryAdvance()) {
+            engine.schedule(DiscreteEventSimulation.TRUCK_RETRY_MS, this::step);
+            return;
+        }
+
+        SemaphoreSimulation semaphore = truck.getBlockingSemaphore();
+        SignalStepHandler signal = semaphore != null ? simulation.signalFor(semaphore) : null;
+        if (signal != null) {
+            signal.whenGreen(this::resume);
+        } else {
+            dwell();
+        }
+    }
+
+    private void resume() {
+        truck.resumeMoving();
+        dwell();
+    }
+
+    private void dwell() {
+        engine.schedule(simulation.getVehicleSpeed(), this::step);
+    }
+}
@@ -46,7 +46,11 @@ public class DistributedSemaphoreClient {
     private static final int DEFAULT_MAX_RETRIES = 3;
     private static final long DEFAULT_RETRY_DELAY_MS = 1000;
 
-    private DistributedSemaphoreClient() {
+    /**
+     * Create a client with its own connection cache, for simulations that do not share
+     * the singleton (see simulation.SimulationContext)
+     */
+    public DistributedSemaphoreClient() {
         this.remoteSemaphoreCache = new ConcurrentHashMap<>();
         this.semaphoreHosts = new ConcurrentHashMap<>();
         this.semaphorePorts = new ConcurrentHashMap<>();
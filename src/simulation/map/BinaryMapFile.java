@@ -0,0 +1,224 @@
+package simulation.map;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compiled map file, read through a memory mapping.
+ *
+ * The file is a small header followed by the RoadGraph arrays exactly as they sit in memory
+ * (node types, CSR offsets, edge targets, lengths and lanes) and the semaphores with their timings.
+ * Loading maps the file and bulk-copies each array, so a city map loads at disk speed with no
+ * parsing. The header records the size and modification time of the source the file was
+ * compiled from, so a stale cache can be detected without reading the source, and can carry
+ * a short metadata string (the scenario compiles its demand into it).
+ *
+ * Layout (little endian):
+ *   int magic, int version, long sourceSize, long sourceModified,
+ *   int width, int height, int scale, int nodeCount, int edgeCount, int semaphoreCount,
+ *   int metadataBytes, byte[metadataBytes] metadata (UTF-8),
+ *   byte[nodeCount] types, int[nodeCount + 1] outOffset, int[edgeCount] target,
+ *   double[edgeCount] length, byte[edgeCount] lanes, short[edgeCount] laneCapacity,
+ *   int[semaphoreCount] semaphoreNodes, int[3 * semaphoreCount] lightTimers
+ */
+public final class BinaryMapFile {
+    private static final int MAGIC = 0x544D4150; // "TMAP"
+    private static final int VERSION = 2;
+    private static final int FIXED_HEADER_BYTES = 4 + 4 + 8 + 8 + 7 * 4;
+
+    private BinaryMapFile() {
+    }
+
+    /**
+     * Header of a compiled map
+     */
+    public static final class Header {
+        public final long sourceSize;
+        public final long sourceModified;
+        public final int width;
+        public final int height;
+        public final String metadata;
+
+        private Header(long sourceSize, long sourceModified, int width, int height, String metadata) {
+            this.sourceSize = sourceSize;
+            this.sourceModified = sourceModified;
+            this.width = width;
+            this.height = height;
+            this.metadata = metadata;
+        }
+
+        /**
+         * @return Whether the file was compiled from the source as it is now
+         */
+        public boolean isCompiledFrom(Path source) throws IOException {
+            return sourceSize == Files.size(source)
+                    && sourceModified == Files.getLastModifiedTime(source).toMillis();
+        }
+    }
+
+    /**
+     * Compile a map. The file is written next to its final name and moved into place, so
+     * readers never see a partial file.
+     * @param source File the map was loaded from (its size and time go in the header), or null
+     * @param metadata Extra text stored in the header, or null
+     */
+    public static void write(Path file, TrafficMap map, Path source, String metadata) throws IOException {
+        RoadGraph graph = map.getGraph();
+        int nodeCount = graph.getNodeCount();
+        int edgeCount = graph.getEdgeCount();
+        int[] semaphoreNodes = map.semaphoreNodes();
+        int[] lightTimers = map.lightTimers();
+        byte[] meta = (metadata != null ? metadata : "").getBytes(StandardCharsets.UTF_8);
+
+        long size = FIXED_HEADER_BYTES + meta.length + nodeCount + 4L * (nodeCount + 1)
+                + 4L * edgeCount + 8L * edgeCount + 3L * edgeCount + 4L * semaphoreNodes.length + 12L * semaphoreNodes.length;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Map too large for a single mapping: " + size + " bytes");
+        }
+
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION);
+                buffer.putLong(source != null ? Files.size(source) : 0);
+                buffer.putLong(source != null ? Files.getLastModifiedTime(source).toMillis() : 0);
+                buffer.putInt(map.getWidth()).putInt(map.getHeight()).putInt(map.getScale());
+                buffer.putInt(nodeCount).putInt(edgeCount).putInt(semaphoreNodes.length);
+                buffer.putInt(meta.length).put(meta);
+
+                for (int v = 0; v < nodeCount; v++) {
+                    buffer.put((byte) graph.type(v).ordinal());
+                }
+                for (int v = 0; v < nodeCount; v++) {
+                    buffer.putInt(graph.outBegin(v));
+                }
+                buffer.putInt(edgeCount);
+                for (int edge = 0; edge < edgeCount; edge++) {
+                    buffer.putInt(graph.target(edge));
+                }
+                for (int edge = 0; edge < edgeCount; edge++) {
+                    buffer.putDouble(graph.length(edge));
+                }
+                for (int edge = 0; edge < edgeCount; edge++) {
+                    buffer.put((byte) graph.lanes(edge));
+                }
+                for (int edge = 0; edge < edgeCount; edge++) {
+                    buffer.putShort((short) graph.laneCapacity(edge));
+                }
+                putInts(buffer, semaphoreNodes);
+                putInts(buffer, lightTimers);
+                buffer.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return The header, or null if the file is missing or not a compiled map of this version
+     */
+    public static Header readHeader(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < FIXED_HEADER_BYTES) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return header(buffer);
+        }
+    }
+
+    /**
+     * Load a compiled map
+     * @throws IOException if the file is missing, truncated or not a compiled map
+     */
+    public static TrafficMap read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            Header header = header(buffer);
+            if (header == null) {
+                throw new IOException(file + " is not a compiled map");
+            }
+            int width = header.width;
+            int height = header.height;
+            int scale = buffer.getInt();
+            int nodeCount = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            int semaphoreCount = buffer.getInt();
+            buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+            if (nodeCount != width * height) {
+                throw new IOException(file + " has " + nodeCount + " nodes for a " + width + "x" + height + " map");
+            }
+
+            byte[] types = new byte[nodeCount];
+            buffer.get(types);
+            int[] outOffset = getInts(buffer, nodeCount + 1);
+            int[] target = getInts(buffer, edgeCount);
+            double[] lengths = new double[edgeCount];
+            buffer.asDoubleBuffer().get(lengths);
+            buffer.position(buffer.position() + 8 * edgeCount);
+            byte[] lanes = new byte[edgeCount];
+            buffer.get(lanes);
+            short[] laneCapacity = new short[edgeCount];
+            buffer.asShortBuffer().get(laneCapacity);
+            buffer.position(buffer.position() + 2 * edgeCount);
+            int[] semaphoreNodes = getInts(buffer, semaphoreCount);
+            int[] lightTimers = getInts(buffer, 3 * semaphoreCount);
+
+            int[] xs = new int[nodeCount];
+            int[] ys = new int[nodeCount];
+            Arrays.parallelSetAll(xs, v -> (v / height) * scale);
+            Arrays.parallelSetAll(ys, v -> (v % height) * scale);
+            RoadGraph graph = new RoadGraph(xs, ys, types, outOffset, target, lengths, lanes, laneCapacity);
+            return new TrafficMap(graph, width, height, scale, semaphoreNodes, lightTimers);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    // Leaves the buffer after width and height; scale and the counts follow, then the metadata
+    private static Header header(ByteBuffer buffer) {
+        if (buffer.remaining() < FIXED_HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        long sourceSize = buffer.getLong();
+        long sourceModified = buffer.getLong();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int metadataAt = buffer.position() + 4 * 4;
+        int metadataBytes = buffer.getInt(metadataAt);
+        if (metadataBytes < 0 || metadataAt + 4L + metadataBytes > buffer.limit()) {
+            return null;
+        }
+        byte[] metadata = new byte[metadataBytes];
+        buffer.get(metadataAt + 4, metadata);
+        return new Header(sourceSize, sourceModified, width, height, new String(metadata, StandardCharsets.UTF_8));
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+}
@@ -0,0 +1,174 @@
+package simulation.map;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Builds grid and corridor maps of any size.
+ *
+ * The layout is the one of the original 11x11 map: intersections at even coordinates with
+ * street nodes between them, rows alternating eastbound and westbound (every other
+ * intersection row), columns alternating southbound and northbound, and a semaphore at every
+ * other intersection in column-major order. Every node's edges follow from its coordinates,
+ * so the RoadGraph arrays are filled in parallel without building an edge list first.
+ * Node objects are only created when something asks for them, and nothing is printed, so
+ * a 2000x2000 map builds in seconds.
+ *
+ * Usage:
+ *   new GridMapGenerator(2001, 2001).generate()       // 1000x1000 blocks
+ *   GridMapGenerator.corridor(3000, 2).generate()     // 3000 blocks long, two one-way avenues
+ */
+public class GridMapGenerator {
+    public static final int DEFAULT_SCALE = 50;
+
+    private final int width;
+    private final int height;
+    private int scale = DEFAULT_SCALE;
+    private int lanes = RoadGraph.DEFAULT_LANES;
+    private int laneCapacity = RoadGraph.DEFAULT_LANE_CAPACITY;
+
+    /**
+     * @param width Nodes along x (intersections and streets)
+     * @param height Nodes along y
+     */
+    public GridMapGenerator(int width, int height) {
+        if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("Invalid map size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * A long strip of parallel one-way avenues, alternating direction, joined at every block
+     * by short one-way cross streets
+     * @param blocks Length of the corridor in blocks
+     * @param avenues Number of parallel avenues (at least 1)
+     */
+    public static GridMapGenerator corridor(int blocks, int avenues) {
+        if (blocks < 1 || avenues < 1) {
+            throw new IllegalArgumentException("Invalid corridor: " + blocks + " blocks, " + avenues + " avenues");
+        }
+        return new GridMapGenerator(2 * blocks + 1, 2 * avenues - 1);
+    }
+
+    /**
+     * @param scale World units between neighbouring nodes (edge length)
+     */
+    public GridMapGenerator scale(int scale) {
+        if (scale < 1) {
+            throw new IllegalArgumentException("Invalid scale: " + scale);
+        }
+        this.scale = scale;
+        return this;
+    }
+
+    /**
+     * @param lanes Lanes of every road
+     * @param laneCapacity Vehicles each lane holds while queued for the next node (0: none)
+     */
+    public GridMapGenerator lanes(int lanes, int laneCapacity) {
+        RoadGraph.checkLanes(lanes, laneCapacity);
+        this.lanes = lanes;
+        this.laneCapacity = laneCapacity;
+        return this;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getScale() { return scale; }
+
+    public TrafficMap generate() {
+        return new TrafficMap(buildGraph(), width, height, scale, semaphoreNodes(), null);
+    }
+
+    RoadGraph buildGraph() {
+        int nodeCount = width * height;
+        int[] xs = new int[nodeCount];
+        int[] ys = new int[nodeCount];
+        byte[] types = new byte[nodeCount];
+        int[] outOffset = new int[nodeCount + 1];
+
+        IntStream.range(0, nodeCount).parallel().forEach(v -> {
+            int x = v / height, y = v % height;
+            xs[v] = x * scale;
+            ys[v] = y * scale;
+            types[v] = (byte) nodeType(x, y).ordinal();
+            outOffset[v + 1] = (horizontalTarget(x, y) >= 0 ? 1 : 0) + (verticalTarget(x, y) >= 0 ? 1 : 0);
+        });
+        Arrays.parallelPrefix(outOffset, Integer::sum);
+
+        int edgeCount = outOffset[nodeCount];
+        int[] target = new int[edgeCount];
+        double[] lengths = new double[edgeCount];
+        Arrays.fill(lengths, scale);
+        // Horizontal edge first, as the original generator created all of them before the vertical ones
+        IntStream.range(0, nodeCount).parallel().forEach(v -> {
+            int x = v / height, y = v % height;
+            int slot = outOffset[v];
+            int horizontal = horizontalTarget(x, y);
+            if (horizontal >= 0) target[slot++] = horizontal;
+            int vertical = verticalTarget(x, y);
+            if (vertical >= 0) target[slot] = vertical;
+        });
+
+        return new RoadGraph(xs, ys, types, outOffset, target, lengths,
+                RoadGraph.filled(new byte[edgeCount], lanes), RoadGraph.filled(new short[edgeCount], laneCapacity));
+    }
+
+    /**
+     * @return Indices of the intersections that get a semaphore, ascending: every other
+     *         intersection in column-major order, starting with the second
+     */
+    int[] semaphoreNodes() {
+        int rows = (height + 1) / 2;
+        long intersections = (long) ((width + 1) / 2) * rows;
+        int[] nodes = new int[(int) (intersections / 2)];
+        Arrays.parallelSetAll(nodes, i -> {
+            int ordinal = 2 * i + 1;
+            return index(2 * (ordinal / rows), 2 * (ordinal % rows));
+        });
+        return nodes;
+    }
+
+    static TrafficNode.NodeType nodeType(int x, int y) {
+        // Intersections at even coordinates, streets in between
+        if (x % 2 == 0 && y % 2 == 0) {
+            return TrafficNode.NodeType.INTERSECTION;
+        } else if (x % 2 == 1 && y % 2 == 0) {
+            return TrafficNode.NodeType.STREET; // Horizontal street
+        } else if (x % 2 == 0 && y % 2 == 1) {
+            return TrafficNode.NodeType.STREET; // Vertical street
+        } else {
+            return TrafficNode.NodeType.CROSSWALK; // Crosswalk positions
+        }
+    }
+
+    // Rows y % 4 == 0 run left → right in segments starting at even x up to width - 3;
+    // the other intersection rows run right → left in segments starting at width - 1, width - 3, ... down to 2.
+    // Each segment is intersection → street → intersection.
+    private int horizontalTarget(int x, int y) {
+        if (y % 2 != 0) return -1;
+        if (y % 4 == 0) {
+            int start = x - x % 2;
+            return start <= width - 3 ? index(x + 1, y) : -1;
+        }
+        int start = (width - 1 - x) % 2 == 0 ? x : x + 1;
+        return start >= 2 && start <= width - 1 ? index(x - 1, y) : -1;
+    }
+
+    // Columns x % 4 == 0 run top → bottom, the other intersection columns bottom → top
+    private int verticalTarget(int x, int y) {
+        if (x % 2 != 0) return -1;
+        if (x % 4 == 0) {
+            int start = y - y % 2;
+            return start <= height - 3 ? index(x, y + 1) : -1;
+        }
+        int start = (height - 1 - y) % 2 == 0 ? y : y + 1;
+        return start >= 2 && start <= height - 1 ? index(x, y - 1) : -1;
+    }
+
+    private int index(int x, int y) {
+        return x * height + y;
+    }
+}
@@ -0,0 +1,330 @@
+package simulation.map;
+
+import simulation.agents.Agent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Finds gridlocks: cycles of vehicles each waiting for a node held by the next one.
+ *
+ * Vehicles report the node they failed to get (waiting) and withdraw the report once they
+ * move or leave the road (stoppedWaiting). With the node occupants this is a wait-for graph
+ * where every vehicle waits for at most one node, so a new wait closes a cycle exactly when
+ * following "waits for -> held by" from the vehicle leads back to it. That walk runs on every
+ * new wait; scan() sweeps all waits in O(waiting vehicles) for cycles closed by two threads
+ * at once, and runs on a background thread in the thread engine (startScanning).
+ *
+ * Each gridlock is reported once to the listeners. With a policy other than NONE its youngest
+ * vehicle is picked to break it, and applies the policy itself the next time it checks its
+ * wait (claimResolution), so the detector never changes agent state. The vehicle that broke
+ * the last gridlock is not picked again straight away while the cycle has another.
+ */
+public class GridlockDetector {
+    public enum Policy {
+        /** Only detect and report */
+        NONE,
+        /**
+         * The youngest vehicle leaves by another road, or backs off if none is free or its
+         * last gridlock already ended in a detour
+         */
+        REROUTE,
+        /** The youngest vehicle gives up its node(s) and waits off the road */
+        BACK_OFF_YOUNGEST
+    }
+
+    /**
+     * A cycle of the wait-for graph: vehicle i waits for node i, held by vehicle i + 1
+     * (the last node is held by the first vehicle)
+     */
+    public static final class Gridlock {
+        private final long id;
+        private final List<Agent> vehicles;
+        private final List<TrafficNode> nodes;
+        private volatile boolean resolved;
+        private volatile Agent victim;
+
+        Gridlock(long id, List<Agent> vehicles, List<TrafficNode> nodes) {
+            this.id = id;
+            this.vehicles = Collections.unmodifiableList(new ArrayList<>(vehicles));
+            this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        }
+
+        public long getId() { return id; }
+        public List<Agent> getVehicles() { return vehicles; }
+        public List<TrafficNode> getNodes() { return nodes; }
+        public boolean isResolved() { return resolved; }
+
+        /**
+         * @return The vehicle picked to break the gridlock, or null with policy NONE
+         */
+        public Agent getVictim() { return victim; }
+
+        /**
+         * @return The youngest vehicle of the cycle (latest created)
+         */
+        public Agent getYoungest() {
+            return youngestExcept(null);
+        }
+
+        // The youngest vehicle other than the excluded one, unless it is the only vehicle
+        private Agent youngestExcept(Agent excluded) {
+            Agent youngest = null;
+            for (Agent vehicle : vehicles) {
+                if (vehicle != excluded && (youngest == null || vehicle.getSerial() > youngest.getSerial())) {
+                    youngest = vehicle;
+                }
+            }
+            return youngest != null ? youngest : vehicles.get(0);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder cycle = new StringBuilder();
+            for (int i = 0; i < vehicles.size(); i++) {
+                cycle.append(vehicles.get(i).type).append(' ').append(vehicles.get(i).id)
+                        .append(" → ").append(nodes.get(i).getTrafficNodeId()).append(" → ");
+            }
+            cycle.append(vehicles.get(0).type).append(' ').append(vehicles.get(0).id);
+            return cycle.toString();
+        }
+    }
+
+    private final Map<Agent, TrafficNode> waits = new HashMap<>();
+    private final Map<Agent, Gridlock> gridlockOf = new HashMap<>();  // members of unresolved gridlocks
+    private final Map<Agent, Policy> victims = new HashMap<>();       // resolutions not yet claimed
+    private Agent lastVictim;                                          // last vehicle to claim one
+    private final List<Consumer<Gridlock>> listeners = new CopyOnWriteArrayList<>();
+    private volatile Policy policy = Policy.NONE;
+    private volatile Thread scanner;
+    private long detected;
+    private long resolved;
+    private long interventions;
+    private long largest;
+
+    /**
+     * A vehicle could not get the node: add (or keep) its wait and look for the cycle it closes
+     */
+    public void waiting(Agent vehicle, TrafficNode node) {
+        Gridlock gridlock;
+        synchronized (this) {
+            TrafficNode previous = waits.put(vehicle, node);
+            if (previous == node) {
+                return;
+            }
+            if (previous != null) {
+                endGridlockOf(vehicle);
+            }
+            gridlock = walk(vehicle, new HashSet<>());
+        }
+        if (gridlock != null) {
+            publish(gridlock);
+        }
+    }
+
+    /**
+     * The vehicle got a node, or left the road: its wait (and any gridlock it was in) is over
+     */
+    public void stoppedWaiting(Agent vehicle) {
+        synchronized (this) {
+            if (waits.remove(vehicle) != null) {
+                endGridlockOf(vehicle);
+            }
+            victims.remove(vehicle);
+        }
+    }
+
+    /**
+     * @return The policy the vehicle has been picked to apply, once, or null
+     */
+    public synchronized Policy claimResolution(Agent vehicle) {
+        Policy action = victims.remove(vehicle);
+        if (action != null) {
+            interventions++;
+            lastVictim = vehicle;
+        }
+        return action;
+    }
+
+    /**
+     * Look for cycles among all current waits
+     * @return The gridlocks found (already reported to the listeners)
+     */
+    public List<Gridlock> scan() {
+        List<Gridlock> found = new ArrayList<>();
+        synchronized (this) {
+            Set<Agent> visited = new HashSet<>();
+            for (Agent vehicle : new ArrayList<>(waits.keySet())) {
+                if (!visited.contains(vehicle)) {
+                    Gridlock gridlock = walk(vehicle, visited);
+                    if (gridlock != null) {
+                        found.add(gridlock);
+                    }
+                }
+            }
+        }
+        found.forEach(this::publish);
+        return found;
+    }
+
+    /**
+     * Scan on a daemon thread, for engines where vehicles wait on their own threads
+     * @param periodNanos Wall-clock time between scans
+     */
+    public synchronized void startScanning(long periodNanos) {
+        stopScanning();
+        Thread thread = new Thread(() -> {
+            while (scanner == Thread.currentThread()) {
+                LockSupport.parkNanos(this, Math.max(1, periodNanos));
+                if (scanner == Thread.currentThread()) {
+                    scan();
+                }
+            }
+        }, "gridlock-detector");
+        thread.setDaemon(true);
+        scanner = thread;
+        thread.start();
+    }
+
+    public synchronized void stopScanning() {
+        Thread thread = scanner;
+        scanner = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Follow waits from the vehicle until they stop, meet a vehicle seen before, or close a
+    // cycle on the current path. A cycle not through start belongs to the vehicle that closed it.
+    private Gridlock walk(Agent start, Set<Agent> visited) {
+        Map<Agent, Integer> onPath = new HashMap<>();
+        List<Agent> path = new ArrayList<>();
+        List<TrafficNode> wanted = new ArrayList<>();
+        Agent current = start;
+        while (current != null && visited.add(current)) {
+            Gridlock known = gridlockOf.get(current);
+            if (known != null) {
+                // Someone outside the cycle may have taken a node the cycle freed
+                if (holds(known.vehicles, known.nodes)) {
+                    return null;
+                }
+                endGridlock(known);
+            }
+            TrafficNode node = waits.get(current);
+            Agent holder = node != null ? node.getOccupyingAgent() : null;
+            if (holder == null || holder == current) {
+                return null;
+            }
+            onPath.put(current, path.size());
+            path.add(current);
+            wanted.add(node);
+            Integer cycleStart = onPath.get(holder);
+            if (cycleStart != null) {
+                return record(path.subList(cycleStart, path.size()), wanted.subList(cycleStart, wanted.size()));
+            }
+            current = holder;
+        }
+        return null;
+    }
+
+    private Gridlock record(List<Agent> vehicles, List<TrafficNode> nodes) {
+        // Vehicles move without the detector's lock: check the cycle still holds as a whole
+        if (!holds(vehicles, nodes)) {
+            return null;
+        }
+        Gridlock gridlock = new Gridlock(++detected, vehicles, nodes);
+        largest = Math.max(largest, vehicles.size());
+        for (Agent vehicle : vehicles) {
+            gridlockOf.put(vehicle, gridlock);
+        }
+        if (policy != Policy.NONE) {
+            gridlock.victim = gridlock.youngestExcept(lastVictim);
+            victims.put(gridlock.victim, policy);
+        }
+        return gridlock;
+    }
+
+    private boolean holds(List<Agent> vehicles, List<TrafficNode> nodes) {
+        for (int i = 0; i < vehicles.size(); i++) {
+            Agent holder = vehicles.get((i + 1) % vehicles.size());
+            if (waits.get(vehicles.get(i)) != nodes.get(i) || nodes.get(i).getOccupyingAgent() != holder) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void endGridlockOf(Agent vehicle) {
+        Gridlock gridlock = gridlockOf.get(vehicle);
+        if (gridlock != null) {
+            endGridlock(gridlock);
+        }
+    }
+
+    private void endGridlock(Gridlock gridlock) {
+        for (Agent member : gridlock.vehicles) {
+            gridlockOf.remove(member);
+            victims.remove(member);
+        }
+        gridlock.resolved = true;
+        resolved++;
+    }
+
+    private void publish(Gridlock gridlock) {
+        Agent victim = gridlock.victim;
+        System.out.println("🚧 Gridlock " + gridlock.id + ": " + gridlock
+                + (victim != null ? " (" + policy + " by " + victim.type + " " + victim.id + ")" : ""));
+        for (Consumer<Gridlock> listener : listeners) {
+            listener.accept(gridlock);
+        }
+    }
+
+    /**
+     * @param listener Called once for every gridlock detected, on the thread that found it
+     */
+    public void addListener(Consumer<Gridlock> listener) {
+        listeners.add(listener);
+    }
+
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() { return policy; }
+
+    public synchronized long getDetectedCount() { return detected; }
+
+    /**
+     * @return Gridlocks detected and not yet broken up
+     */
+    public synchronized int getActiveCount() {
+        return (int) (detected - resolved);
+    }
+
+    /**
+     * @return Vehicles currently waiting for a node
+     */
+    public synchronized int getWaitingCount() {
+        return waits.size();
+    }
+
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("detected", detected);
+        statistics.put("resolved", resolved);
+        statistics.put("active", detected - resolved);
+        statistics.put("interventions", interventions);
+        statistics.put("largest", largest);
+        statistics.put("waiting", (long) waits.size());
+        return statistics;
+    }
+}
@@ -0,0 +1,141 @@
+package simulation.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A map as written in a scenario file, read with Gson.
+ *
+ * The map is a grid of width x height cells, every cell a node with id "N_x_y". Node types
+ * follow the generated maps (intersections at even coordinates, streets between, crosswalks
+ * elsewhere) unless listed in nodes. Each road is a one-way straight run along a row or a
+ * column, and becomes one edge per cell it crosses:
+ *
+ *   {
+ *     "width": 5, "height": 5, "scale": 50,
+ *     "nodes": [{"id": "N_1_1", "type": "STREET"}],
+ *     "roads": [{"from": "N_0_0", "to": "N_4_0"}, {"from": "N_4_0", "to": "N_4_4", "length": 300, "lanes": 2}],
+ *     "semaphores": [{"node": "N_2_0", "green": 8, "yellow": 2, "red": 4}]
+ *   }
+ *
+ * Road length defaults to the scale per cell, lanes to one lane of RoadGraph.DEFAULT_LANE_CAPACITY
+ * vehicles ("laneCapacity" per cell of the road). Semaphore timings left out use the scenario's.
+ */
+public class MapDefinition {
+    public int width;
+    public int height;
+    public int scale = GridMapGenerator.DEFAULT_SCALE;
+    public List<NodeSpec> nodes = new ArrayList<>();
+    public List<RoadSpec> roads = new ArrayList<>();
+    public List<SemaphoreSpec> semaphores = new ArrayList<>();
+
+    public static class NodeSpec {
+        public String id;
+        public TrafficNode.NodeType type;
+    }
+
+    public static class RoadSpec {
+        public String from;
+        public String to;
+        /** Total length; null for scale per cell */
+        public Double length;
+        public Integer lanes;
+        /** Vehicles per lane on each cell of the road */
+        public Integer laneCapacity;
+    }
+
+    public static class SemaphoreSpec {
+        public String node;
+        public int green;
+        public int yellow;
+        public int red;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the definition is inconsistent (unknown node, road
+     *         that is not straight, duplicated semaphore...)
+     */
+    public TrafficMap toTrafficMap() {
+        if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("Invalid map size: " + width + "x" + height);
+        }
+        if (scale < 1) {
+            throw new IllegalArgumentException("Invalid scale: " + scale);
+        }
+
+        RoadGraph.Builder builder = new RoadGraph.Builder(width * height);
+        IntStream.range(0, width * height).parallel().forEach(v -> {
+            int x = v / height, y = v % height;
+            builder.setNode(v, x * scale, y * scale, GridMapGenerator.nodeType(x, y));
+        });
+        for (NodeSpec node : nodes) {
+            int index = nodeIndex(node.id);
+            if (node.type == null) {
+                throw new IllegalArgumentException("Missing type for node " + node.id);
+            }
+            builder.setNode(index, (index / height) * scale, (index % height) * scale, node.type);
+        }
+
+        for (RoadSpec road : roads) {
+            int from = nodeIndex(road.from);
+            int to = nodeIndex(road.to);
+            int dx = Integer.signum(to / height - from / height);
+            int dy = Integer.signum(to % height - from % height);
+            if (from == to || (dx != 0 && dy != 0)) {
+                throw new IllegalArgumentException("Road " + road.from + " → " + road.to + " is not a straight run");
+            }
+            int cells = Math.abs(to / height - from / height) + Math.abs(to % height - from % height);
+            double cellLength = road.length != null ? road.length / cells : scale;
+            if (!(cellLength > 0)) {
+                throw new IllegalArgumentException("Invalid length for road " + road.from + " → " + road.to);
+            }
+            int lanes = road.lanes != null ? road.lanes : RoadGraph.DEFAULT_LANES;
+            int laneCapacity = road.laneCapacity != null ? road.laneCapacity : RoadGraph.DEFAULT_LANE_CAPACITY;
+            int step = dx * height + dy;
+            for (int node = from; node != to; node += step) {
+                builder.addEdge(node, node + step, cellLength, lanes, laneCapacity);
+            }
+        }
+
+        int[] semaphoreNodes = new int[semaphores.size()];
+        Integer[] order = new Integer[semaphores.size()];
+        for (int i = 0; i < semaphoreNodes.length; i++) {
+            semaphoreNodes[i] = nodeIndex(semaphores.get(i).node);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(semaphoreNodes[a], semaphoreNodes[b]));
+        int[] sortedNodes = new int[order.length];
+        int[] lightTimers = new int[3 * order.length];
+        for (int i = 0; i < order.length; i++) {
+            SemaphoreSpec semaphore = semaphores.get(order[i]);
+            sortedNodes[i] = semaphoreNodes[order[i]];
+            if (i > 0 && sortedNodes[i] == sortedNodes[i - 1]) {
+                throw new IllegalArgumentException("Two semaphores at " + semaphore.node);
+            }
+            lightTimers[3 * i] = semaphore.green;
+            lightTimers[3 * i + 1] = semaphore.yellow;
+            lightTimers[3 * i + 2] = semaphore.red;
+        }
+
+        return new TrafficMap(builder.build(), width, height, scale, sortedNodes, lightTimers);
+    }
+
+    // "N_x_y" to the node index, checked against the grid
+    private int nodeIndex(String id) {
+        String[] parts = id == null ? new String[0] : id.split("_");
+        try {
+            if (parts.length == 3 && parts[0].equals("N")) {
+                int x = Integer.parseInt(parts[1]);
+                int y = Integer.parseInt(parts[2]);
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    return x * height + y;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Unknown node: " + id);
+    }
+}
@@ -1,39 +1,59 @@
 package simulation.map;
 
+import simulation.SimulationContext;
+import simulation.agents.Agent;
 import simulation.agents.Car;
+import simulation.agents.Pedestrian;
 import simulation.agents.SemaphoreSimulation;
 import simulation.agents.Truck;
+import simulation.map.routing.RouteCache;
 
 import java.util.*;
 
 public class MapManager {
-    private static MapManager instance;
+    private static final int ROUTE_CACHE_CAPACITY = 10_000;
+
     private TrafficMap trafficMap;
+    private final RouteCache routeCache = new RouteCache(ROUTE_CACHE_CAPACITY);
     private PositionRegistry positionRegistry;
+    private final SpatialIndex spatialIndex;
+    private final GridlockDetector gridlockDetector = new GridlockDetector();
     private Map<Position, SemaphoreSimulation> semaphorePositions;
     private List<SemaphoreSimulation> allSemaphores;
 
-    private MapManager() {
-        // Create a 2D grid map (e.g., 5x5 intersections = 11x11 nodes)
-        this.trafficMap = new TrafficMap(11, 11);
+    /**
+     * Create the default map (5x5 intersections = 11x11 nodes) with its own semaphores and
+     * position registry. Normally created by a SimulationContext.
+     */
+    public MapManager() {
+        this(new TrafficMap(11, 11));
+    }
+
+    /**
+     * @param trafficMap A map no other MapManager uses, e.g. from GridMapGenerator
+     */
+    public MapManager(TrafficMap trafficMap) {
+        this.trafficMap = trafficMap;
         semaphorePositions = new HashMap<>();
         positionRegistry = new PositionRegistry();
+        spatialIndex = new SpatialIndex(trafficMap);
         allSemaphores = new ArrayList<>();
         collectAllSemaphores();
+        trafficMap.addChangeListener(routeCache::invalidate);
     }
 
     private void collectAllSemaphores() {
-        for (TrafficNode node : trafficMap.getNodes().values()) {
-            if (node.getSemaphore() != null) {
-                allSemaphores.add(node.getSemaphore());
-                registerSemaphore(node.getSemaphore());
-            }
+        for (SemaphoreSimulation semaphore : trafficMap.getSemaphores()) {
+            allSemaphores.add(semaphore);
+            registerSemaphore(semaphore);
         }
     }
 
+    /**
+     * @return The map of the default simulation context
+     */
     public static MapManager getInstance() {
-        if (instance == null) instance = new MapManager();
-        return instance;
+        return SimulationContext.getDefault().getMapManager();
     }
 
     public void initializeSimpleMap() {
@@ -43,20 +63,62 @@ public class MapManager {
     }
 
     /**
-     * Calculate route using Dijkstra's algorithm
+     * Shortest path from the route cache, computed with the map's routing strategy on a miss.
+     * The list is shared between callers and cannot be modified.
+     * @return The path including both ends, empty if the end is unreachable
      */
-    public Queue<TrafficNode> calculateRoute(TrafficNode startNode, TrafficNode endNode) {
-        List<TrafficNode> path = trafficMap.findShortestPath(startNode, endNode);
-        Queue<TrafficNode> route = new LinkedList<>(path);
+    public List<TrafficNode> getRoute(TrafficNode startNode, TrafficNode endNode) {
+        // Read the version first: a route computed while the map changes is stored under the
+        // old version and never served
+        long version = trafficMap.getVersion();
+        List<TrafficNode> path = routeCache.get(startNode, endNode, version);
+        if (path == null) {
+            path = Collections.unmodifiableList(new ArrayList<>(
+                    trafficMap.getRoutingStrategy().findPath(startNode, endNode)));
+            routeCache.put(startNode, endNode, version, path);
+        }
+        return path;
+    }
 
+    /**
+     * Calculate route for a vehicle (a private copy of the cached path)
+     * @return The nodes to visit after the start node, empty if the end is unreachable
+     */
+    public Queue<TrafficNode> calculateRoute(TrafficNode startNode, TrafficNode endNode) {
+        Queue<TrafficNode> route = new ArrayDeque<>(getRoute(startNode, endNode));
         // Remove the start node if it's in the route (we're already there)
         if (!route.isEmpty() && route.peek().equals(startNode)) {
             route.poll();
         }
-
         return route;
     }
 
+    /**
+     * Route that leaves a node by any road except the one to avoid, for a vehicle stuck behind it.
+     * Roads into a taken node are skipped too: the vehicle would only queue behind another.
+     * @return The nodes to visit after the start node (the shortest such route), or null if
+     *         there is no other free way out that leads to the end
+     */
+    public Queue<TrafficNode> calculateDetour(TrafficNode startNode, TrafficNode avoidNode, TrafficNode endNode) {
+        RoadGraph graph = trafficMap.getGraph();
+        List<TrafficNode> best = null;
+        for (int edge = graph.outBegin(startNode.getIndex()); edge < graph.outEnd(startNode.getIndex()); edge++) {
+            int next = graph.target(edge);
+            if (next == avoidNode.getIndex() || !graph.isAvailable(edge)) {
+                continue;
+            }
+            TrafficNode nextNode = trafficMap.getNodeByIndex(next);
+            if (nextNode.getOccupyingAgent() != null) {
+                continue;
+            }
+            List<TrafficNode> rest = nextNode.equals(endNode) ? List.of(nextNode) : getRoute(nextNode, endNode);
+            if (!rest.isEmpty() && (best == null || rest.size() < best.size())) {
+                best = rest;
+            }
+        }
+        return best != null ? new ArrayDeque<>(best) : null;
+    }
+
     /**
      * Get random valid start and end positions for vehicles
      */
@@ -77,15 +139,113 @@ public class MapManager {
 
     // ... (keep all other existing methods the same)
 
+    // Registry and index handles: the agent id with the kind of agent in the low bits
+    private static final int CAR_HANDLE = 0;
+    private static final int TRUCK_FRONT_HANDLE = 1;
+    private static final int TRUCK_REAR_HANDLE = 2;
+    private static final int PEDESTRIAN_HANDLE = 3;
+
+    private static int handle(int id, int kind) {
+        return (id << 2) | kind;
+    }
+
+    /**
+     * Put a new car on the map (registry and spatial index)
+     */
+    public void placeCar(Car car, Position position) {
+        int handle = handle(car.id, CAR_HANDLE);
+        positionRegistry.moveAgent(handle, position.pack());
+        spatialIndex.put(handle, car, position);
+    }
+
+    public void placeTruck(Truck truck, Position front, Position rear) {
+        int frontHandle = handle(truck.id, TRUCK_FRONT_HANDLE);
+        int rearHandle = handle(truck.id, TRUCK_REAR_HANDLE);
+        positionRegistry.moveAgent(frontHandle, front.pack());
+        positionRegistry.moveAgent(rearHandle, rear.pack());
+        spatialIndex.put(frontHandle, rearHandle, truck, front);
+        spatialIndex.put(rearHandle, frontHandle, truck, rear);
+    }
+
+    public void placePedestrian(Pedestrian pedestrian, Position position) {
+        spatialIndex.put(handle(pedestrian.id, PEDESTRIAN_HANDLE), pedestrian, position);
+    }
+
     public void moveCar(Car car, Position from, Position to) {
-        positionRegistry.moveAgent("car_" + car.id, to);
+        int handle = handle(car.id, CAR_HANDLE);
+        positionRegistry.moveAgent(handle, to.pack());
+        spatialIndex.move(handle, to);
+    }
+
+    /**
+     * A car left its node without reaching the next one (queued on an edge, or pulled over to
+     * break a gridlock): it holds no cell of the registry until it reaches the next node
+     */
+    public void takeCarOffNode(Car car, Position at) {
+        int handle = handle(car.id, CAR_HANDLE);
+        positionRegistry.removeAgent(handle);
+        spatialIndex.move(handle, at);
     }
 
     public void moveTruck(Truck truck, Position oldRear, Position newFront, Position newRear) {
-        positionRegistry.removeAgent("truck_" + truck.id + "_front");
-        positionRegistry.removeAgent("truck_" + truck.id + "_rear");
-        positionRegistry.registerPosition("truck_" + truck.id + "_front", newFront);
-        positionRegistry.registerPosition("truck_" + truck.id + "_rear", newRear);
+        int frontHandle = handle(truck.id, TRUCK_FRONT_HANDLE);
+        int rearHandle = handle(truck.id, TRUCK_REAR_HANDLE);
+        // The rear moves onto the old front, so free it before the front moves on
+        positionRegistry.removeAgent(rearHandle);
+        positionRegistry.moveAgent(frontHandle, newFront.pack());
+        positionRegistry.registerPosition(rearHandle, newRear.pack());
+        spatialIndex.move(frontHandle, newFront);
+        spatialIndex.move(rearHandle, newRear);
+    }
+
+    /**
+     * A truck gave up both its nodes to break a gridlock: it stays visible but holds no cell
+     * of the registry until it moves again
+     */
+    public void takeTruckOffNodes(Truck truck) {
+        positionRegistry.removeAgent(handle(truck.id, TRUCK_FRONT_HANDLE));
+        positionRegistry.removeAgent(handle(truck.id, TRUCK_REAR_HANDLE));
+    }
+
+    /**
+     * An agent finished or stopped: free the registry cells it held. It stays in the spatial
+     * index where it ended, so the UI keeps drawing it. Safe to call more than once.
+     */
+    public void leaveMap(Agent agent) {
+        switch (agent.type) {
+            case CAR -> positionRegistry.removeAgent(handle(agent.id, CAR_HANDLE));
+            case TRUCK -> {
+                positionRegistry.removeAgent(handle(agent.id, TRUCK_FRONT_HANDLE));
+                positionRegistry.removeAgent(handle(agent.id, TRUCK_REAR_HANDLE));
+            }
+            default -> { }
+        }
+    }
+
+    /**
+     * Take every agent of the last run off the map, before a new run places its own
+     */
+    public void clearAgents() {
+        positionRegistry = new PositionRegistry();
+        spatialIndex.clear();
+    }
+
+    public PositionRegistry getPositionRegistry() {
+        return positionRegistry;
+    }
+
+    /**
+     * @return Where the agents are, for neighbourhood queries (UI culling, density, look-ahead)
+     */
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * @return Finds vehicles waiting on each other in a cycle (see GridlockDetector)
+     */
+    public GridlockDetector getGridlockDetector() {
+        return gridlockDetector;
     }
 
     public SemaphoreSimulation getSemaphoreAt(Position position) {
@@ -102,12 +262,16 @@ public class MapManager {
 
     public Map<TrafficNode, Integer> getTrafficNodes() {
         Map<TrafficNode, Integer> nodeOccupancy = new HashMap<>();
-        for (TrafficNode node : trafficMap.getNodes().values()) {
+        for (TrafficNode node : trafficMap.getNodes()) {
             nodeOccupancy.put(node, node.getCurrentOccupancy());
         }
         return nodeOccupancy;
     }
 
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
     public TrafficMap getTrafficMap() {
         return trafficMap;
     }
@@ -1,14 +1,39 @@
 package simulation.map;
 
-import java.util.Objects;
-
+/**
+ * Immutable world coordinates. pack() turns a position into one long, which is how
+ * PositionRegistry stores it without allocating.
+ */
 public class Position {
-    public int  x, y;
+    public final int x, y;
     public Position(int x, int y){
         this.x = x;
         this.y = y;
     }
 
+    /**
+     * @return x in the high 32 bits and y in the low 32 bits
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) packed;
+    }
+
+    public static Position unpack(long packed) {
+        return new Position(unpackX(packed), unpackY(packed));
+    }
+
+    public long pack() {
+        return pack(x, y);
+    }
+
     @Override
     public String toString() {return "x: " + this.x + ", y: " + this.y;}
 
@@ -23,7 +48,6 @@ public class Position {
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
-        // Alternatively: return 31 * x + y;
+        return Long.hashCode(pack() * 0x9E3779B97F4A7C15L);
     }
 }
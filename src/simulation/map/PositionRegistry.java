@@ -1,46 +1,246 @@
 package simulation.map;
 
-import java.util.concurrent.ConcurrentHashMap;
-
+/**
+ * Who is where: agent handle -> position, and position -> agent handle.
+ *
+ * Handles are small non-negative ints chosen by the caller (MapManager derives them from the
+ * agent type and id) and positions are packed into longs (Position.pack), so both directions
+ * are primitive open-addressing tables with linear probing. Each table is split into segments
+ * behind their own lock, so agents moving in different places rarely contend, and a move
+ * allocates nothing once the tables have grown to the number of agents.
+ *
+ * A position can hold one agent: registering or moving onto a taken position fails.
+ */
 public class PositionRegistry {
-    private ConcurrentHashMap<String, Position> agentPositions;
-    private ConcurrentHashMap<Position, String> positionAgents;
+    /** No position / no agent */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] agentPositions = newSegments();    // handle -> packed position
+    private final Segment[] positionAgents = newSegments();    // packed position -> handle
 
     public PositionRegistry() {
-        agentPositions = new ConcurrentHashMap<>();
-        positionAgents = new ConcurrentHashMap<>();
     }
 
-    public boolean registerPosition(String agentId, Position pos) {
-        if(positionAgents.putIfAbsent(pos, agentId) == null) {
-            agentPositions.put(agentId, pos);
-            return true;
+    /**
+     * Put an agent at a position
+     * @return false if the position is taken (the agent is not registered)
+     */
+    public boolean registerPosition(int handle, Position pos) {
+        return registerPosition(handle, pos.pack());
+    }
+
+    public boolean registerPosition(int handle, long position) {
+        checkHandle(handle);
+        checkPosition(position);
+        if (!segment(positionAgents, position).putIfAbsent(position, handle)) {
+            return false;
         }
-        return false;
+        segment(agentPositions, handle).put(handle, position);
+        return true;
     }
 
-    public boolean moveAgent(String agentId, Position newPos) {
-        Position oldPos = agentPositions.get(agentId);
-        if(oldPos != null) {
-            positionAgents.remove(oldPos);
+    /**
+     * Move an agent, freeing its old position
+     * @return false if the new position is taken; the agent is then no longer registered
+     */
+    public boolean moveAgent(int handle, Position newPos) {
+        return moveAgent(handle, newPos.pack());
+    }
+
+    public boolean moveAgent(int handle, long position) {
+        checkHandle(handle);
+        checkPosition(position);
+        long oldPosition = segment(agentPositions, handle).get(handle);
+        if (oldPosition == position) {
+            return true;
+        }
+        if (oldPosition != NONE) {
+            segment(positionAgents, oldPosition).remove(oldPosition, handle);
         }
 
-        if(positionAgents.putIfAbsent(newPos, agentId) == null) {
-            agentPositions.put(agentId, newPos);
+        if (segment(positionAgents, position).putIfAbsent(position, handle)) {
+            segment(agentPositions, handle).put(handle, position);
             return true;
         }
+        segment(agentPositions, handle).remove(handle, NONE);
         return false;
     }
 
-    // NEW: Method to remove agent positions
-    public void removeAgent(String agentId) {
-        Position oldPos = agentPositions.remove(agentId);
-        if(oldPos != null) {
-            positionAgents.remove(oldPos);
+    public void removeAgent(int handle) {
+        long oldPosition = segment(agentPositions, handle).remove(handle, NONE);
+        if (oldPosition != NONE) {
+            segment(positionAgents, oldPosition).remove(oldPosition, handle);
+        }
+    }
+
+    /**
+     * @return The packed position of the agent, or NONE
+     */
+    public long getPackedPosition(int handle) {
+        return segment(agentPositions, handle).get(handle);
+    }
+
+    /**
+     * @return The position of the agent (a new object), or null
+     */
+    public Position getAgentPosition(int handle) {
+        long position = getPackedPosition(handle);
+        return position == NONE ? null : Position.unpack(position);
+    }
+
+    /**
+     * @return The handle of the agent at the position, or -1
+     */
+    public int getAgentAt(Position pos) {
+        long position = pos.pack();
+        if (position == NONE) {
+            return -1;
+        }
+        long handle = segment(positionAgents, position).get(position);
+        return handle == NONE ? -1 : (int) handle;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : agentPositions) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    private static void checkHandle(int handle) {
+        if (handle < 0) {
+            throw new IllegalArgumentException("Invalid agent handle: " + handle);
+        }
+    }
+
+    private static void checkPosition(long position) {
+        if (position == NONE) {
+            throw new IllegalArgumentException("Position " + Position.unpack(position) + " cannot be registered");
         }
     }
 
-    public Position getAgentPosition(String agentId) {
-        return agentPositions.get(agentId);
+    private static Segment[] newSegments() {
+        Segment[] segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        return segments;
+    }
+
+    private static long mix(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    // The top bits of the mixed key pick the segment, the bits below pick the slot
+    private static Segment segment(Segment[] segments, long key) {
+        return segments[(int) (mix(key) >>> 60)];
+    }
+
+    /**
+     * Open-addressing long -> long table with linear probing and backward-shift deletion
+     * (no tombstones). NONE marks an empty slot and a missing value.
+     */
+    private static final class Segment {
+        private long[] keys;
+        private long[] values;
+        private int mask;
+        private int size;
+
+        Segment() {
+            allocate(16);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+            java.util.Arrays.fill(keys, NONE);
+            mask = capacity - 1;
+        }
+
+        private int slot(long key) {
+            return (int) (mix(key) >>> 28) & mask;
+        }
+
+        synchronized long get(long key) {
+            for (int i = slot(key); ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) return values[i];
+                if (k == NONE) return NONE;
+            }
+        }
+
+        synchronized void put(long key, long value) {
+            int i = find(key);
+            if (keys[i] == key) {
+                values[i] = value;
+            } else {
+                insert(i, key, value);
+            }
+        }
+
+        synchronized boolean putIfAbsent(long key, long value) {
+            int i = find(key);
+            if (keys[i] == key) {
+                return false;
+            }
+            insert(i, key, value);
+            return true;
+        }
+
+        /**
+         * Remove the key if it maps to expected (any value when expected is NONE)
+         * @return The removed value, or NONE
+         */
+        synchronized long remove(long key, long expected) {
+            int i = find(key);
+            if (keys[i] != key || (expected != NONE && values[i] != expected)) {
+                return NONE;
+            }
+            long removed = values[i];
+            // Shift later entries of the probe run back so lookups never stop early
+            int hole = i;
+            for (int j = (i + 1) & mask; keys[j] != NONE; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            keys[hole] = NONE;
+            size--;
+            return removed;
+        }
+
+        // Slot holding the key, or the empty slot where it would go
+        private int find(long key) {
+            int i = slot(key);
+            while (keys[i] != NONE && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void insert(int i, long key, long value) {
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 2 > keys.length) {
+                long[] oldKeys = keys;
+                long[] oldValues = values;
+                allocate(oldKeys.length * 2);
+                for (int j = 0; j < oldKeys.length; j++) {
+                    if (oldKeys[j] != NONE) {
+                        int slot = find(oldKeys[j]);
+                        keys[slot] = oldKeys[j];
+                        values[slot] = oldValues[j];
+                    }
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
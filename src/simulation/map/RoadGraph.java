@@ -0,0 +1,244 @@
+package simulation.map;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Compressed-sparse-row road graph: the canonical node and edge data of a TrafficMap.
+ *
+ * Nodes and edges are dense indices. The outgoing edges of node v are the edge indices
+ * outBegin(v) until outEnd(v), so walking a node's edges is a loop over a slice of primitive
+ * arrays. Incoming edges are a second index over the same edges, grouped by target. Per-edge
+ * data (endpoints, length, lanes, availability) lives in parallel arrays indexed by edge.
+ *
+ * An edge holds lanes x laneCapacity vehicles queued for its target node; capacity 0 means
+ * vehicles go straight from node to node.
+ *
+ * TrafficNode and TrafficEdge are views over this graph for code that wants objects; routing,
+ * reachability and rendering read the arrays directly.
+ *
+ * The structure is fixed once built. Only edge lengths and availability change, through
+ * TrafficMap, which publishes every change by bumping its version.
+ */
+public class RoadGraph {
+    private static final TrafficNode.NodeType[] NODE_TYPES = TrafficNode.NodeType.values();
+    public static final int DEFAULT_LANES = 1;
+    public static final int DEFAULT_LANE_CAPACITY = 1;
+    public static final int MAX_LANES = Byte.MAX_VALUE;
+    public static final int MAX_LANE_CAPACITY = Short.MAX_VALUE;
+
+    private final int nodeCount;
+    private final int[] xs;                // node -> world x
+    private final int[] ys;                // node -> world y
+    private final byte[] types;            // node -> NodeType ordinal
+    private final int[] outOffset;         // node -> first outgoing edge; outOffset[nodeCount] = edge count
+    private final int[] source;            // edge -> from node
+    private final int[] target;            // edge -> to node
+    private final double[] lengths;        // edge -> length
+    private final byte[] lanes;            // edge -> number of lanes
+    private final short[] laneCapacity;    // edge -> vehicles per lane
+    private final boolean[] available;     // edge -> open for traffic
+    private final int[] inOffset;          // node -> first slot in inEdges
+    private final int[] inEdges;           // slot -> edge, grouped by target node
+
+    /**
+     * Wrap arrays already laid out as CSR; the arrays are taken over, not copied
+     * @param outOffset Node -> first outgoing edge, with the edge count at outOffset[nodeCount]
+     * @param target Edge -> to node, grouped by from node
+     */
+    RoadGraph(int[] xs, int[] ys, byte[] types, int[] outOffset, int[] target, double[] lengths) {
+        this(xs, ys, types, outOffset, target, lengths,
+                filled(new byte[target.length], DEFAULT_LANES), filled(new short[target.length], DEFAULT_LANE_CAPACITY));
+    }
+
+    /**
+     * @param lanes Edge -> number of lanes
+     * @param laneCapacity Edge -> vehicles each lane holds
+     */
+    RoadGraph(int[] xs, int[] ys, byte[] types, int[] outOffset, int[] target, double[] lengths,
+              byte[] lanes, short[] laneCapacity) {
+        this.nodeCount = xs.length;
+        this.xs = xs;
+        this.ys = ys;
+        this.types = types;
+        this.outOffset = outOffset;
+        this.target = target;
+        this.lengths = lengths;
+        this.lanes = lanes;
+        this.laneCapacity = laneCapacity;
+
+        int edgeCount = target.length;
+        source = new int[edgeCount];
+        IntStream.range(0, nodeCount).parallel()
+                .forEach(v -> Arrays.fill(source, outOffset[v], outOffset[v + 1], v));
+        available = new boolean[edgeCount];
+        Arrays.fill(available, true);
+
+        inOffset = new int[nodeCount + 1];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            inOffset[target[edge] + 1]++;
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            inOffset[v + 1] += inOffset[v];
+        }
+        inEdges = new int[edgeCount];
+        int[] nextIn = Arrays.copyOf(inOffset, nodeCount);
+        for (int edge = 0; edge < edgeCount; edge++) {
+            inEdges[nextIn[target[edge]]++] = edge;
+        }
+    }
+
+    public int getNodeCount() { return nodeCount; }
+    public int getEdgeCount() { return source.length; }
+
+    public int x(int node) { return xs[node]; }
+    public int y(int node) { return ys[node]; }
+    public TrafficNode.NodeType type(int node) { return NODE_TYPES[types[node]]; }
+
+    public int outBegin(int node) { return outOffset[node]; }
+    public int outEnd(int node) { return outOffset[node + 1]; }
+    public int outDegree(int node) { return outOffset[node + 1] - outOffset[node]; }
+
+    public int inBegin(int node) { return inOffset[node]; }
+    public int inEnd(int node) { return inOffset[node + 1]; }
+    public int inDegree(int node) { return inOffset[node + 1] - inOffset[node]; }
+
+    /**
+     * @param slot Between inBegin(node) and inEnd(node)
+     * @return The edge at that slot of the incoming index
+     */
+    public int inEdge(int slot) { return inEdges[slot]; }
+
+    public int source(int edge) { return source[edge]; }
+    public int target(int edge) { return target[edge]; }
+    public double length(int edge) { return lengths[edge]; }
+    public boolean isAvailable(int edge) { return available[edge]; }
+    public int lanes(int edge) { return lanes[edge]; }
+    public int laneCapacity(int edge) { return laneCapacity[edge]; }
+
+    /**
+     * @return Vehicles the edge holds on all its lanes
+     */
+    public int capacity(int edge) { return lanes[edge] * laneCapacity[edge]; }
+
+    /**
+     * @return Cost of travelling the edge for routing: its length, or infinity while it is closed
+     */
+    public double travelCost(int edge) {
+        return available[edge] ? lengths[edge] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return The edge from one node to another, or -1 if there is none
+     */
+    public int findEdge(int from, int to) {
+        for (int edge = outOffset[from], end = outOffset[from + 1]; edge < end; edge++) {
+            if (target[edge] == to) {
+                return edge;
+            }
+        }
+        return -1;
+    }
+
+    static byte[] filled(byte[] values, int value) {
+        Arrays.fill(values, (byte) value);
+        return values;
+    }
+
+    static short[] filled(short[] values, int value) {
+        Arrays.fill(values, (short) value);
+        return values;
+    }
+
+    static void checkLanes(int lanes, int laneCapacity) {
+        if (lanes < 1 || lanes > MAX_LANES || laneCapacity < 0 || laneCapacity > MAX_LANE_CAPACITY) {
+            throw new IllegalArgumentException("Invalid lanes: " + lanes + " x " + laneCapacity + " vehicles");
+        }
+    }
+
+    // Changed through TrafficMap so cached routes are invalidated
+    void setLength(int edge, double length) { lengths[edge] = length; }
+    void setAvailable(int edge, boolean open) { available[edge] = open; }
+
+    /**
+     * Collects nodes and edges in any order; build() lays them out as CSR
+     */
+    public static class Builder {
+        private final int nodeCount;
+        private final int[] xs;
+        private final int[] ys;
+        private final byte[] types;
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private double[] length = new double[16];
+        private byte[] lanes = new byte[16];
+        private short[] laneCapacity = new short[16];
+        private int edgeCount;
+
+        public Builder(int nodeCount) {
+            this.nodeCount = nodeCount;
+            this.xs = new int[nodeCount];
+            this.ys = new int[nodeCount];
+            this.types = new byte[nodeCount];
+        }
+
+        public Builder setNode(int node, int x, int y, TrafficNode.NodeType type) {
+            xs[node] = x;
+            ys[node] = y;
+            types[node] = (byte) type.ordinal();
+            return this;
+        }
+
+        public Builder addEdge(int fromNode, int toNode, double edgeLength) {
+            return addEdge(fromNode, toNode, edgeLength, DEFAULT_LANES, DEFAULT_LANE_CAPACITY);
+        }
+
+        /**
+         * @param edgeLanes Number of lanes (1 to MAX_LANES)
+         * @param edgeLaneCapacity Vehicles per lane (0 to MAX_LANE_CAPACITY)
+         */
+        public Builder addEdge(int fromNode, int toNode, double edgeLength, int edgeLanes, int edgeLaneCapacity) {
+            checkLanes(edgeLanes, edgeLaneCapacity);
+            if (edgeCount == from.length) {
+                int capacity = edgeCount * 2;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                length = Arrays.copyOf(length, capacity);
+                lanes = Arrays.copyOf(lanes, capacity);
+                laneCapacity = Arrays.copyOf(laneCapacity, capacity);
+            }
+            from[edgeCount] = fromNode;
+            to[edgeCount] = toNode;
+            length[edgeCount] = edgeLength;
+            lanes[edgeCount] = (byte) edgeLanes;
+            laneCapacity[edgeCount] = (short) edgeLaneCapacity;
+            edgeCount++;
+            return this;
+        }
+
+        public RoadGraph build() {
+            int[] outOffset = new int[nodeCount + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                outOffset[from[e] + 1]++;
+            }
+            for (int v = 0; v < nodeCount; v++) {
+                outOffset[v + 1] += outOffset[v];
+            }
+
+            // Counting sort by source keeps the insertion order of each node's edges
+            int[] target = new int[edgeCount];
+            double[] lengths = new double[edgeCount];
+            byte[] edgeLanes = new byte[edgeCount];
+            short[] edgeLaneCapacity = new short[edgeCount];
+            int[] nextOut = Arrays.copyOf(outOffset, nodeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                int slot = nextOut[from[e]]++;
+                target[slot] = to[e];
+                lengths[slot] = length[e];
+                edgeLanes[slot] = lanes[e];
+                edgeLaneCapacity[slot] = laneCapacity[e];
+            }
+            return new RoadGraph(xs, ys, types, outOffset, target, lengths, edgeLanes, edgeLaneCapacity);
+        }
+    }
+}
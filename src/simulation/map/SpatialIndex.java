@@ -0,0 +1,377 @@
+package simulation.map;
+
+import simulation.agents.Agent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Uniform grid over the map for "who is near here" queries.
+ *
+ * There is one cell per map node (a position belongs to the cell of the nearest node), and
+ * each cell keeps its agents in an intrusive linked list threaded through arrays indexed by
+ * the agent's handle (see MapManager). Agents are added, moved and removed in O(1) as they
+ * move; range, nearest and occupancy queries only visit the cells they cover. A truck is
+ * stored as two entries (front and rear) linked as partners and reported once.
+ *
+ * Moves take the write lock for a few array writes, queries take the read lock, so the UI
+ * and metrics can query while vehicle threads move.
+ */
+public class SpatialIndex {
+    private static final int NONE = -1;
+
+    private final int width;
+    private final int height;
+    private final int scale;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Per cell (node index): first entry and number of entries
+    private final int[] head;
+    private final int[] cellCount;
+
+    // Per entry (handle): cell, list links, exact position, partner entry and agent
+    private int[] cellOf = new int[0];
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+    private int[] partnerOf = new int[0];
+    private Agent[] agents = new Agent[0];
+    private int size;
+
+    public SpatialIndex(TrafficMap map) {
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.scale = map.getScale();
+        this.head = new int[width * height];
+        this.cellCount = new int[width * height];
+        Arrays.fill(head, NONE);
+    }
+
+    /**
+     * Add an agent, or move it if the handle is already in the index
+     * @param partner Handle of the other entry of the same agent, or -1
+     */
+    public void put(int handle, int partner, Agent agent, Position position) {
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(handle);
+            agents[handle] = agent;
+            partnerOf[handle] = partner;
+            moveEntry(handle, position.x, position.y);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(int handle, Agent agent, Position position) {
+        put(handle, NONE, agent, position);
+    }
+
+    /**
+     * Move an entry already in the index (ignored otherwise)
+     */
+    public void move(int handle, Position position) {
+        lock.writeLock().lock();
+        try {
+            if (handle < cellOf.length && cellOf[handle] != NONE) {
+                moveEntry(handle, position.x, position.y);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int handle) {
+        lock.writeLock().lock();
+        try {
+            if (handle < cellOf.length && cellOf[handle] != NONE) {
+                unlink(handle);
+                agents[handle] = null;
+                size--;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove every agent (a new run replaces them)
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(head, NONE);
+            Arrays.fill(cellCount, 0);
+            Arrays.fill(cellOf, NONE);
+            Arrays.fill(agents, null);
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Visit every agent with a position inside the rectangle (world coordinates, inclusive)
+     */
+    public void forEachInRange(int minX, int minY, int maxX, int maxY, Consumer<Agent> action) {
+        lock.readLock().lock();
+        try {
+            int fromX = Math.max(0, Math.floorDiv(minX + scale / 2, scale));
+            int toX = Math.min(width - 1, Math.floorDiv(maxX + scale / 2, scale));
+            int fromY = Math.max(0, Math.floorDiv(minY + scale / 2, scale));
+            int toY = Math.min(height - 1, Math.floorDiv(maxY + scale / 2, scale));
+            for (int cx = fromX; cx <= toX; cx++) {
+                for (int cell = cx * height + fromY, last = cx * height + toY; cell <= last; cell++) {
+                    for (int e = head[cell]; e != NONE; e = next[e]) {
+                        if (inside(e, minX, minY, maxX, maxY)) {
+                            // The entry with the lower handle speaks for both parts when both are inside
+                            int partner = partnerOf[e];
+                            if (partner != NONE && partner < e && cellOf[partner] != NONE
+                                    && inside(partner, minX, minY, maxX, maxY)) {
+                                continue;
+                            }
+                            action.accept(agents[e]);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Agent> inRange(int minX, int minY, int maxX, int maxY) {
+        List<Agent> result = new ArrayList<>();
+        forEachInRange(minX, minY, maxX, maxY, result::add);
+        return result;
+    }
+
+    /**
+     * @return Agents at most radius world units from the position
+     */
+    public List<Agent> withinRadius(Position center, int radius) {
+        long radiusSquared = (long) radius * radius;
+        List<Agent> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int fromX = Math.max(0, Math.floorDiv(center.x - radius + scale / 2, scale));
+            int toX = Math.min(width - 1, Math.floorDiv(center.x + radius + scale / 2, scale));
+            int fromY = Math.max(0, Math.floorDiv(center.y - radius + scale / 2, scale));
+            int toY = Math.min(height - 1, Math.floorDiv(center.y + radius + scale / 2, scale));
+            for (int cx = fromX; cx <= toX; cx++) {
+                for (int cell = cx * height + fromY, last = cx * height + toY; cell <= last; cell++) {
+                    for (int e = head[cell]; e != NONE; e = next[e]) {
+                        if (distanceSquared(e, center) <= radiusSquared) {
+                            int partner = partnerOf[e];
+                            if (partner != NONE && partner < e && cellOf[partner] != NONE
+                                    && distanceSquared(partner, center) <= radiusSquared) {
+                                continue;
+                            }
+                            result.add(agents[e]);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * @return Up to k agents closest to the position, nearest first
+     */
+    public List<Agent> nearest(Position center, int k) {
+        List<Agent> found = new ArrayList<>();
+        List<Long> distances = new ArrayList<>();
+        if (k <= 0) {
+            return found;
+        }
+        lock.readLock().lock();
+        try {
+            int cx = Math.min(width - 1, Math.max(0, Math.floorDiv(center.x + scale / 2, scale)));
+            int cy = Math.min(height - 1, Math.max(0, Math.floorDiv(center.y + scale / 2, scale)));
+            int maxRing = Math.max(Math.max(cx, width - 1 - cx), Math.max(cy, height - 1 - cy));
+            for (int ring = 0; ring <= maxRing && size > 0; ring++) {
+                // Both the center and the entries can be half a cell off their cell's node,
+                // so anything in this ring or beyond is at least ring - 1 cells away
+                if (found.size() == k) {
+                    long reach = (long) (ring - 1) * scale;
+                    if (reach > 0 && reach * reach > distances.get(k - 1)) {
+                        break;
+                    }
+                }
+                for (int x = cx - ring; x <= cx + ring; x++) {
+                    if (x < 0 || x >= width) continue;
+                    boolean edgeColumn = x == cx - ring || x == cx + ring;
+                    for (int y = cy - ring; y <= cy + ring; y += edgeColumn ? 1 : 2 * ring) {
+                        if (y >= 0 && y < height) {
+                            collectNearest(x * height + y, center, k, found, distances);
+                        }
+                        if (ring == 0) break;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found;
+    }
+
+    /**
+     * @return The agents in the cell of the position (a truck shows up in both of its cells)
+     */
+    public List<Agent> occupants(Position position) {
+        List<Agent> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int cell = cellAt(position.x, position.y);
+            if (cell != NONE) {
+                for (int e = head[cell]; e != NONE; e = next[e]) {
+                    result.add(agents[e]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    public int countAt(Position position) {
+        lock.readLock().lock();
+        try {
+            int cell = cellAt(position.x, position.y);
+            return cell != NONE ? cellCount[cell] : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Entries per cell, indexed like the map nodes (x * height + y), for heatmaps
+     */
+    public int[] densitySnapshot() {
+        lock.readLock().lock();
+        try {
+            return cellCount.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of entries (a truck counts twice)
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collectNearest(int cell, Position center, int k, List<Agent> found, List<Long> distances) {
+        for (int e = head[cell]; e != NONE; e = next[e]) {
+            long distance = distanceSquared(e, center);
+            int existing = found.indexOf(agents[e]);
+            if (existing >= 0) {
+                if (distance >= distances.get(existing)) continue;
+                found.remove(existing);
+                distances.remove(existing);
+            } else if (found.size() == k && distance >= distances.get(k - 1)) {
+                continue;
+            }
+            int at = found.size();
+            while (at > 0 && distances.get(at - 1) > distance) at--;
+            found.add(at, agents[e]);
+            distances.add(at, distance);
+            if (found.size() > k) {
+                found.remove(k);
+                distances.remove(k);
+            }
+        }
+    }
+
+    private long distanceSquared(int entry, Position center) {
+        long dx = xs[entry] - center.x;
+        long dy = ys[entry] - center.y;
+        return dx * dx + dy * dy;
+    }
+
+    private boolean inside(int entry, int minX, int minY, int maxX, int maxY) {
+        return xs[entry] >= minX && xs[entry] <= maxX && ys[entry] >= minY && ys[entry] <= maxY;
+    }
+
+    private int cellAt(int x, int y) {
+        int cx = Math.floorDiv(x + scale / 2, scale);
+        int cy = Math.floorDiv(y + scale / 2, scale);
+        return cx >= 0 && cx < width && cy >= 0 && cy < height ? cx * height + cy : NONE;
+    }
+
+    // Positions off the map are kept in the nearest border cell
+    private int clampedCell(int x, int y) {
+        int cx = Math.min(width - 1, Math.max(0, Math.floorDiv(x + scale / 2, scale)));
+        int cy = Math.min(height - 1, Math.max(0, Math.floorDiv(y + scale / 2, scale)));
+        return cx * height + cy;
+    }
+
+    private void moveEntry(int handle, int x, int y) {
+        int cell = clampedCell(x, y);
+        xs[handle] = x;
+        ys[handle] = y;
+        if (cellOf[handle] == cell) {
+            return;
+        }
+        if (cellOf[handle] != NONE) {
+            unlink(handle);
+        } else {
+            size++;
+        }
+        cellOf[handle] = cell;
+        prev[handle] = NONE;
+        next[handle] = head[cell];
+        if (head[cell] != NONE) {
+            prev[head[cell]] = handle;
+        }
+        head[cell] = handle;
+        cellCount[cell]++;
+    }
+
+    private void unlink(int handle) {
+        int cell = cellOf[handle];
+        if (prev[handle] != NONE) {
+            next[prev[handle]] = next[handle];
+        } else {
+            head[cell] = next[handle];
+        }
+        if (next[handle] != NONE) {
+            prev[next[handle]] = prev[handle];
+        }
+        cellOf[handle] = NONE;
+        cellCount[cell]--;
+    }
+
+    private void ensureCapacity(int handle) {
+        if (handle < 0) {
+            throw new IllegalArgumentException("Invalid agent handle: " + handle);
+        }
+        if (handle < cellOf.length) {
+            return;
+        }
+        int capacity = Math.max(handle + 1, 2 * cellOf.length);
+        int oldLength = cellOf.length;
+        cellOf = Arrays.copyOf(cellOf, capacity);
+        Arrays.fill(cellOf, oldLength, capacity, NONE);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        partnerOf = Arrays.copyOf(partnerOf, capacity);
+        agents = Arrays.copyOf(agents, capacity);
+    }
+}
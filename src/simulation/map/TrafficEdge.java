@@ -1,32 +1,57 @@
 package simulation.map;
 
-import java.util.concurrent.locks.ReentrantLock;
-
+/**
+ * View of one edge of a map's RoadGraph. Views are created on demand and compare equal when
+ * they refer to the same edge of the same map.
+ *
+ * Vehicles blocked at the end of an edge wait on it, up to lanes x laneCapacity of them,
+ * instead of holding the node they came from.
+ */
 public class TrafficEdge {
-    private TrafficNode from, to;
-    private int capacity;
-    private int currentOccupancy;
-    private double length;
-    private String edgeId;
-    private ReentrantLock edgeLock;
-    private boolean hasSidewalk;
+    private final TrafficMap map;
+    private final int index;
 
-    public TrafficEdge(String edgeId, TrafficNode from, TrafficNode to, double length) {
-        this.edgeId = edgeId;
-        this.from = from;
-        this.to = to;
-        this.capacity = capacity;
-        this.length = length;
-        this.currentOccupancy = 0;
-        this.edgeLock = new ReentrantLock();
-        this.hasSidewalk = true; // All edges have sidewalks by default
+    TrafficEdge(TrafficMap map, int index) {
+        this.map = map;
+        this.index = index;
     }
 
     // Getters
-    public TrafficNode getFrom() { return from; }
-    public TrafficNode getTo() { return to; }
-    public int getCurrentOccupancy() { return currentOccupancy; }
-    public double getLength() { return length; }
-    public String getEdgeId() { return edgeId; }
-    public boolean hasSidewalk() { return hasSidewalk; }
-}
\ No newline at end of file
+    public TrafficNode getFrom() { return map.getNodeByIndex(map.getGraph().source(index)); }
+    public TrafficNode getTo() { return map.getNodeByIndex(map.getGraph().target(index)); }
+    public int getCurrentOccupancy() { return map.getEdgeOccupancy(index); }
+    public int getLanes() { return map.getGraph().lanes(index); }
+    public int getLaneCapacity() { return map.getGraph().laneCapacity(index); }
+    public int getCapacity() { return map.getGraph().capacity(index); }
+    public double getLength() { return map.getGraph().length(index); }
+    public String getEdgeId() { return "E_" + getFrom().getTrafficNodeId() + "_to_" + getTo().getTrafficNodeId(); }
+    public boolean hasSidewalk() { return true; } // All edges have sidewalks
+    public boolean isAvailable() { return map.getGraph().isAvailable(index); }
+    public int getIndex() { return index; }
+
+    /**
+     * Take a place on the edge if it has room
+     */
+    public boolean tryEnter() { return map.tryEnterEdge(index); }
+    public void leave() { map.leaveEdge(index); }
+
+    /**
+     * @return Cost of travelling the edge for routing: its length, or infinity while it is closed
+     */
+    public double getTravelCost() {
+        return map.getGraph().travelCost(index);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof TrafficEdge)) return false;
+        TrafficEdge edge = (TrafficEdge) other;
+        return map == edge.map && index == edge.index;
+    }
+
+    @Override
+    public int hashCode() {
+        return index;
+    }
+}
@@ -1,152 +1,173 @@
 package simulation.map;
 
+import simulation.agents.Agent;
 import simulation.agents.SemaphoreSimulation;
-import java.util.*;
+import simulation.map.routing.AStarRouter;
+import simulation.map.routing.NextHopTable;
+import simulation.map.routing.ReachabilityIndex;
+import simulation.map.routing.RoutingStrategy;
 
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A grid road map: the RoadGraph with its node and edge data, node objects (created on first
+ * use), semaphores, routing and reachability.
+ *
+ * Node i sits at grid column i / height and row i % height. Maps are built by
+ * GridMapGenerator; new TrafficMap(width, height) builds the default grid layout.
+ */
 public class TrafficMap {
-    private Map<String, TrafficNode> nodes;
-    private Map<String, TrafficEdge> edges;
+    private final RoadGraph graph;
 
     // Representación en grid para visualización
-    private int width, height;
-    private TrafficNode[][] grid;
-
-    private int scale = 50;
+    private final int width, height;
+    private final int scale;
+    private final AtomicReferenceArray<TrafficNode> nodesByIndex;
+    private final AtomicReferenceArray<Agent> occupants;         // vehicle on each node, null if free
+    private final AtomicIntegerArray edgeOccupancy;              // vehicles queued on each edge
+    private final int[] semaphoreNodes;                 // ascending node indices
+    private final SemaphoreSimulation[] semaphores;     // semaphore of semaphoreNodes[i]
+    private final int[] lightTimers;                    // green, yellow, red seconds per semaphore; 0 = scenario default
+    private NextHopTable nextHopTable;
+    private volatile RoutingStrategy routingStrategy;
+    private volatile ReachabilityIndex reachability;
+    private final AtomicLong version = new AtomicLong();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
 
+    /**
+     * Build the default grid layout (see GridMapGenerator)
+     */
     public TrafficMap(int width, int height) {
+        this(new GridMapGenerator(width, height));
+    }
+
+    private TrafficMap(GridMapGenerator generator) {
+        this(generator.buildGraph(), generator.getWidth(), generator.getHeight(), generator.getScale(),
+                generator.semaphoreNodes(), null);
+    }
+
+    /**
+     * @param graph Nodes laid out column-major: node i at grid (i / height, i % height)
+     * @param semaphoreNodes Ascending indices of the intersections with a semaphore
+     * @param lightTimers Green, yellow and red seconds of each semaphore (0 for the scenario's
+     *                    default), or null to use the defaults everywhere
+     */
+    TrafficMap(RoadGraph graph, int width, int height, int scale, int[] semaphoreNodes, int[] lightTimers) {
+        this.graph = graph;
         this.width = width;
         this.height = height;
-        this.nodes = new HashMap<>();
-        this.edges = new HashMap<>();
-        this.grid = new TrafficNode[width][height];
-        initializeGridMap();
-    }
-
-    private void initializeGridMap() {
-        boolean toggle = true;
-        // Create nodes in a grid pattern
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                TrafficNode.NodeType type = determineNodeType(x, y);
-                String nodeId = "N_" + x + "_" + y;
-                Position pos = new Position(x * scale, y * scale);
-
-                TrafficNode node = new TrafficNode(nodeId, pos, type);
-                nodes.put(nodeId, node);
-                grid[x][y] = node;
-
-                // Add semaphore at intersections (only some intersections)
-                if (type == TrafficNode.NodeType.INTERSECTION) {
-                    toggle = !toggle;
-                    if(toggle){
-                        SemaphoreSimulation semaphore = new SemaphoreSimulation(
-                                Integer.parseInt(x + "" + y), pos);
-                        node.setSemaphore(semaphore);
-                    }
-                }
-            }
-        }
-
-        createUnidirectionalGridEdges();
+        this.scale = scale;
+        this.nodesByIndex = new AtomicReferenceArray<>(graph.getNodeCount());
+        this.occupants = new AtomicReferenceArray<>(graph.getNodeCount());
+        this.edgeOccupancy = new AtomicIntegerArray(graph.getEdgeCount());
+        this.semaphoreNodes = semaphoreNodes;
+        this.semaphores = new SemaphoreSimulation[semaphoreNodes.length];
+        this.lightTimers = lightTimers != null ? lightTimers : new int[3 * semaphoreNodes.length];
+        Arrays.parallelSetAll(semaphores, i -> {
+            int node = semaphoreNodes[i];
+            return new SemaphoreSimulation(semaphoreId(node / height, node % height),
+                    new Position(graph.x(node), graph.y(node)));
+        });
+        this.nextHopTable = new NextHopTable(this);
+        // Past a size most destinations are asked for once: a search per route beats a table column
+        this.routingStrategy = graph.getNodeCount() <= NextHopTable.MAX_DEFAULT_NODES
+                ? nextHopTable : new AStarRouter(this);
     }
 
-    private TrafficNode.NodeType determineNodeType(int x, int y) {
-        // Intersections at even coordinates, streets in between
-        if (x % 2 == 0 && y % 2 == 0) {
-            return TrafficNode.NodeType.INTERSECTION;
-        } else if (x % 2 == 1 && y % 2 == 0) {
-            return TrafficNode.NodeType.STREET; // Horizontal street
-        } else if (x % 2 == 0 && y % 2 == 1) {
-            return TrafficNode.NodeType.STREET; // Vertical street
-        } else {
-            return TrafficNode.NodeType.CROSSWALK; // Crosswalk positions
-        }
+    /**
+     * @return The vehicle occupying the node, or null (no node object is created)
+     */
+    public Agent getOccupant(int node) {
+        return occupants.get(node);
     }
 
-    private void createUnidirectionalGridEdges() {
-        // Create unidirectional edges following the pattern:
-        // Even rows: left → right
-        // Odd rows: right → left
-        // Even columns: top → bottom
-        // Odd columns: bottom → top
+    boolean compareAndSetOccupant(int node, Agent expected, Agent occupant) {
+        return occupants.compareAndSet(node, expected, occupant);
+    }
 
-        // Horizontal edges (rows)
-        for (int y = 0; y < height; y += 2) { // Only intersection rows
-            if (y % 4 == 0) { // Even rows: left → right
-                for (int x = 0; x < width - 2; x += 2) {
-                    createUnidirectionalHorizontalEdge(x, y, x + 2, y, "E");
-                }
-            } else { // Odd rows: right → left
-                for (int x = width - 1; x >= 2; x -= 2) {
-                    createUnidirectionalHorizontalEdge(x, y, x - 2, y, "W");
-                }
+    /**
+     * Take every node for the agent, or none of them. Nodes are tried in index order, the
+     * global order of all multi-node acquisitions, so vehicles after overlapping sets always
+     * meet on the same first node; the nodes already taken are handed back on a failure.
+     * @param nodes Distinct nodes of this map
+     * @return false if any node is held or queued for
+     */
+    public boolean tryAcquireAll(Collection<TrafficNode> nodes, Agent agent) {
+        TrafficNode[] ordered = nodes.toArray(new TrafficNode[0]);
+        Arrays.sort(ordered, Comparator.comparingInt(TrafficNode::getIndex));
+        for (int i = 0; i < ordered.length; i++) {
+            if (!ordered[i].tryAcquire(agent)) {
+                releaseAll(Arrays.asList(ordered).subList(0, i), agent);
+                return false;
             }
         }
+        return true;
+    }
 
-        // Vertical edges (columns)
-        for (int x = 0; x < width; x += 2) { // Only intersection columns
-            if (x % 4 == 0) { // Even columns: top → bottom
-                for (int y = 0; y < height - 2; y += 2) {
-                    createUnidirectionalVerticalEdge(x, y, x, y + 2, "S");
-                }
-            } else { // Odd columns: bottom → top
-                for (int y = height - 1; y >= 2; y -= 2) {
-                    createUnidirectionalVerticalEdge(x, y, x, y - 2, "N");
-                }
+    /**
+     * Free the nodes the agent holds among these in one batch: all of them are vacated before
+     * any is handed to a waiting vehicle, so nobody sees the agent half gone
+     */
+    public void releaseAll(Collection<TrafficNode> nodes, Agent agent) {
+        List<TrafficNode> vacated = new ArrayList<>(nodes.size());
+        for (TrafficNode node : nodes) {
+            if (node.vacate(agent)) {
+                vacated.add(node);
             }
         }
+        for (TrafficNode node : vacated) {
+            node.grantToWaiters();
+        }
     }
 
-    private void createUnidirectionalHorizontalEdge(int fromX, int fromY, int toX, int toY, String direction) {
-        TrafficNode from = grid[fromX][fromY];
-        TrafficNode to = grid[toX][toY];
-        TrafficNode streetNode = grid[(fromX + toX) / 2][fromY]; // Intermediate street node
-
-        if (from != null && to != null && streetNode != null) {
-            String baseId = direction + "_" + fromX + "_" + fromY + "_to_" + toX + "_" + toY;
-
-            // Edge from intersection to street
-            TrafficEdge edge1 = new TrafficEdge(baseId + "_1", from, streetNode, scale);
-            edges.put(edge1.getEdgeId(), edge1);
-            from.addOutgoingEdge(edge1);
-            streetNode.addIncomingEdge(edge1);
-
-            // Edge from street to intersection
-            TrafficEdge edge2 = new TrafficEdge(baseId + "_2", streetNode, to, scale);
-            edges.put(edge2.getEdgeId(), edge2);
-            streetNode.addOutgoingEdge(edge2);
-            to.addIncomingEdge(edge2);
-
-            System.out.println("Created horizontal edge: " + from.nodeId + " → " + to.nodeId + " (" + direction + ")");
+    /**
+     * Take a place on the edge if it has room (lock-free)
+     * @return false if the edge is full or holds no vehicles
+     */
+    public boolean tryEnterEdge(int edge) {
+        int capacity = graph.capacity(edge);
+        for (;;) {
+            int occupancy = edgeOccupancy.get(edge);
+            if (occupancy >= capacity) {
+                return false;
+            }
+            if (edgeOccupancy.compareAndSet(edge, occupancy, occupancy + 1)) {
+                return true;
+            }
         }
     }
 
-    private void createUnidirectionalVerticalEdge(int fromX, int fromY, int toX, int toY, String direction) {
-        TrafficNode from = grid[fromX][fromY];
-        TrafficNode to = grid[toX][toY];
-        TrafficNode streetNode = grid[fromX][(fromY + toY) / 2]; // Intermediate street node
+    public void leaveEdge(int edge) {
+        edgeOccupancy.decrementAndGet(edge);
+    }
 
-        if (from != null && to != null && streetNode != null) {
-            String baseId = direction + "_" + fromX + "_" + fromY + "_to_" + toX + "_" + toY;
+    public int getEdgeOccupancy(int edge) {
+        return edgeOccupancy.get(edge);
+    }
 
-            // Edge from intersection to street
-            TrafficEdge edge1 = new TrafficEdge(baseId + "_1", from, streetNode, scale);
-            edges.put(edge1.getEdgeId(), edge1);
-            from.addOutgoingEdge(edge1);
-            streetNode.addIncomingEdge(edge1);
+    // The column and row digits side by side, as in the original map (x=4, y=10 -> 410);
+    // falls back to the node index once that no longer fits an int
+    private int semaphoreId(int x, int y) {
+        long shift = 10;
+        while (shift <= y) shift *= 10;
+        long id = x * shift + y;
+        return id <= Integer.MAX_VALUE ? (int) id : indexOf(x, y);
+    }
 
-            // Edge from street to intersection
-            TrafficEdge edge2 = new TrafficEdge(baseId + "_2", streetNode, to, scale);
-            edges.put(edge2.getEdgeId(), edge2);
-            streetNode.addOutgoingEdge(edge2);
-            to.addIncomingEdge(edge2);
+    private int indexOf(int x, int y) {
+        return x * height + y;
+    }
 
-            System.out.println("Created vertical edge: " + from.nodeId + " → " + to.nodeId + " (" + direction + ")");
-        }
+    private boolean isInside(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
     }
 
     /**
-     * Enhanced Dijkstra's algorithm for unidirectional graph
+     * Shortest path with the map's routing strategy (next-hop table unless changed)
      */
     public List<TrafficNode> findShortestPath(TrafficNode start, TrafficNode end) {
         if (start == null || end == null) {
@@ -159,146 +180,273 @@ public class TrafficMap {
             return Arrays.asList(start);
         }
 
-        Map<TrafficNode, Double> distances = new HashMap<>();
-        Map<TrafficNode, TrafficNode> previous = new HashMap<>();
-        PriorityQueue<TrafficNode> queue = new PriorityQueue<>(
-                Comparator.comparingDouble(node -> distances.getOrDefault(node, Double.MAX_VALUE))
-        );
-
-        // Initialize
-        for (TrafficNode node : nodes.values()) {
-            distances.put(node, Double.MAX_VALUE);
+        List<TrafficNode> path = routingStrategy.findPath(start, end);
+        if (path.isEmpty()) {
+            System.out.println("No path exists from " + start.getTrafficNodeId() + " to " + end.getTrafficNodeId());
+            return path;
         }
-        distances.put(start, 0.0);
-        queue.offer(start);
 
-        while (!queue.isEmpty()) {
-            TrafficNode current = queue.poll();
+        System.out.println("Path found: " + path.size() + " nodes from " + start.getTrafficNodeId() + " to " + end.getTrafficNodeId());
+        return path;
+    }
 
-            if (current.equals(end)) {
-                break;
-            }
+    /**
+     * Get valid start nodes (intersections with an open outgoing edge)
+     */
+    public List<TrafficNode> getValidStartNodes() {
+        return toNodes(getReachabilityIndex().getStartNodes(), -1);
+    }
 
-            // Explore all outgoing edges (unidirectional graph)
-            for (TrafficEdge edge : current.getOutgoingEdges()) {
-                TrafficNode neighbor = edge.getTo();
-                double newDist = distances.get(current) + edge.getLength();
+    /**
+     * Get valid end nodes that are reachable from start node
+     */
+    public List<TrafficNode> getValidEndNodes(TrafficNode startNode) {
+        if (startNode == null) return new ArrayList<>();
+        return toNodes(getReachabilityIndex().reachableFrom(startNode.getIndex()), startNode.getIndex());
+    }
 
-                if (newDist < distances.get(neighbor)) {
-                    distances.put(neighbor, newDist);
-                    previous.put(neighbor, current);
-                    queue.offer(neighbor);
-                }
+    private List<TrafficNode> toNodes(int[] indices, int skip) {
+        List<TrafficNode> result = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            if (index != skip) {
+                result.add(getNodeByIndex(index));
             }
         }
+        return result;
+    }
 
-        // Check if path exists
-        if (!previous.containsKey(end)) {
-            System.out.println("No path exists from " + start.nodeId + " to " + end.nodeId);
-            return Collections.emptyList();
+    /**
+     * @return Reachability of the map's current version, rebuilt on first use after edges change
+     */
+    public ReachabilityIndex getReachabilityIndex() {
+        ReachabilityIndex index = reachability;
+        if (index == null || index.getVersion() != version.get()) {
+            synchronized (this) {
+                index = reachability;
+                if (index == null || index.getVersion() != version.get()) {
+                    index = ReachabilityIndex.build(this);
+                    reachability = index;
+                }
+            }
         }
+        return index;
+    }
 
-        // Reconstruct path
-        List<TrafficNode> path = reconstructPath(previous, end);
-        System.out.println("Path found: " + path.size() + " nodes from " + start.nodeId + " to " + end.nodeId);
-        return path;
+    public TrafficNode getNodeAt(Position position) {
+        int gridX = position.x / scale;
+        int gridY = position.y / scale;
+
+        if (isInside(gridX, gridY)) {
+            return getNodeByIndex(indexOf(gridX, gridY));
+        }
+        return null;
     }
 
-    private List<TrafficNode> reconstructPath(Map<TrafficNode, TrafficNode> previous, TrafficNode end) {
-        List<TrafficNode> path = new ArrayList<>();
-        for (TrafficNode node = end; node != null; node = previous.get(node)) {
-            path.add(0, node);
+    /**
+     * @param nodeId An id as returned by getNodeId, "N_x_y" in grid coordinates
+     * @return The node, or null if the id does not name a node of this map
+     */
+    public TrafficNode getNodeById(String nodeId) {
+        String[] parts = nodeId.split("_");
+        if (parts.length != 3 || !parts[0].equals("N")) {
+            return null;
+        }
+        try {
+            int x = Integer.parseInt(parts[1]);
+            int y = Integer.parseInt(parts[2]);
+            return isInside(x, y) ? getNodeByIndex(indexOf(x, y)) : null;
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return path;
     }
 
     /**
-     * Get valid start nodes (only those with outgoing edges)
+     * @return The id of a node, "N_x_y" in grid coordinates
      */
-    public List<TrafficNode> getValidStartNodes() {
-        List<TrafficNode> startNodes = new ArrayList<>();
+    public String getNodeId(int index) {
+        return "N_" + (index / height) + "_" + (index % height);
+    }
 
-        // Only intersections can be start nodes
-        for (TrafficNode node : nodes.values()) {
-            if (node.getType() == TrafficNode.NodeType.INTERSECTION &&
-                    !node.getOutgoingEdges().isEmpty()) {
-                startNodes.add(node);
+    public TrafficNode getNodeByIndex(int index) {
+        TrafficNode node = nodesByIndex.get(index);
+        if (node == null) {
+            node = new TrafficNode(this, index);
+            int semaphore = Arrays.binarySearch(semaphoreNodes, index);
+            if (semaphore >= 0) {
+                node.setSemaphore(semaphores[semaphore]);
             }
+            // Nodes carry occupancy, so there must be exactly one per index: keep the first
+            if (!nodesByIndex.compareAndSet(index, null, node)) {
+                node = nodesByIndex.get(index);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @param semaphore Position of the semaphore in getSemaphores()
+     * @param defaults Scenario-wide green, yellow and red seconds
+     * @return The semaphore's own timings, with the defaults where the map sets none
+     */
+    public int[] getLightsTimers(int semaphore, int[] defaults) {
+        int[] timers = new int[3];
+        for (int i = 0; i < 3; i++) {
+            int own = lightTimers[3 * semaphore + i];
+            timers[i] = own > 0 ? own : defaults[i];
         }
+        return timers;
+    }
 
-        return startNodes;
+    int[] semaphoreNodes() {
+        return semaphoreNodes;
+    }
+
+    int[] lightTimers() {
+        return lightTimers;
     }
 
     /**
-     * Get valid end nodes that are reachable from start node
+     * @return Every semaphore of the map, in column-major order of their intersections
      */
-    public List<TrafficNode> getValidEndNodes(TrafficNode startNode) {
-        List<TrafficNode> endNodes = new ArrayList<>();
+    public List<SemaphoreSimulation> getSemaphores() {
+        return Collections.unmodifiableList(Arrays.asList(semaphores));
+    }
 
-        if (startNode == null) return endNodes;
+    public int getNodeCount() {
+        return graph.getNodeCount();
+    }
 
-        // Use BFS to find all reachable nodes
-        Set<TrafficNode> visited = new HashSet<>();
-        Queue<TrafficNode> queue = new LinkedList<>();
-        queue.offer(startNode);
-        visited.add(startNode);
+    /**
+     * @return The canonical node and edge arrays of this map
+     */
+    public RoadGraph getGraph() {
+        return graph;
+    }
 
-        while (!queue.isEmpty()) {
-            TrafficNode current = queue.poll();
+    /**
+     * @return A view of the edge with the given index of the RoadGraph
+     */
+    public TrafficEdge getEdge(int index) {
+        return new TrafficEdge(this, index);
+    }
 
-            // Add as potential end node if it's a different intersection
-            if (current.getType() == TrafficNode.NodeType.INTERSECTION &&
-                    !current.equals(startNode)) {
-                endNodes.add(current);
-            }
+    /**
+     * @return Shortest-path next hops, built lazily per destination and shared by all vehicles
+     */
+    public NextHopTable getNextHopTable() {
+        return nextHopTable;
+    }
 
-            for (TrafficEdge edge : current.getOutgoingEdges()) {
-                TrafficNode neighbor = edge.getTo();
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    queue.offer(neighbor);
-                }
-            }
-        }
+    /**
+     * @return Number of edge cost/availability changes so far; anything derived from the
+     *         edges (routes, tables) is valid only for the version it was computed at
+     */
+    public long getVersion() {
+        return version.get();
+    }
 
-        return endNodes;
+    /**
+     * Change the travel cost of an edge (e.g. congestion) and invalidate precomputed routes
+     */
+    public void setEdgeLength(TrafficEdge edge, double length) {
+        graph.setLength(edge.getIndex(), length);
+        edgesChanged();
     }
 
-    public TrafficNode getNodeAt(Position position) {
-        int gridX = position.x / scale;
-        int gridY = position.y / scale;
+    /**
+     * Close or reopen an edge (e.g. roadworks) and invalidate precomputed routes
+     */
+    public void setEdgeAvailable(TrafficEdge edge, boolean available) {
+        graph.setAvailable(edge.getIndex(), available);
+        edgesChanged();
+    }
 
-        if (gridX >= 0 && gridX < width && gridY >= 0 && gridY < height) {
-            return grid[gridX][gridY];
+    /**
+     * @param listener Called after every edge cost or availability change
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    private void edgesChanged() {
+        version.incrementAndGet();
+        nextHopTable.onMapChanged();
+        RoutingStrategy strategy = routingStrategy;
+        if (strategy != nextHopTable) {
+            strategy.onMapChanged();
+        }
+        for (Runnable listener : changeListeners) {
+            listener.run();
         }
-        return null;
     }
 
-    public TrafficNode getNodeById(String nodeId) {
-        return nodes.get(nodeId);
+    public RoutingStrategy getRoutingStrategy() {
+        return routingStrategy;
+    }
+
+    /**
+     * Choose how routes are computed, e.g. new AStarRouter(map) for one-off queries on large
+     * maps where per-destination next-hop tables would cost too much memory
+     */
+    public void setRoutingStrategy(RoutingStrategy routingStrategy) {
+        this.routingStrategy = routingStrategy;
     }
 
+    /**
+     * @return A random intersection vehicles can start from, or null if there is none
+     */
     public TrafficNode getRandomValidStartNode() {
-        List<TrafficNode> validStarts = getValidStartNodes();
-        if (!validStarts.isEmpty()) {
-            return validStarts.get(new Random().nextInt(validStarts.size()));
-        }
-        return null;
+        int start = getReachabilityIndex().randomStartNode();
+        return start < 0 ? null : getNodeByIndex(start);
     }
 
+    /**
+     * @return A random intersection reachable from startNode, or null if there is none
+     */
     public TrafficNode getRandomValidEndNode(TrafficNode startNode) {
-        List<TrafficNode> validEnds = getValidEndNodes(startNode);
-        if (!validEnds.isEmpty()) {
-            return validEnds.get(new Random().nextInt(validEnds.size()));
-        }
-        return null;
+        if (startNode == null) return null;
+        int end = getReachabilityIndex().randomReachableIntersection(startNode.getIndex());
+        return end < 0 ? null : getNodeByIndex(end);
     }
 
     // Getters for UI
-    public Map<String, TrafficNode> getNodes() { return nodes; }
-    public Map<String, TrafficEdge> getEdges() { return edges; }
+    /**
+     * @return Every node, created as the list is walked
+     */
+    public List<TrafficNode> getNodes() {
+        return new AbstractList<TrafficNode>() {
+            @Override
+            public TrafficNode get(int index) {
+                Objects.checkIndex(index, graph.getNodeCount());
+                return getNodeByIndex(index);
+            }
+
+            @Override
+            public int size() {
+                return graph.getNodeCount();
+            }
+        };
+    }
+
+    /**
+     * @return Views of every edge, in RoadGraph order
+     */
+    public List<TrafficEdge> getEdges() {
+        return new AbstractList<TrafficEdge>() {
+            @Override
+            public TrafficEdge get(int index) {
+                Objects.checkIndex(index, graph.getEdgeCount());
+                return new TrafficEdge(TrafficMap.this, index);
+            }
+
+            @Override
+            public int size() {
+                return graph.getEdgeCount();
+            }
+        };
+    }
+
     public int getWidth() { return width; }
     public int getHeight() { return height; }
-    public TrafficNode[][] getGrid() { return grid; }
     public int getScale() { return scale; }
 }
\ No newline at end of file
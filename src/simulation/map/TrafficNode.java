@@ -3,10 +3,20 @@ package simulation.map;
 import simulation.agents.Agent;
 import simulation.agents.SemaphoreSimulation;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * A node of the map: a view of its RoadGraph node plus the simulation state attached to it
+ * (the vehicle occupying it, the vehicles queued for it and its semaphore). Type and edges
+ * are read from the graph.
+ *
+ * The node belongs to an agent, not to a thread, so it can be handed from the releasing
+ * vehicle straight to the next one in line.
+ */
 public class TrafficNode {
     public enum NodeType {
         INTERSECTION,
@@ -14,70 +24,277 @@ public class TrafficNode {
         CROSSWALK
     }
 
-    public String nodeId;
-    public Position position;
-    private NodeType type;
-    private List<TrafficEdge> outgoingEdges;
-    private List<TrafficEdge> incomingEdges;
-    private ReentrantLock nodeLock;
-    private volatile Agent occupyingAgent;
+    public final Position position;
+    private final TrafficMap map;
+    private final int index;
+    private final ReentrantLock queueLock;         // guards the wait queue; the occupant is a CAS slot in the map
+    private volatile Waiter firstWaiter;
+    private Waiter lastWaiter;
     private SemaphoreSimulation semaphore;
 
-    public TrafficNode(String nodeId, Position position, NodeType type) {
-        this.nodeId = nodeId;
-        this.position = position;
-        this.type = type;
-        this.outgoingEdges = new ArrayList<>();
-        this.incomingEdges = new ArrayList<>();
-        this.nodeLock = new ReentrantLock();
+    /**
+     * @param index Dense index of the node in the map's RoadGraph
+     */
+    TrafficNode(TrafficMap map, int index) {
+        this.map = map;
+        this.index = index;
+        this.position = new Position(map.getGraph().x(index), map.getGraph().y(index));
+        this.queueLock = new ReentrantLock();
     }
 
+    /**
+     * Take the node if it is free and nobody is queued for it (one CAS)
+     */
     public boolean tryAcquire(Agent agent) {
-        if (nodeLock.tryLock()) {
-            if (occupyingAgent == null) {
-                occupyingAgent = agent;
+        return firstWaiter == null && map.compareAndSetOccupant(index, null, agent);
+    }
+
+    /**
+     * Wait in line for the node. Waiters are parked in arrival order and release() hands the
+     * node straight to the first of them.
+     * @return false if the timeout passed first (the agent leaves the line)
+     * @throws InterruptedException if interrupted while waiting (the node is not held then)
+     */
+    public boolean acquire(Agent agent, long timeout, TimeUnit unit) throws InterruptedException {
+        Waiter waiter = enqueue(agent);
+        try {
+            if (await(waiter, timeout, unit)) {
                 return true;
+            }
+        } catch (InterruptedException e) {
+            leave(waiter);
+            throw e;
+        }
+        // Handed over while giving up: keep it
+        return !leaveQueue(waiter);
+    }
+
+    /**
+     * Get in line for the node. The place is kept across await() timeouts, so an agent that
+     * wakes up to check on itself keeps its turn; leave() gives it up.
+     * @return The agent's place in line, already granted if the node was free
+     */
+    public Waiter enqueue(Agent agent) {
+        Waiter waiter = new Waiter(agent, Thread.currentThread());
+        if (tryAcquire(agent)) {
+            waiter.granted = true;
+            return waiter;
+        }
+        queueLock.lock();
+        try {
+            if (lastWaiter == null) {
+                firstWaiter = waiter;
             } else {
-                nodeLock.unlock();
+                lastWaiter.next = waiter;
+            }
+            lastWaiter = waiter;
+        } finally {
+            queueLock.unlock();
+        }
+        // The node may have been freed before the waiter was in the queue
+        grantToFirstWaiter();
+        return waiter;
+    }
+
+    /**
+     * Park until the node is handed to the waiter or the timeout passes, keeping the place in
+     * line either way. Called from the thread that enqueued.
+     * @return true once the agent holds the node
+     * @throws InterruptedException if interrupted first (the waiter is still in line)
+     */
+    public boolean await(Waiter waiter, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        boolean timed = nanos < Long.MAX_VALUE;
+        long deadline = timed ? System.nanoTime() + nanos : 0;
+        while (!waiter.granted) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+            if (remaining <= 0) {
+                return false;
+            }
+            if (timed) {
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Give up a place in line (stop, interrupt, gridlock). If the node was handed to the
+     * waiter in the meantime it is passed on to the next in line.
+     */
+    public void leave(Waiter waiter) {
+        if (!leaveQueue(waiter)) {
+            release(waiter.agent);
+        }
+    }
+
+    public void acquire(Agent agent) throws InterruptedException {
+        acquire(agent, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Free the node if the agent holds it (one CAS), handing it to the first waiter if any.
+     * Works from any thread, so an engine or supervisor can release for an agent.
+     */
+    public void release(Agent agent) {
+        if (vacate(agent)) {
+            grantToWaiters();
+        }
+    }
+
+    // The two halves of release(), for TrafficMap.releaseAll
+    boolean vacate(Agent agent) {
+        return agent != null && map.compareAndSetOccupant(index, agent, null);
+    }
+
+    void grantToWaiters() {
+        if (firstWaiter != null) {
+            grantToFirstWaiter();
+        }
+    }
+
+    /**
+     * @return Number of agents queued for the node
+     */
+    public int getWaitingCount() {
+        queueLock.lock();
+        try {
+            int count = 0;
+            for (Waiter w = firstWaiter; w != null; w = w.next) {
+                count++;
             }
+            return count;
+        } finally {
+            queueLock.unlock();
         }
-        return false;
     }
 
-    public void release() {
-        if (nodeLock.isHeldByCurrentThread()) {
-            occupyingAgent = null;
-            nodeLock.unlock();
+    public Agent getOccupyingAgent() {
+        return map.getOccupant(index);
+    }
+
+    // Give the node to the first waiter if it is free. Releasers and new waiters both call
+    // this after publishing their change, so one of them sees the other.
+    private void grantToFirstWaiter() {
+        Waiter next;
+        queueLock.lock();
+        try {
+            next = firstWaiter;
+            if (next == null || !map.compareAndSetOccupant(index, null, next.agent)) {
+                return;
+            }
+            firstWaiter = next.next;
+            if (firstWaiter == null) {
+                lastWaiter = null;
+            }
+            next.granted = true;
+        } finally {
+            queueLock.unlock();
         }
+        LockSupport.unpark(next.thread);
     }
 
-    public void setOccupyingAgent(Agent agent) {
-        this.occupyingAgent = agent;
+    // Remove a waiter that gives up; false if it was granted the node in the meantime
+    private boolean leaveQueue(Waiter waiter) {
+        queueLock.lock();
+        try {
+            if (waiter.granted) {
+                return false;
+            }
+            Waiter previous = null;
+            for (Waiter w = firstWaiter; w != null; previous = w, w = w.next) {
+                if (w == waiter) {
+                    if (previous == null) {
+                        firstWaiter = w.next;
+                    } else {
+                        previous.next = w.next;
+                    }
+                    if (lastWaiter == w) {
+                        lastWaiter = previous;
+                    }
+                    break;
+                }
+            }
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
     }
 
-    public void addOutgoingEdge(TrafficEdge edge) {
-        outgoingEdges.add(edge);
+    /**
+     * An agent's place in line for a node
+     */
+    public static final class Waiter {
+        private final Agent agent;
+        private final Thread thread;
+        private Waiter next;
+        private volatile boolean granted;
+
+        private Waiter(Agent agent, Thread thread) {
+            this.agent = agent;
+            this.thread = thread;
+        }
+
+        public boolean isGranted() { return granted; }
+    }
+
+    /**
+     * @return Views of the edges leaving this node (created on each call; hot loops should
+     *         walk the RoadGraph instead)
+     */
+    public List<TrafficEdge> getOutgoingEdges() {
+        RoadGraph graph = map.getGraph();
+        return edgeViews(graph.outBegin(index), graph.outDegree(index), false);
+    }
+
+    /**
+     * @return Views of the edges arriving at this node
+     */
+    public List<TrafficEdge> getIncomingEdges() {
+        RoadGraph graph = map.getGraph();
+        return edgeViews(graph.inBegin(index), graph.inDegree(index), true);
     }
 
-    public void addIncomingEdge(TrafficEdge edge) {
-        incomingEdges.add(edge);
+    private List<TrafficEdge> edgeViews(int begin, int size, boolean incoming) {
+        return new AbstractList<TrafficEdge>() {
+            @Override
+            public TrafficEdge get(int i) {
+                if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+                int slot = begin + i;
+                return new TrafficEdge(map, incoming ? map.getGraph().inEdge(slot) : slot);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 
     // Getters
-    public List<TrafficEdge> getOutgoingEdges() { return outgoingEdges; }
-    public List<TrafficEdge> getIncomingEdges() { return incomingEdges; }
-    public NodeType getType() { return type; }
+    public NodeType getType() { return map.getGraph().type(index); }
     public SemaphoreSimulation getSemaphore() { return semaphore; }
     public void setSemaphore(SemaphoreSimulation semaphore) { this.semaphore = semaphore; }
-    public String getTrafficNodeId() { return nodeId; }
+    public String getTrafficNodeId() { return map.getNodeId(index); }
+    public int getIndex() { return index; }
+
+    @Override
+    public String toString() {
+        return getTrafficNodeId();
+    }
 
     public int getCurrentOccupancy() {
-        if (occupyingAgent == null) {
+        if (map.getOccupant(index) == null) {
             return 0;
         }else {
             return 1;
         }
     }
 
-    public NodeType getNodeType() { return type; }
+    public NodeType getNodeType() { return getType(); }
 }
@@ -0,0 +1,159 @@
+package simulation.map.routing;
+
+import simulation.map.RoadGraph;
+import simulation.map.TrafficMap;
+import simulation.map.TrafficNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A* search guided by the Manhattan distance between node positions.
+ *
+ * Nodes are handled by their dense index: distances and parents live in primitive arrays and
+ * the open set is an IndexedMinHeap, so a search does not box or hash anything. The arrays are
+ * reused between searches (a generation stamp marks which entries are current), taken from a
+ * small pool so concurrent callers never share them.
+ *
+ * The heuristic is scaled by the smallest length-to-displacement ratio of any edge, which keeps
+ * it admissible on maps whose edges are shorter than the distance they span. On the grid maps
+ * every edge is exactly as long as it is wide, so the factor is 1.
+ */
+public class AStarRouter implements RoutingStrategy {
+    private final TrafficMap map;
+    private final RoadGraph graph;
+    private final int nodeCount;
+    private final int[] xs;
+    private final int[] ys;
+    private volatile double heuristicFactor;
+    private final ConcurrentLinkedQueue<SearchState> pool = new ConcurrentLinkedQueue<>();
+
+    public AStarRouter(TrafficMap map) {
+        this.map = map;
+        this.graph = map.getGraph();
+        this.nodeCount = graph.getNodeCount();
+        this.xs = new int[nodeCount];
+        this.ys = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            xs[i] = graph.x(i);
+            ys[i] = graph.y(i);
+        }
+        this.heuristicFactor = computeHeuristicFactor();
+    }
+
+    private double computeHeuristicFactor() {
+        double factor = 1.0;
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            int from = graph.source(edge);
+            int to = graph.target(edge);
+            int displacement = Math.abs(xs[to] - xs[from]) + Math.abs(ys[to] - ys[from]);
+            if (displacement > 0) {
+                factor = Math.min(factor, graph.length(edge) / displacement);
+            }
+        }
+        return factor;
+    }
+
+    // Shorter edges would make the heuristic overestimate
+    @Override
+    public void onMapChanged() {
+        heuristicFactor = computeHeuristicFactor();
+    }
+
+    @Override
+    public List<TrafficNode> findPath(TrafficNode start, TrafficNode end) {
+        if (start.equals(end)) {
+            return Arrays.asList(start);
+        }
+
+        SearchState search = pool.poll();
+        if (search == null) {
+            search = new SearchState(nodeCount);
+        }
+        try {
+            return search(search, start.getIndex(), end.getIndex());
+        } finally {
+            search.open.clear();
+            pool.offer(search);
+        }
+    }
+
+    private List<TrafficNode> search(SearchState search, int source, int target) {
+        int generation = search.nextGeneration();
+        double[] cost = search.cost;
+        int[] parent = search.parent;
+        int[] seen = search.seen;
+        IndexedMinHeap open = search.open;
+
+        seen[source] = generation;
+        cost[source] = 0;
+        parent[source] = -1;
+        open.insertOrDecrease(source, heuristic(source, target));
+
+        while (!open.isEmpty()) {
+            int current = open.poll();
+            if (current == target) {
+                return buildPath(parent, target);
+            }
+
+            double base = cost[current];
+            for (int edge = graph.outBegin(current), end = graph.outEnd(current); edge < end; edge++) {
+                if (!graph.isAvailable(edge)) continue;
+                int neighbor = graph.target(edge);
+                double candidate = base + graph.length(edge);
+                if (seen[neighbor] != generation || candidate < cost[neighbor]) {
+                    seen[neighbor] = generation;
+                    cost[neighbor] = candidate;
+                    parent[neighbor] = current;
+                    open.insertOrDecrease(neighbor, candidate + heuristic(neighbor, target));
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private double heuristic(int node, int target) {
+        return heuristicFactor * (Math.abs(xs[node] - xs[target]) + Math.abs(ys[node] - ys[target]));
+    }
+
+    private List<TrafficNode> buildPath(int[] parent, int target) {
+        List<TrafficNode> path = new ArrayList<>();
+        for (int node = target; node != -1; node = parent[node]) {
+            path.add(map.getNodeByIndex(node));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return "astar";
+    }
+
+    // Per-search scratch arrays, valid where seen[i] equals the current generation
+    private static class SearchState {
+        final double[] cost;
+        final int[] parent;
+        final int[] seen;
+        final IndexedMinHeap open;
+        int generation;
+
+        SearchState(int nodeCount) {
+            cost = new double[nodeCount];
+            parent = new int[nodeCount];
+            seen = new int[nodeCount];
+            open = new IndexedMinHeap(nodeCount);
+        }
+
+        int nextGeneration() {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+    }
+}
@@ -0,0 +1,887 @@
+package simulation.map.routing;
+
+import simulation.map.RoadGraph;
+import simulation.map.TrafficMap;
+import simulation.map.TrafficNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction-hierarchy router for large maps.
+ *
+ * Preprocessing contracts the nodes one level at a time, adding a shortcut u->w through v
+ * whenever u->v->w is the only shortest way between its ends. Edges stay directed, so the
+ * one-way streets of the grid are respected. A query then runs two small Dijkstra searches
+ * that only climb the hierarchy: forward from the start over upward edges and backward from
+ * the end over edges coming down, and unpacks the shortcuts of the best meeting point into
+ * the same node path the other strategies return.
+ *
+ * Preprocessing is parallel: each round picks the nodes whose priority (edge difference plus
+ * contracted neighbours plus level) is lower than every neighbour's, which are never adjacent,
+ * and contracts all of them at once. The result can be saved with save() and read back with
+ * load() so a large map is only preprocessed once.
+ *
+ * A hierarchy holds for the map version it was built at. Queries check the version and go to
+ * A* on the live map once the edges changed, and a saved file records the version and a hash
+ * of the edges, so it is only loaded for the same graph.
+ */
+public class ContractionHierarchy implements RoutingStrategy {
+    private static final int FILE_MAGIC = 0x43480002;
+    private static final int NO_MIDDLE = -1;
+
+    private final TrafficMap map;
+    private final int nodeCount;
+    private final long builtVersion;
+    private final long graphHash;
+    private final int[] rank;
+
+    // Upward edges grouped by source: u -> upTarget with rank[upTarget] > rank[u]
+    private final int[] upOffset;
+    private final int[] upTarget;
+    private final double[] upWeight;
+    private final int[] upMiddle;
+
+    // Downward edges grouped by target: downSource -> v with rank[downSource] > rank[v]
+    private final int[] downOffset;
+    private final int[] downSource;
+    private final double[] downWeight;
+    private final int[] downMiddle;
+    private final int[] downTarget;
+
+    // Shortcut a->b via m is the down edge a->m followed by the up edge m->b; -1 for original edges
+    private final int[] upFirst;
+    private final int[] upSecond;
+    private final int[] downFirst;
+    private final int[] downSecond;
+
+    private final ConcurrentLinkedQueue<QueryState> pool = new ConcurrentLinkedQueue<>();
+
+    // Set once edge costs change after preprocessing; queries then go to A* until rebuilt
+    private volatile AStarRouter staleFallback;
+    private volatile long fallbackVersion;
+
+    private ContractionHierarchy(TrafficMap map, long builtVersion, long graphHash, int[] rank,
+                                 int[] upOffset, int[] upTarget, double[] upWeight, int[] upMiddle,
+                                 int[] downOffset, int[] downSource, double[] downWeight, int[] downMiddle) {
+        this.map = map;
+        this.nodeCount = rank.length;
+        this.builtVersion = builtVersion;
+        this.graphHash = graphHash;
+        this.rank = rank;
+        this.upOffset = upOffset;
+        this.upTarget = upTarget;
+        this.upWeight = upWeight;
+        this.upMiddle = upMiddle;
+        this.downOffset = downOffset;
+        this.downSource = downSource;
+        this.downWeight = downWeight;
+        this.downMiddle = downMiddle;
+
+        this.downTarget = new int[downSource.length];
+        for (int v = 0; v < nodeCount; v++) {
+            Arrays.fill(downTarget, downOffset[v], downOffset[v + 1], v);
+        }
+        this.upFirst = new int[upTarget.length];
+        this.upSecond = new int[upTarget.length];
+        this.downFirst = new int[downSource.length];
+        this.downSecond = new int[downSource.length];
+        linkShortcuts();
+    }
+
+    // Resolve every shortcut's middle node to the two edge slots it replaces, so unpacking
+    // a path never has to search adjacency lists
+    private void linkShortcuts() {
+        IntStream.range(0, nodeCount).parallel().forEach(u -> {
+            for (int e = upOffset[u]; e < upOffset[u + 1]; e++) {
+                int middle = upMiddle[e];
+                upFirst[e] = middle == NO_MIDDLE ? -1 : downSlot(u, middle);
+                upSecond[e] = middle == NO_MIDDLE ? -1 : upSlot(middle, upTarget[e]);
+            }
+            for (int e = downOffset[u]; e < downOffset[u + 1]; e++) {
+                int middle = downMiddle[e];
+                downFirst[e] = middle == NO_MIDDLE ? -1 : downSlot(downSource[e], middle);
+                downSecond[e] = middle == NO_MIDDLE ? -1 : upSlot(middle, u);
+            }
+        });
+    }
+
+    // The middle node was contracted before both ends, so a->via is stored coming down into via...
+    private int downSlot(int a, int via) {
+        for (int e = downOffset[via]; e < downOffset[via + 1]; e++) {
+            if (downSource[e] == a) return e;
+        }
+        throw new IllegalStateException("Missing hierarchy edge " + a + " -> " + via);
+    }
+
+    // ...and via->b is stored going up from via
+    private int upSlot(int via, int b) {
+        for (int e = upOffset[via]; e < upOffset[via + 1]; e++) {
+            if (upTarget[e] == b) return e;
+        }
+        throw new IllegalStateException("Missing hierarchy edge " + via + " -> " + b);
+    }
+
+    /**
+     * Preprocess the map on the common fork-join pool
+     */
+    public static ContractionHierarchy build(TrafficMap map) {
+        return new Builder(map).build();
+    }
+
+    @Override
+    public List<TrafficNode> findPath(TrafficNode start, TrafficNode end) {
+        if (start.equals(end)) {
+            return Arrays.asList(start);
+        }
+        AStarRouter fallback = fallback();
+        if (fallback != null) {
+            return fallback.findPath(start, end);
+        }
+
+        QueryState query = pool.poll();
+        if (query == null) {
+            query = new QueryState(nodeCount);
+        }
+        try {
+            return search(query, start.getIndex(), end.getIndex());
+        } finally {
+            query.forward.clear();
+            query.backward.clear();
+            pool.offer(query);
+        }
+    }
+
+    private List<TrafficNode> search(QueryState q, int source, int target) {
+        int generation = q.nextGeneration();
+        IndexedMinHeap forward = q.forward;
+        IndexedMinHeap backward = q.backward;
+
+        q.reachForward(source, generation, 0, -1, -1);
+        forward.insertOrDecrease(source, 0);
+        q.reachBackward(target, generation, 0, -1, -1);
+        backward.insertOrDecrease(target, 0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+
+        while (true) {
+            boolean forwardOpen = !forward.isEmpty() && forward.peekKey() < best;
+            boolean backwardOpen = !backward.isEmpty() && backward.peekKey() < best;
+            if (!forwardOpen && !backwardOpen) {
+                break;
+            }
+
+            if (forwardOpen && (!backwardOpen || forward.peekKey() <= backward.peekKey())) {
+                int node = forward.poll();
+                double base = q.forwardCost[node];
+                if (q.backwardSeen[node] == generation && base + q.backwardCost[node] < best) {
+                    best = base + q.backwardCost[node];
+                    meeting = node;
+                }
+                if (stalledForward(q, node, generation, base)) {
+                    continue;
+                }
+                for (int e = upOffset[node]; e < upOffset[node + 1]; e++) {
+                    int next = upTarget[e];
+                    double candidate = base + upWeight[e];
+                    if (q.forwardSeen[next] != generation || candidate < q.forwardCost[next]) {
+                        q.reachForward(next, generation, candidate, node, e);
+                        forward.insertOrDecrease(next, candidate);
+                    }
+                }
+            } else {
+                int node = backward.poll();
+                double base = q.backwardCost[node];
+                if (q.forwardSeen[node] == generation && base + q.forwardCost[node] < best) {
+                    best = base + q.forwardCost[node];
+                    meeting = node;
+                }
+                if (stalledBackward(q, node, generation, base)) {
+                    continue;
+                }
+                for (int e = downOffset[node]; e < downOffset[node + 1]; e++) {
+                    int previous = downSource[e];
+                    double candidate = base + downWeight[e];
+                    if (q.backwardSeen[previous] != generation || candidate < q.backwardCost[previous]) {
+                        q.reachBackward(previous, generation, candidate, node, e);
+                        backward.insertOrDecrease(previous, candidate);
+                    }
+                }
+            }
+        }
+
+        if (meeting < 0) {
+            return Collections.emptyList();
+        }
+        return unpack(q, source, meeting);
+    }
+
+    // Stall-on-demand: a higher node already reached reaches this one for less, so the upward
+    // search from here cannot be part of a shortest path
+    private boolean stalledForward(QueryState q, int node, int generation, double cost) {
+        for (int e = downOffset[node]; e < downOffset[node + 1]; e++) {
+            int higher = downSource[e];
+            if (q.forwardSeen[higher] == generation && q.forwardCost[higher] + downWeight[e] < cost) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean stalledBackward(QueryState q, int node, int generation, double cost) {
+        for (int e = upOffset[node]; e < upOffset[node + 1]; e++) {
+            int higher = upTarget[e];
+            if (q.backwardSeen[higher] == generation && q.backwardCost[higher] + upWeight[e] < cost) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<TrafficNode> unpack(QueryState q, int source, int meeting) {
+        // Hierarchy edges of the path in travel order, encoded as up slot e or down slot ~e;
+        // the forward chain is collected backwards
+        IntList edges = new IntList();
+        for (int node = meeting; node != source; node = q.forwardParent[node]) {
+            edges.add(q.forwardEdge[node]);
+        }
+        edges.reverse();
+        for (int node = meeting; q.backwardParent[node] != -1; node = q.backwardParent[node]) {
+            edges.add(~q.backwardEdge[node]);
+        }
+
+        List<TrafficNode> path = new ArrayList<>();
+        path.add(map.getNodeByIndex(source));
+        IntList stack = new IntList();
+        for (int i = 0; i < edges.size(); i++) {
+            stack.add(edges.get(i));
+            while (stack.size() > 0) {
+                int edge = stack.pop();
+                int first = edge >= 0 ? upFirst[edge] : downFirst[~edge];
+                if (first < 0) {
+                    path.add(map.getNodeByIndex(edge >= 0 ? upTarget[edge] : downTarget[~edge]));
+                } else {
+                    // Second half first so the first half is expanded first
+                    stack.add(edge >= 0 ? upSecond[edge] : downSecond[~edge]);
+                    stack.add(~first);
+                }
+            }
+        }
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return "ch";
+    }
+
+    /**
+     * The shortcuts were computed with the old edge costs. Routes fall back to A* on the live
+     * map; build a new hierarchy to get fast queries back. Queries notice the change on their
+     * own, so a hierarchy that is not the map's strategy is never used stale either.
+     */
+    @Override
+    public void onMapChanged() {
+        fallback();
+    }
+
+    public boolean isStale() {
+        return map.getVersion() != builtVersion;
+    }
+
+    // The A* router to use instead while the map is at another version than the hierarchy's
+    private AStarRouter fallback() {
+        long version = map.getVersion();
+        if (version == builtVersion) {
+            return null;
+        }
+        AStarRouter fallback = staleFallback;
+        if (fallback != null && fallbackVersion == version) {
+            return fallback;
+        }
+        synchronized (this) {
+            if (staleFallback == null) {
+                System.err.println("⚠️ Map changed after contraction, routing with A* until the hierarchy is rebuilt");
+                staleFallback = new AStarRouter(map);
+            } else if (fallbackVersion != version) {
+                staleFallback.onMapChanged();
+            }
+            fallbackVersion = version;
+            return staleFallback;
+        }
+    }
+
+    /**
+     * @return Hash of every edge's ends, length and availability: equal for graphs a
+     *         hierarchy routes the same on
+     */
+    public static long graphHash(RoadGraph graph) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, graph.getNodeCount());
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            hash = mix(hash, graph.source(edge));
+            hash = mix(hash, graph.target(edge));
+            hash = mix(hash, Double.doubleToLongBits(graph.length(edge)));
+            hash = mix(hash, graph.isAvailable(edge) ? 1 : 0);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+
+    /**
+     * @return Number of hierarchy edges (original edges plus shortcuts)
+     */
+    public int getEdgeCount() {
+        return upTarget.length + downSource.length;
+    }
+
+    /**
+     * Write the hierarchy to a file so the map does not have to be preprocessed again
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(nodeCount);
+            out.writeInt(map.getGraph().getEdgeCount());
+            out.writeLong(graphHash);
+            out.writeLong(builtVersion);
+            writeInts(out, rank);
+            writeInts(out, upOffset);
+            writeInts(out, upTarget);
+            writeDoubles(out, upWeight);
+            writeInts(out, upMiddle);
+            writeInts(out, downOffset);
+            writeInts(out, downSource);
+            writeDoubles(out, downWeight);
+            writeInts(out, downMiddle);
+        }
+    }
+
+    /**
+     * Read a hierarchy written by save()
+     * @param map The map it was built from
+     * @throws IOException if the file is not a hierarchy for this map's graph as it is now
+     */
+    public static ContractionHierarchy load(Path file, TrafficMap map) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException(file + " is not a contraction hierarchy file");
+            }
+            int nodes = in.readInt();
+            if (nodes != map.getNodeCount()) {
+                throw new IOException(file + " was built for " + nodes + " nodes, map has " + map.getNodeCount());
+            }
+            int edges = in.readInt();
+            if (edges != map.getGraph().getEdgeCount()) {
+                throw new IOException(file + " was built for " + edges + " edges, map has " + map.getGraph().getEdgeCount());
+            }
+            long version = map.getVersion();
+            long hash = graphHash(map.getGraph());
+            if (in.readLong() != hash) {
+                throw new IOException(file + " was built for other edges or edge lengths");
+            }
+            long savedVersion = in.readLong();
+            if (savedVersion != version) {
+                throw new IOException(file + " was built at map version " + savedVersion + ", map is at " + version);
+            }
+            int[] rank = readInts(in);
+            int[] upOffset = readInts(in);
+            int[] upTarget = readInts(in);
+            double[] upWeight = readDoubles(in);
+            int[] upMiddle = readInts(in);
+            int[] downOffset = readInts(in);
+            int[] downSource = readInts(in);
+            double[] downWeight = readDoubles(in);
+            int[] downMiddle = readInts(in);
+            return new ContractionHierarchy(map, version, hash, rank, upOffset, upTarget, upWeight, upMiddle,
+                    downOffset, downSource, downWeight, downMiddle);
+        }
+    }
+
+    /**
+     * Read the hierarchy from cacheFile, or preprocess the map and write it there if the file
+     * is missing or was built for another graph
+     */
+    public static ContractionHierarchy loadOrBuild(Path cacheFile, TrafficMap map) {
+        if (Files.exists(cacheFile)) {
+            try {
+                return load(cacheFile, map);
+            } catch (IOException e) {
+                System.err.println("⚠️ Rebuilding contraction hierarchy: " + e.getMessage());
+            }
+        }
+        ContractionHierarchy hierarchy = build(map);
+        try {
+            hierarchy.save(cacheFile);
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not write contraction hierarchy " + cacheFile + ": " + e.getMessage());
+        }
+        return hierarchy;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) out.writeInt(value);
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) out.writeDouble(value);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readInt();
+        return values;
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readDouble();
+        return values;
+    }
+
+    // Scratch arrays of one query, valid where the seen stamp equals the current generation
+    private static class QueryState {
+        final double[] forwardCost;
+        final double[] backwardCost;
+        final int[] forwardSeen;
+        final int[] backwardSeen;
+        final int[] forwardParent;
+        final int[] backwardParent;
+        final int[] forwardEdge;
+        final int[] backwardEdge;
+        final IndexedMinHeap forward;
+        final IndexedMinHeap backward;
+        int generation;
+
+        QueryState(int nodeCount) {
+            forwardCost = new double[nodeCount];
+            backwardCost = new double[nodeCount];
+            forwardSeen = new int[nodeCount];
+            backwardSeen = new int[nodeCount];
+            forwardParent = new int[nodeCount];
+            backwardParent = new int[nodeCount];
+            forwardEdge = new int[nodeCount];
+            backwardEdge = new int[nodeCount];
+            forward = new IndexedMinHeap(nodeCount);
+            backward = new IndexedMinHeap(nodeCount);
+        }
+
+        int nextGeneration() {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(forwardSeen, 0);
+                Arrays.fill(backwardSeen, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+
+        void reachForward(int node, int generation, double cost, int parent, int edge) {
+            forwardSeen[node] = generation;
+            forwardCost[node] = cost;
+            forwardParent[node] = parent;
+            forwardEdge[node] = edge;
+        }
+
+        void reachBackward(int node, int generation, double cost, int parent, int edge) {
+            backwardSeen[node] = generation;
+            backwardCost[node] = cost;
+            backwardParent[node] = parent;
+            backwardEdge[node] = edge;
+        }
+    }
+
+    private static class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int get(int i) { return values[i]; }
+        int pop() { return values[--size]; }
+        int size() { return size; }
+
+        void reverse() {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                int tmp = values[i];
+                values[i] = values[j];
+                values[j] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Contracts the nodes of a map in parallel rounds of independent nodes.
+     */
+    private static final class Builder {
+        /** Witness searches give up after settling this many nodes and keep the shortcut */
+        private static final int WITNESS_SETTLE_LIMIT = 500;
+
+        private final TrafficMap map;
+        private final int n;
+        private final long version;
+        private final long graphHash;
+
+        // Working graph: adjacency lists that only grow; contracted neighbours are skipped
+        private final int[][] outTarget;
+        private final double[][] outWeight;
+        private final int[][] outMiddle;
+        private final int[] outSize;
+        private final int[][] inSource;
+        private final double[][] inWeight;
+        private final int[][] inMiddle;
+        private final int[] inSize;
+
+        private final boolean[] contracted;
+        private final boolean[] contracting;
+        private final boolean[] dirty;
+        private final int[] priority;
+        private final int[] deletedNeighbors;
+        private final int[] level;      // 1 + highest level of a contracted neighbour
+        private final int[] rank;
+        private int nextRank;
+
+        private final ThreadLocal<Witness> witness;
+
+        Builder(TrafficMap map) {
+            this.map = map;
+            this.n = map.getNodeCount();
+            // Read first: an edge change during the build leaves the result stale, not wrong
+            this.version = map.getVersion();
+            this.graphHash = ContractionHierarchy.graphHash(map.getGraph());
+            outTarget = new int[n][];
+            outWeight = new double[n][];
+            outMiddle = new int[n][];
+            outSize = new int[n];
+            inSource = new int[n][];
+            inWeight = new double[n][];
+            inMiddle = new int[n][];
+            inSize = new int[n];
+            contracted = new boolean[n];
+            contracting = new boolean[n];
+            dirty = new boolean[n];
+            priority = new int[n];
+            deletedNeighbors = new int[n];
+            level = new int[n];
+            rank = new int[n];
+            witness = ThreadLocal.withInitial(() -> new Witness(n));
+
+            RoadGraph graph = map.getGraph();
+            for (int v = 0; v < n; v++) {
+                int outDegree = Math.max(2, graph.outDegree(v));
+                int inDegree = Math.max(2, graph.inDegree(v));
+                outTarget[v] = new int[outDegree];
+                outWeight[v] = new double[outDegree];
+                outMiddle[v] = new int[outDegree];
+                inSource[v] = new int[inDegree];
+                inWeight[v] = new double[inDegree];
+                inMiddle[v] = new int[inDegree];
+            }
+            for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+                int from = graph.source(edge);
+                int to = graph.target(edge);
+                if (to != from && graph.isAvailable(edge)) {
+                    addEdge(from, to, graph.length(edge), NO_MIDDLE);
+                }
+            }
+        }
+
+        ContractionHierarchy build() {
+            IntStream.range(0, n).parallel().forEach(v -> priority[v] = computePriority(v));
+            int[] remaining = IntStream.range(0, n).toArray();
+
+            while (remaining.length > 0) {
+                int[] selected = Arrays.stream(remaining).parallel().filter(this::isLocalMinimum).toArray();
+                for (int v : selected) {
+                    contracting[v] = true;
+                }
+
+                Shortcuts[] found = new Shortcuts[selected.length];
+                IntStream.range(0, selected.length).parallel()
+                        .forEach(i -> found[i] = findShortcuts(selected[i], true));
+
+                for (int i = 0; i < selected.length; i++) {
+                    int v = selected[i];
+                    Shortcuts shortcuts = found[i];
+                    for (int s = 0; s < shortcuts.size; s++) {
+                        addEdge(shortcuts.from[s], shortcuts.to[s], shortcuts.weight[s], v);
+                    }
+                    contracted[v] = true;
+                    contracting[v] = false;
+                    rank[v] = nextRank++;
+                    markNeighbors(v);
+                }
+
+                remaining = Arrays.stream(remaining).filter(v -> !contracted[v]).toArray();
+                Arrays.stream(remaining).parallel().filter(v -> dirty[v]).forEach(v -> {
+                    priority[v] = computePriority(v);
+                    dirty[v] = false;
+                });
+            }
+            return toHierarchy();
+        }
+
+        private boolean isLocalMinimum(int v) {
+            for (int i = 0; i < outSize[v]; i++) {
+                if (beats(outTarget[v][i], v)) return false;
+            }
+            for (int i = 0; i < inSize[v]; i++) {
+                if (beats(inSource[v][i], v)) return false;
+            }
+            return true;
+        }
+
+        // true if neighbour u must be contracted before v
+        private boolean beats(int u, int v) {
+            if (contracted[u]) return false;
+            return priority[u] < priority[v] || (priority[u] == priority[v] && u < v);
+        }
+
+        private void markNeighbors(int v) {
+            for (int i = 0; i < outSize[v]; i++) {
+                int u = outTarget[v][i];
+                if (!contracted[u]) {
+                    deletedNeighbors[u]++;
+                    level[u] = Math.max(level[u], level[v] + 1);
+                    dirty[u] = true;
+                }
+            }
+            for (int i = 0; i < inSize[v]; i++) {
+                int u = inSource[v][i];
+                if (!contracted[u]) {
+                    deletedNeighbors[u]++;
+                    level[u] = Math.max(level[u], level[v] + 1);
+                    dirty[u] = true;
+                }
+            }
+        }
+
+        private int computePriority(int v) {
+            int removed = 0;
+            for (int i = 0; i < outSize[v]; i++) {
+                if (!contracted[outTarget[v][i]]) removed++;
+            }
+            for (int i = 0; i < inSize[v]; i++) {
+                if (!contracted[inSource[v][i]]) removed++;
+            }
+            int added = findShortcuts(v, false).size;
+            return added - removed + deletedNeighbors[v] + level[v];
+        }
+
+        private Shortcuts findShortcuts(int v, boolean collect) {
+            Shortcuts shortcuts = new Shortcuts(collect);
+            Witness search = witness.get();
+            for (int i = 0; i < inSize[v]; i++) {
+                int u = inSource[v][i];
+                if (contracted[u]) continue;
+                double toV = inWeight[v][i];
+
+                double maxVia = -1;
+                for (int j = 0; j < outSize[v]; j++) {
+                    int w = outTarget[v][j];
+                    if (w != u && !contracted[w]) {
+                        maxVia = Math.max(maxVia, toV + outWeight[v][j]);
+                    }
+                }
+                if (maxVia < 0) continue;
+
+                search.run(this, u, v, maxVia);
+                for (int j = 0; j < outSize[v]; j++) {
+                    int w = outTarget[v][j];
+                    if (w == u || contracted[w]) continue;
+                    double via = toV + outWeight[v][j];
+                    if (search.distance(w) > via) {
+                        shortcuts.add(u, w, via);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        // Insert u->w or lower its weight if it already exists
+        private void addEdge(int u, int w, double weight, int middle) {
+            for (int i = 0; i < outSize[u]; i++) {
+                if (outTarget[u][i] == w) {
+                    if (weight < outWeight[u][i]) {
+                        outWeight[u][i] = weight;
+                        outMiddle[u][i] = middle;
+                        for (int j = 0; j < inSize[w]; j++) {
+                            if (inSource[w][j] == u) {
+                                inWeight[w][j] = weight;
+                                inMiddle[w][j] = middle;
+                                break;
+                            }
+                        }
+                    }
+                    return;
+                }
+            }
+
+            if (outSize[u] == outTarget[u].length) {
+                int capacity = outSize[u] * 2;
+                outTarget[u] = Arrays.copyOf(outTarget[u], capacity);
+                outWeight[u] = Arrays.copyOf(outWeight[u], capacity);
+                outMiddle[u] = Arrays.copyOf(outMiddle[u], capacity);
+            }
+            outTarget[u][outSize[u]] = w;
+            outWeight[u][outSize[u]] = weight;
+            outMiddle[u][outSize[u]] = middle;
+            outSize[u]++;
+
+            if (inSize[w] == inSource[w].length) {
+                int capacity = inSize[w] * 2;
+                inSource[w] = Arrays.copyOf(inSource[w], capacity);
+                inWeight[w] = Arrays.copyOf(inWeight[w], capacity);
+                inMiddle[w] = Arrays.copyOf(inMiddle[w], capacity);
+            }
+            inSource[w][inSize[w]] = u;
+            inWeight[w][inSize[w]] = weight;
+            inMiddle[w][inSize[w]] = middle;
+            inSize[w]++;
+        }
+
+        // Every working edge goes up from its lower-ranked end
+        private ContractionHierarchy toHierarchy() {
+            int[] upOffset = new int[n + 1];
+            int[] downOffset = new int[n + 1];
+            for (int u = 0; u < n; u++) {
+                for (int i = 0; i < outSize[u]; i++) {
+                    int w = outTarget[u][i];
+                    if (rank[w] > rank[u]) upOffset[u + 1]++;
+                    else downOffset[w + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                upOffset[v + 1] += upOffset[v];
+                downOffset[v + 1] += downOffset[v];
+            }
+
+            int[] upTarget = new int[upOffset[n]];
+            double[] upWeight = new double[upOffset[n]];
+            int[] upMiddle = new int[upOffset[n]];
+            int[] downSource = new int[downOffset[n]];
+            double[] downWeight = new double[downOffset[n]];
+            int[] downMiddle = new int[downOffset[n]];
+            int[] upFill = Arrays.copyOf(upOffset, n);
+            int[] downFill = Arrays.copyOf(downOffset, n);
+
+            for (int u = 0; u < n; u++) {
+                for (int i = 0; i < outSize[u]; i++) {
+                    int w = outTarget[u][i];
+                    if (rank[w] > rank[u]) {
+                        int slot = upFill[u]++;
+                        upTarget[slot] = w;
+                        upWeight[slot] = outWeight[u][i];
+                        upMiddle[slot] = outMiddle[u][i];
+                    } else {
+                        int slot = downFill[w]++;
+                        downSource[slot] = u;
+                        downWeight[slot] = outWeight[u][i];
+                        downMiddle[slot] = outMiddle[u][i];
+                    }
+                }
+            }
+            return new ContractionHierarchy(map, version, graphHash, rank, upOffset, upTarget, upWeight, upMiddle,
+                    downOffset, downSource, downWeight, downMiddle);
+        }
+    }
+
+    private static final class Shortcuts {
+        final boolean collect;
+        int[] from;
+        int[] to;
+        double[] weight;
+        int size;
+
+        Shortcuts(boolean collect) {
+            this.collect = collect;
+            if (collect) {
+                from = new int[4];
+                to = new int[4];
+                weight = new double[4];
+            }
+        }
+
+        void add(int u, int w, double via) {
+            if (collect) {
+                if (size == from.length) {
+                    from = Arrays.copyOf(from, size * 2);
+                    to = Arrays.copyOf(to, size * 2);
+                    weight = Arrays.copyOf(weight, size * 2);
+                }
+                from[size] = u;
+                to[size] = w;
+                weight[size] = via;
+            }
+            size++;
+        }
+    }
+
+    // Bounded Dijkstra from u that avoids v, contracted nodes and nodes contracted this round
+    private static final class Witness {
+        final double[] cost;
+        final int[] seen;
+        final IndexedMinHeap open;
+        int generation;
+
+        Witness(int nodeCount) {
+            cost = new double[nodeCount];
+            seen = new int[nodeCount];
+            open = new IndexedMinHeap(nodeCount);
+        }
+
+        void run(Builder graph, int source, int avoid, double limit) {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                generation = 1;
+            }
+            open.clear();
+            seen[source] = generation;
+            cost[source] = 0;
+            open.insertOrDecrease(source, 0);
+
+            int settled = 0;
+            while (!open.isEmpty() && open.peekKey() <= limit && settled < Builder.WITNESS_SETTLE_LIMIT) {
+                int node = open.poll();
+                settled++;
+                double base = cost[node];
+                int[] targets = graph.outTarget[node];
+                double[] weights = graph.outWeight[node];
+                for (int i = 0; i < graph.outSize[node]; i++) {
+                    int next = targets[i];
+                    if (next == avoid || graph.contracted[next] || graph.contracting[next]) continue;
+                    double candidate = base + weights[i];
+                    if (seen[next] != generation || candidate < cost[next]) {
+                        seen[next] = generation;
+                        cost[next] = candidate;
+                        open.insertOrDecrease(next, candidate);
+                    }
+                }
+            }
+            open.clear();
+        }
+
+        double distance(int node) {
+            return seen[node] == generation ? cost[node] : Double.POSITIVE_INFINITY;
+        }
+    }
+}
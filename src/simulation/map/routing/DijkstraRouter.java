@@ -0,0 +1,78 @@
+package simulation.map.routing;
+
+import simulation.map.TrafficEdge;
+import simulation.map.TrafficMap;
+import simulation.map.TrafficNode;
+
+import java.util.*;
+
+/**
+ * The original object-keyed Dijkstra: HashMap distances pre-filled for every node and a
+ * PriorityQueue ordered by a distance lookup. Kept as the reference implementation that
+ * the faster strategies are checked and benchmarked against.
+ */
+public class DijkstraRouter implements RoutingStrategy {
+    private final TrafficMap map;
+
+    public DijkstraRouter(TrafficMap map) {
+        this.map = map;
+    }
+
+    @Override
+    public List<TrafficNode> findPath(TrafficNode start, TrafficNode end) {
+        if (start.equals(end)) {
+            return Arrays.asList(start);
+        }
+
+        Map<TrafficNode, Double> distances = new HashMap<>();
+        Map<TrafficNode, TrafficNode> previous = new HashMap<>();
+        PriorityQueue<TrafficNode> queue = new PriorityQueue<>(
+                Comparator.comparingDouble(node -> distances.getOrDefault(node, Double.MAX_VALUE))
+        );
+
+        // Initialize
+        for (TrafficNode node : map.getNodes()) {
+            distances.put(node, Double.MAX_VALUE);
+        }
+        distances.put(start, 0.0);
+        queue.offer(start);
+
+        while (!queue.isEmpty()) {
+            TrafficNode current = queue.poll();
+
+            if (current.equals(end)) {
+                break;
+            }
+
+            // Explore all outgoing edges (unidirectional graph)
+            for (TrafficEdge edge : current.getOutgoingEdges()) {
+                TrafficNode neighbor = edge.getTo();
+                double newDist = distances.get(current) + edge.getTravelCost();
+
+                if (newDist < distances.get(neighbor)) {
+                    distances.put(neighbor, newDist);
+                    previous.put(neighbor, current);
+                    queue.offer(neighbor);
+                }
+            }
+        }
+
+        if (!previous.containsKey(end)) {
+            return Collections.emptyList();
+        }
+        return reconstructPath(previous, end);
+    }
+
+    private List<TrafficNode> reconstructPath(Map<TrafficNode, TrafficNode> previous, TrafficNode end) {
+        List<TrafficNode> path = new ArrayList<>();
+        for (TrafficNode node = end; node != null; node = previous.get(node)) {
+            path.add(0, node);
+        }
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return "dijkstra";
+    }
+}
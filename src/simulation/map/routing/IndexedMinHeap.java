@@ -0,0 +1,119 @@
+package simulation.map.routing;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node indices keyed by double priorities, with decrease-key.
+ *
+ * Everything lives in primitive arrays sized to the node count, so shortest-path searches
+ * neither box distances nor allocate per relaxation. A heap can be reused across searches
+ * with clear(), which only touches the entries that were inserted.
+ */
+public class IndexedMinHeap {
+    private final int[] heap;        // heap slot -> node index
+    private final int[] slotOf;      // node index -> heap slot, -1 if absent
+    private final double[] keys;     // node index -> priority
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.slotOf = new int[capacity];
+        this.keys = new double[capacity];
+        Arrays.fill(slotOf, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int node) {
+        return slotOf[node] >= 0;
+    }
+
+    /**
+     * Insert the node, or lower its priority if it is already queued with a higher one
+     */
+    public void insertOrDecrease(int node, double key) {
+        int slot = slotOf[node];
+        if (slot < 0) {
+            slot = size++;
+            heap[slot] = node;
+            slotOf[node] = slot;
+            keys[node] = key;
+            siftUp(slot);
+        } else if (key < keys[node]) {
+            keys[node] = key;
+            siftUp(slot);
+        }
+    }
+
+    public double peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * @return The node with the lowest priority, removed from the heap
+     */
+    public int poll() {
+        int top = heap[0];
+        slotOf[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            slotOf[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slotOf[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int slot) {
+        int node = heap[slot];
+        double key = keys[node];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            int parentNode = heap[parent];
+            if (keys[parentNode] <= key) {
+                break;
+            }
+            heap[slot] = parentNode;
+            slotOf[parentNode] = slot;
+            slot = parent;
+        }
+        heap[slot] = node;
+        slotOf[node] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int node = heap[slot];
+        double key = keys[node];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int childNode = heap[child];
+            if (key <= keys[childNode]) {
+                break;
+            }
+            heap[slot] = childNode;
+            slotOf[childNode] = slot;
+            slot = child;
+        }
+        heap[slot] = node;
+        slotOf[node] = slot;
+    }
+}
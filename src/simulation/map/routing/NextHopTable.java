@@ -0,0 +1,222 @@
+package simulation.map.routing;
+
+import simulation.map.RoadGraph;
+import simulation.map.TrafficMap;
+import simulation.map.TrafficNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Next-hop routing table: for a destination d, next[d][s] is the index of the node that
+ * follows s on a shortest path from s to d, or -1 if d cannot be reached from s.
+ *
+ * The column for a destination is built the first time a route to it is asked for, with
+ * one Dijkstra run backwards over the incoming edges, and is shared afterwards. Vehicles
+ * mostly head to the few intersections of the map, so after the first few spawns a route
+ * lookup is a walk of the path length with no search at all.
+ *
+ * A column takes 4 bytes per node, so the columns kept are bounded by a byte budget: once
+ * over it, the oldest column not used since it was last passed over is dropped (second
+ * chance) and built again if asked for; threads building at the same time may overshoot it
+ * by a column each until the next eviction. On large maps, where most destinations are asked for
+ * once, a one-off search (AStarRouter) is cheaper; TrafficMap picks that above
+ * MAX_DEFAULT_NODES.
+ */
+public class NextHopTable implements RoutingStrategy {
+    public static final int NO_HOP = -1;
+    /** Default memory for the columns */
+    public static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+    /** Largest map the table is the default strategy for (see TrafficMap) */
+    public static final int MAX_DEFAULT_NODES = 20_000;
+
+    private final TrafficMap map;
+    private final int nodeCount;
+    private final int maxColumns;
+    private volatile Columns columns;
+
+    /** The built columns of one map version, with the order they are dropped in */
+    private static final class Columns {
+        final AtomicReferenceArray<int[]> byDestination;
+        final boolean[] used;       // set on every hit; a hint only, so races are harmless
+        final Queue<Integer> built = new ConcurrentLinkedQueue<>();
+        final AtomicInteger count = new AtomicInteger();
+
+        Columns(int nodeCount) {
+            byDestination = new AtomicReferenceArray<>(nodeCount);
+            used = new boolean[nodeCount];
+        }
+    }
+
+    public NextHopTable(TrafficMap map) {
+        this(map, DEFAULT_BUDGET_BYTES);
+    }
+
+    /**
+     * @param budgetBytes Memory the columns may take; at least one column is always kept
+     */
+    public NextHopTable(TrafficMap map, long budgetBytes) {
+        this.map = map;
+        this.nodeCount = map.getNodeCount();
+        this.maxColumns = (int) Math.max(1, Math.min(nodeCount, budgetBytes / (4L * Math.max(1, nodeCount))));
+        this.columns = new Columns(nodeCount);
+    }
+
+    /**
+     * @return Index of the node after from on the way to to, from itself once there,
+     *         or NO_HOP if to is unreachable
+     */
+    public int nextHop(int from, int to) {
+        if (from == to) {
+            return from;
+        }
+        return column(to)[from];
+    }
+
+    /**
+     * @return The node after from on the way to to, or null if to is unreachable
+     */
+    public TrafficNode nextHop(TrafficNode from, TrafficNode to) {
+        int next = nextHop(from.getIndex(), to.getIndex());
+        return next == NO_HOP ? null : map.getNodeByIndex(next);
+    }
+
+    /**
+     * Walk the table from start to end
+     * @return The nodes after start up to and including end; empty if end is unreachable
+     *         or equal to start
+     */
+    public Queue<TrafficNode> route(TrafficNode start, TrafficNode end) {
+        Queue<TrafficNode> route = new ArrayDeque<>();
+        int target = end.getIndex();
+        int[] next = column(target);
+        int current = start.getIndex();
+        while (current != target) {
+            current = next[current];
+            if (current == NO_HOP) {
+                route.clear();
+                return route;
+            }
+            route.add(map.getNodeByIndex(current));
+        }
+        return route;
+    }
+
+    @Override
+    public List<TrafficNode> findPath(TrafficNode start, TrafficNode end) {
+        Queue<TrafficNode> route = route(start, end);
+        if (route.isEmpty() && !start.equals(end)) {
+            return Collections.emptyList();
+        }
+        List<TrafficNode> path = new ArrayList<>(route.size() + 1);
+        path.add(start);
+        path.addAll(route);
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return "next-hop";
+    }
+
+    /**
+     * @return Number of destinations whose column is kept
+     */
+    public int getBuiltDestinations() {
+        return columns.count.get();
+    }
+
+    /**
+     * @return Most columns kept at once
+     */
+    public int getMaxColumns() {
+        return maxColumns;
+    }
+
+    /**
+     * Drop every column, e.g. after edge lengths change. Columns still being built against
+     * the old costs go into the discarded set.
+     */
+    public void clear() {
+        columns = new Columns(nodeCount);
+    }
+
+    @Override
+    public void onMapChanged() {
+        clear();
+    }
+
+    private int[] column(int destination) {
+        Columns current = columns;
+        int[] next = current.byDestination.get(destination);
+        if (next != null) {
+            current.used[destination] = true;
+            return next;
+        }
+        next = buildColumn(destination);
+        // Two threads may build the same column; both results are valid, keep the first
+        if (current.byDestination.compareAndSet(destination, null, next)) {
+            current.built.add(destination);
+            if (current.count.incrementAndGet() > maxColumns) {
+                evict(current);
+            }
+            return next;
+        }
+        int[] kept = current.byDestination.get(destination);
+        return kept != null ? kept : next;
+    }
+
+    // Drop columns until back within the budget, giving the ones used since their last turn
+    // a second chance; two passes clear every mark, so the loop ends
+    private void evict(Columns current) {
+        int turns = 2 * (maxColumns + 1);
+        while (current.count.get() > maxColumns && turns-- > 0) {
+            Integer oldest = current.built.poll();
+            if (oldest == null) {
+                return;
+            }
+            if (current.used[oldest] && turns > 0) {
+                current.used[oldest] = false;
+                current.built.add(oldest);
+            } else if (current.byDestination.getAndSet(oldest, null) != null) {
+                current.count.decrementAndGet();
+            }
+        }
+    }
+
+    // Reverse Dijkstra from the destination: relaxing edge u->v from v fixes u's next hop to v
+    private int[] buildColumn(int destination) {
+        int[] next = new int[nodeCount];
+        double[] distance = new double[nodeCount];
+        Arrays.fill(next, NO_HOP);
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+
+        RoadGraph graph = map.getGraph();
+        IndexedMinHeap queue = new IndexedMinHeap(nodeCount);
+        distance[destination] = 0;
+        queue.insertOrDecrease(destination, 0);
+
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            double base = distance[current];
+            for (int slot = graph.inBegin(current), end = graph.inEnd(current); slot < end; slot++) {
+                int edge = graph.inEdge(slot);
+                int previous = graph.source(edge);
+                double candidate = base + graph.travelCost(edge);
+                if (candidate < distance[previous]) {
+                    distance[previous] = candidate;
+                    next[previous] = current;
+                    queue.insertOrDecrease(previous, candidate);
+                }
+            }
+        }
+        return next;
+    }
+}
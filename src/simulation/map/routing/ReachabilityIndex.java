@@ -0,0 +1,258 @@
+package simulation.map.routing;
+
+import simulation.map.RoadGraph;
+import simulation.map.TrafficMap;
+import simulation.map.TrafficNode;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Which intersections can be reached from where, for picking vehicle origins and destinations.
+ *
+ * The open edges of the map are split into strongly connected components (iterative Tarjan).
+ * Every node of a component reaches the same intersections: those of the components reachable
+ * from it in the condensed graph. That list is built the first time a vehicle starts in the
+ * component and shared afterwards; on road networks almost every intersection sits in one big
+ * component, so there are only a handful of lists. Picking a random destination is then one
+ * random index, with no search and no allocation.
+ *
+ * An index describes one version of the map; TrafficMap builds a new one after edges change.
+ */
+public class ReachabilityIndex {
+    private final TrafficMap map;
+    private final long version;
+    private final int[] component;          // node -> component
+    private final int componentCount;
+    private final int[] successorOffset;    // component -> first slot in successors
+    private final int[] successors;         // slot -> successor component (may repeat)
+    private final int[] memberOffset;       // component -> first slot in members
+    private final int[] members;            // slot -> intersection, grouped by component
+    private final int[] startNodes;         // intersections with an open outgoing edge
+    private final AtomicReferenceArray<int[]> reachable;
+
+    private ReachabilityIndex(TrafficMap map, long version) {
+        this.map = map;
+        this.version = version;
+        RoadGraph graph = map.getGraph();
+        int n = graph.getNodeCount();
+
+        component = new int[n];
+        componentCount = findComponents(graph, component);
+
+        // Condensed graph, counted then filled like the RoadGraph CSR
+        successorOffset = new int[componentCount + 1];
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            int from = component[graph.source(edge)];
+            if (graph.isAvailable(edge) && from != component[graph.target(edge)]) {
+                successorOffset[from + 1]++;
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            successorOffset[c + 1] += successorOffset[c];
+        }
+        successors = new int[successorOffset[componentCount]];
+        int[] nextSuccessor = Arrays.copyOf(successorOffset, componentCount);
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            int from = component[graph.source(edge)];
+            int to = component[graph.target(edge)];
+            if (graph.isAvailable(edge) && from != to) {
+                successors[nextSuccessor[from]++] = to;
+            }
+        }
+
+        memberOffset = new int[componentCount + 1];
+        int starts = 0;
+        for (int v = 0; v < n; v++) {
+            if (graph.type(v) == TrafficNode.NodeType.INTERSECTION) {
+                memberOffset[component[v] + 1]++;
+                if (hasOpenEdge(graph, v)) starts++;
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            memberOffset[c + 1] += memberOffset[c];
+        }
+        members = new int[memberOffset[componentCount]];
+        startNodes = new int[starts];
+        int[] nextMember = Arrays.copyOf(memberOffset, componentCount);
+        starts = 0;
+        for (int v = 0; v < n; v++) {
+            if (graph.type(v) == TrafficNode.NodeType.INTERSECTION) {
+                members[nextMember[component[v]]++] = v;
+                if (hasOpenEdge(graph, v)) startNodes[starts++] = v;
+            }
+        }
+
+        reachable = new AtomicReferenceArray<>(componentCount);
+    }
+
+    /**
+     * Index the map as it is now
+     */
+    public static ReachabilityIndex build(TrafficMap map) {
+        // Read the version first: if edges change while building, the index is already stale
+        return new ReachabilityIndex(map, map.getVersion());
+    }
+
+    /**
+     * @return The map version this index was built for
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * @return A random intersection with an open outgoing edge, or -1 if there is none
+     */
+    public int randomStartNode() {
+        if (startNodes.length == 0) {
+            return -1;
+        }
+        return startNodes[ThreadLocalRandom.current().nextInt(startNodes.length)];
+    }
+
+    /**
+     * @return A random intersection other than from that can be reached from it, or -1
+     */
+    public int randomReachableIntersection(int from) {
+        int[] targets = reachableIntersections(component[from]);
+        boolean includesSelf = map.getGraph().type(from) == TrafficNode.NodeType.INTERSECTION;
+        int choices = includesSelf ? targets.length - 1 : targets.length;
+        if (choices <= 0) {
+            return -1;
+        }
+        // from appears once in targets: draw among the others by swapping it for the last one
+        int pick = targets[ThreadLocalRandom.current().nextInt(choices)];
+        return includesSelf && pick == from ? targets[choices] : pick;
+    }
+
+    /**
+     * @return Copy of the intersections with an open outgoing edge
+     */
+    public int[] getStartNodes() {
+        return startNodes.clone();
+    }
+
+    /**
+     * @return The intersections reachable from a node, including the node itself if it is one.
+     *         Shared with every node of the same component; do not modify.
+     */
+    public int[] reachableFrom(int from) {
+        return reachableIntersections(component[from]);
+    }
+
+    private int[] reachableIntersections(int c) {
+        int[] targets = reachable.get(c);
+        if (targets == null) {
+            targets = collectReachable(c);
+            // Two threads may collect the same list; both are equal, keep the first
+            if (!reachable.compareAndSet(c, null, targets)) {
+                targets = reachable.get(c);
+            }
+        }
+        return targets;
+    }
+
+    // Depth-first walk of the condensed graph, gathering the intersections of every component
+    private int[] collectReachable(int start) {
+        boolean[] seen = new boolean[componentCount];
+        int[] stack = new int[componentCount];
+        int size = 0, count = 0;
+        stack[size++] = start;
+        seen[start] = true;
+        while (size > 0) {
+            int c = stack[--size];
+            count += memberOffset[c + 1] - memberOffset[c];
+            for (int slot = successorOffset[c]; slot < successorOffset[c + 1]; slot++) {
+                int next = successors[slot];
+                if (!seen[next]) {
+                    seen[next] = true;
+                    stack[size++] = next;
+                }
+            }
+        }
+
+        int[] targets = new int[count];
+        int filled = 0;
+        for (int c = 0; c < componentCount; c++) {
+            if (seen[c]) {
+                int length = memberOffset[c + 1] - memberOffset[c];
+                System.arraycopy(members, memberOffset[c], targets, filled, length);
+                filled += length;
+            }
+        }
+        return targets;
+    }
+
+    private static boolean hasOpenEdge(RoadGraph graph, int v) {
+        for (int edge = graph.outBegin(v), end = graph.outEnd(v); edge < end; edge++) {
+            if (graph.isAvailable(edge)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tarjan's algorithm with explicit stacks (a recursive version overflows on large maps)
+     * @return Number of components; component[] is filled with each node's component
+     */
+    private static int findComponents(RoadGraph graph, int[] component) {
+        int n = graph.getNodeCount();
+        int[] order = new int[n];           // discovery order, -1 while unvisited
+        int[] low = new int[n];
+        int[] cursor = new int[n];          // next outgoing edge to look at
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] calls = new int[n];
+        Arrays.fill(order, -1);
+        int counter = 0, stackSize = 0, components = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (order[root] != -1) continue;
+            int depth = 0;
+            calls[depth++] = root;
+            order[root] = low[root] = counter++;
+            cursor[root] = graph.outBegin(root);
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int v = calls[depth - 1];
+                if (cursor[v] < graph.outEnd(v)) {
+                    int edge = cursor[v]++;
+                    if (!graph.isAvailable(edge)) continue;
+                    int w = graph.target(edge);
+                    if (order[w] == -1) {
+                        order[w] = low[w] = counter++;
+                        cursor[w] = graph.outBegin(w);
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        calls[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                } else {
+                    depth--;
+                    if (depth > 0) {
+                        int parent = calls[depth - 1];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                    if (low[v] == order[v]) {
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            component[w] = components;
+                        } while (w != v);
+                        components++;
+                    }
+                }
+            }
+        }
+        return components;
+    }
+}
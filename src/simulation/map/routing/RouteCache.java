@@ -0,0 +1,154 @@
+package simulation.map.routing;
+
+import simulation.map.TrafficNode;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of routes keyed by (start, end) node pair.
+ *
+ * Vehicles only start at intersections, so mass spawns ask for the same few pairs over and
+ * over. Cached paths are immutable and shared by every vehicle that asks for them. Each entry
+ * remembers the map version it was computed at and is ignored once the map has changed, so a
+ * route computed while an edge was being closed can never be served afterwards.
+ *
+ * The cache is split into segments, each an access-ordered LinkedHashMap behind its own lock,
+ * so concurrent spawns rarely contend; eviction is LRU within a segment.
+ */
+public class RouteCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of routes kept
+     */
+    public RouteCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Route cache capacity must be at least 1: " + capacity);
+        }
+        int segmentCount = Math.min(SEGMENTS, capacity);
+        segments = new Segment[segmentCount];
+        int perSegment = (capacity + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(perSegment, evictions);
+        }
+    }
+
+    /**
+     * @return The (start, end) node indices packed into one key
+     */
+    public static long key(TrafficNode start, TrafficNode end) {
+        return ((long) start.getIndex() << 32) | (end.getIndex() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param version The current map version
+     * @return The cached path, or null if absent or computed for another map version
+     */
+    public List<TrafficNode> get(TrafficNode start, TrafficNode end, long version) {
+        long key = key(start, end);
+        Segment segment = segmentFor(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && entry.version != version) {
+                segment.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.path;
+    }
+
+    /**
+     * @param path An immutable path, shared with every later caller
+     */
+    public void put(TrafficNode start, TrafficNode end, long version, List<TrafficNode> path) {
+        long key = key(start, end);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Entry(version, path));
+        }
+    }
+
+    /**
+     * Drop every route (they would be ignored anyway after a map change; this frees them)
+     */
+    public void invalidate() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("hits", getHits());
+        statistics.put("misses", getMisses());
+        statistics.put("evictions", getEvictions());
+        statistics.put("size", (long) size());
+        return statistics;
+    }
+
+    private Segment segmentFor(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) ((mixed >>> 32) % segments.length)];
+    }
+
+    private static final class Entry {
+        final long version;
+        final List<TrafficNode> path;
+
+        Entry(long version, List<TrafficNode> path) {
+            this.version = version;
+            this.path = path;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<Long, Entry> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
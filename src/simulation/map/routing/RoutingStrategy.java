@@ -0,0 +1,28 @@
+package simulation.map.routing;
+
+import simulation.map.TrafficNode;
+
+import java.util.List;
+
+/**
+ * A way of finding shortest paths on a TrafficMap. Implementations are bound to one map
+ * and must be safe to call from several agent threads at once.
+ */
+public interface RoutingStrategy {
+    /**
+     * @return The path from start to end, both included; a single node if they are equal,
+     *         empty if end cannot be reached
+     */
+    List<TrafficNode> findPath(TrafficNode start, TrafficNode end);
+
+    /**
+     * @return Short name for logs and benchmarks
+     */
+    String getName();
+
+    /**
+     * Called after edge costs or availability changed, to drop anything precomputed
+     */
+    default void onMapChanged() {
+    }
+}
@@ -5,6 +5,7 @@ import simulation.agents.Car;
 import simulation.agents.Pedestrian;
 import simulation.agents.SemaphoreSimulation;
 import simulation.agents.Truck;
+import simulation.map.GridlockDetector;
 
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
@@ -33,6 +34,7 @@ public class ThreadVisualizer extends JFrame implements Runnable {
     private volatile Map<Pedestrian.PedestrianState, Integer> pedestrianStateMap;
     private volatile Map<Truck.TruckState, Integer> truckStateMap;
     private final JLabel totalThreadsLabel;
+    private final JLabel gridlockLabel;
     Random rand = new Random();
     String[] soundPaths = new String[10];
 
@@ -140,6 +142,9 @@ public class ThreadVisualizer extends JFrame implements Runnable {
         totalThreadsLabel = new JLabel("Total de hilos activos: 0", SwingConstants.CENTER);
         totalThreadsLabel.setFont(new Font("Arial", Font.BOLD, 14));
         infoPanel.add(totalThreadsLabel);
+        gridlockLabel = new JLabel("Bloqueos (gridlock) activos: 0", SwingConstants.CENTER);
+        gridlockLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        infoPanel.add(gridlockLabel);
 
         add(infoPanel, BorderLayout.SOUTH);
         add(mainPanel, BorderLayout.CENTER);
@@ -219,6 +224,15 @@ public class ThreadVisualizer extends JFrame implements Runnable {
                 trucksTable.setValueAt(finished, 3, 1);
             });
 
+            // --- Gridlocks ---
+            GridlockDetector detector = simulation.getMapManager().getGridlockDetector();
+            int activeGridlocks = detector.getActiveCount();
+            long detectedGridlocks = detector.getDetectedCount();
+            SwingUtilities.invokeLater(() -> {
+                gridlockLabel.setText("Bloqueos (gridlock) activos: " + activeGridlocks +
+                        " - detectados: " + detectedGridlocks);
+                gridlockLabel.setForeground(activeGridlocks > 0 ? Color.RED : Color.BLACK);
+            });
 
             if (this.rand.nextInt(0,10) == 1){
                 callRandomNoise();
@@ -1,12 +1,13 @@
 package simulation.ui;
 
 import simulation.TrafficSimulationCore;
+import simulation.agents.Agent;
 import simulation.agents.Car;
 import simulation.agents.Pedestrian;
 import simulation.agents.SemaphoreSimulation;
 import simulation.agents.Truck;
 import simulation.map.Position;
-import simulation.map.TrafficEdge;
+import simulation.map.RoadGraph;
 import simulation.map.TrafficMap;
 import simulation.map.TrafficNode;
 
@@ -361,14 +362,15 @@ public class TrafficSimulationUI extends JFrame {
         private void drawRoadArrows(Graphics g, TrafficMap trafficMap) {
             g.setColor(Color.YELLOW); // Yellow arrows for better visibility
 
-            for (TrafficEdge edge : trafficMap.getEdges().values()) {
-                Position fromPos = edge.getFrom().position;
-                Position toPos = edge.getTo().position;
+            RoadGraph graph = trafficMap.getGraph();
+            for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+                int from = graph.source(edge);
+                int to = graph.target(edge);
 
-                int fromGridX = fromPos.x / trafficMap.getScale();
-                int fromGridY = fromPos.y / trafficMap.getScale();
-                int toGridX = toPos.x / trafficMap.getScale();
-                int toGridY = toPos.y / trafficMap.getScale();
+                int fromGridX = graph.x(from) / trafficMap.getScale();
+                int fromGridY = graph.y(from) / trafficMap.getScale();
+                int toGridX = graph.x(to) / trafficMap.getScale();
+                int toGridY = graph.y(to) / trafficMap.getScale();
 
                 int fromX = OFFSET + fromGridX * CELL_SIZE + CELL_SIZE / 2;
                 int fromY = OFFSET + fromGridY * CELL_SIZE + CELL_SIZE / 2;
@@ -412,12 +414,10 @@ public class TrafficSimulationUI extends JFrame {
             g2d.drawLine(arrowX, arrowY, x4, y4);
         }
 
-        // In the SimulationPanel class, update the drawAgents method:
+        // Vehicles and pedestrians (finished and stopped ones too) come from the spatial index,
+        // limited to the area being repainted
         private void drawAgents(Graphics g) {
-            List<Car> cars = simulation.getCars();
-            List<Truck> trucks = simulation.getTrucks();
             List<SemaphoreSimulation> semaphores = simulation.getSemaphores();
-            List<Pedestrian> pedestrians = simulation.getPedestrians(); // Add this line
 
             TrafficMap trafficMap = simulation.getMapManager().getTrafficMap();
             int scale = trafficMap.getScale();
@@ -427,19 +427,31 @@ public class TrafficSimulationUI extends JFrame {
                 drawSemaphore(g, semaphoreSimulation, trafficMap, scale);
             }
 
+            // Visible cells plus one around them, as labels and trucks reach into the next cell
+            Rectangle clip = g.getClipBounds() != null ? g.getClipBounds() : new Rectangle(0, 0, getWidth(), getHeight());
+            int minX = (Math.floorDiv(clip.x - OFFSET, CELL_SIZE) - 1) * scale;
+            int minY = (Math.floorDiv(clip.y - OFFSET, CELL_SIZE) - 1) * scale;
+            int maxX = (Math.floorDiv(clip.x + clip.width - OFFSET, CELL_SIZE) + 1) * scale;
+            int maxY = (Math.floorDiv(clip.y + clip.height - OFFSET, CELL_SIZE) + 1) * scale;
+            List<Agent> visible = simulation.getMapManager().getSpatialIndex().inRange(minX, minY, maxX, maxY);
+
             // Draw trucks on roads
-            for(Truck truck : trucks) {
-                drawTruck(g, truck, trafficMap, scale);
+            for (Agent agent : visible) {
+                if (agent instanceof Truck truck) {
+                    drawTruck(g, truck, trafficMap, scale);
+                }
             }
 
             // Draw cars on roads
-            for(Car car : cars) {
-                drawCar(g, car, trafficMap, scale);
+            for (Agent agent : visible) {
+                if (agent instanceof Car car) {
+                    drawCar(g, car, trafficMap, scale);
+                }
             }
 
             // Draw pedestrians on sidewalks (use detailed version)
-            for(Pedestrian pedestrian : pedestrians) {
-                if (pedestrian.getCurrentSemaphore() != null) {
+            for (Agent agent : visible) {
+                if (agent instanceof Pedestrian pedestrian && pedestrian.getCurrentSemaphore() != null) {
                     drawPedestrian(g, pedestrian, trafficMap, scale);
                 }
             }
@@ -486,13 +498,13 @@ public class TrafficSimulationUI extends JFrame {
         }
 
         private void drawTruck(Graphics g, Truck truck, TrafficMap trafficMap, int scale) {
-            Position frontPos = truck.getCurrentPosition();
-            Position rearPos = truck.getRearPosition();
-
-            int frontX = OFFSET + (frontPos.x / scale) * CELL_SIZE + CELL_SIZE / 2;
-            int frontY = OFFSET + (frontPos.y / scale) * CELL_SIZE + CELL_SIZE / 2;
-            int rearX = OFFSET + (rearPos.x / scale) * CELL_SIZE + CELL_SIZE / 2;
-            int rearY = OFFSET + (rearPos.y / scale) * CELL_SIZE + CELL_SIZE / 2;
+            List<Position> segments = truck.getSegmentPositions();
+            int[] xs = new int[segments.size()];
+            int[] ys = new int[segments.size()];
+            for (int i = 0; i < segments.size(); i++) {
+                xs[i] = OFFSET + (segments.get(i).x / scale) * CELL_SIZE + CELL_SIZE / 2;
+                ys[i] = OFFSET + (segments.get(i).y / scale) * CELL_SIZE + CELL_SIZE / 2;
+            }
 
             // Color según estado
             Color truckColor = switch(truck.getTruckState()) {
@@ -502,31 +514,38 @@ public class TrafficSimulationUI extends JFrame {
                 case FINISHED -> Color.GREEN;
             };
 
-            g.setColor(truckColor);
-
-            // Calculate truck position and orientation
-            int truckCenterX = (frontX + rearX) / 2;
-            int truckCenterY = (frontY + rearY) / 2;
-            int truckLength = (int) Math.sqrt(Math.pow(frontX - rearX, 2) + Math.pow(frontY - rearY, 2));
-            double angle = Math.atan2(frontY - rearY, frontX - rearX);
-
-            // Draw truck as a rotated rectangle
+            // One rotated rectangle per pair of consecutive segments, the cab on the first
             Graphics2D g2d = (Graphics2D) g;
-            g2d.rotate(angle, truckCenterX, truckCenterY);
-
             int truckWidth = 12;
-            g2d.fillRect(truckCenterX - truckLength/2, truckCenterY - truckWidth/2,
-                    truckLength, truckWidth);
-
-            // Draw cab (different color)
-            g2d.setColor(new Color(70, 130, 180)); // Steel blue
-            g2d.fillRect(truckCenterX + truckLength/2 - 8, truckCenterY - truckWidth/2, 8, truckWidth);
-
-            g2d.rotate(-angle, truckCenterX, truckCenterY); // Reset rotation
+            int pieces = Math.max(1, xs.length - 1);
+            for (int i = 0; i < pieces; i++) {
+                int frontX = xs[i];
+                int frontY = ys[i];
+                int rearX = i + 1 < xs.length ? xs[i + 1] : frontX - truckWidth;
+                int rearY = i + 1 < ys.length ? ys[i + 1] : frontY;
+
+                int pieceCenterX = (frontX + rearX) / 2;
+                int pieceCenterY = (frontY + rearY) / 2;
+                int pieceLength = (int) Math.sqrt(Math.pow(frontX - rearX, 2) + Math.pow(frontY - rearY, 2));
+                double angle = Math.atan2(frontY - rearY, frontX - rearX);
+
+                g2d.rotate(angle, pieceCenterX, pieceCenterY);
+                g2d.setColor(truckColor);
+                g2d.fillRect(pieceCenterX - pieceLength/2, pieceCenterY - truckWidth/2,
+                        pieceLength, truckWidth);
+                if (i == 0) {
+                    // Draw cab (different color)
+                    g2d.setColor(new Color(70, 130, 180)); // Steel blue
+                    g2d.fillRect(pieceCenterX + pieceLength/2 - 8, pieceCenterY - truckWidth/2, 8, truckWidth);
+                }
+                g2d.rotate(-angle, pieceCenterX, pieceCenterY); // Reset rotation
+            }
 
             // Draw truck label
+            int labelX = xs.length > 1 ? (xs[0] + xs[1]) / 2 : xs[0];
+            int labelY = ys.length > 1 ? (ys[0] + ys[1]) / 2 : ys[0];
             g.setColor(Color.WHITE);
-            g.drawString("T" + truck.id, truckCenterX - 5, truckCenterY + 15);
+            g.drawString("T" + truck.id, labelX - 5, labelY + 15);
         }
 
         private void drawCar(Graphics g, Car car, TrafficMap trafficMap, int scale) {